@@ -1120,6 +1120,7 @@ public class ScriptLoader {
 				Statement stmt = Statement.parse(s, "Can't understand this condition/effect: " + s);
 				if (stmt == null)
 					continue;
+				stmt.setLineNumber(n.getLine());
 				if (Skript.debug() || n.debug())
 					Skript.debug(getParser().getIndentation() + stmt.toString(null, true));
 				items.add(stmt);
@@ -1134,6 +1135,7 @@ public class ScriptLoader {
 				Section section = Section.parse(expr, "Can't understand this section: " + expr, (SectionNode) n, items);
 				if (section == null)
 					continue;
+				section.setLineNumber(n.getLine());
 
 				if (Skript.debug() || n.debug())
 					Skript.debug(getParser().getIndentation() + section.toString(null, true));
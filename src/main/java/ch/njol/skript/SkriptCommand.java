@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.bukkit.Bukkit;
@@ -44,9 +46,12 @@ import ch.njol.skript.log.RedirectingLogHandler;
 import ch.njol.skript.tests.runner.SkriptTestEvent;
 import ch.njol.skript.tests.runner.TestMode;
 import ch.njol.skript.tests.runner.TestTracker;
+import ch.njol.skript.timings.SkriptProfiler;
 import ch.njol.skript.util.ExceptionUtils;
 import ch.njol.skript.util.FileUtils;
 import ch.njol.skript.util.SkriptColor;
+import ch.njol.skript.variables.SerializationSelfCheck;
+import ch.njol.skript.variables.VariableStatistics;
 import ch.njol.util.StringUtils;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -74,6 +79,17 @@ public class SkriptCommand implements CommandExecutor {
 			.add("changes")
 			.add("download")
 		).add("info"
+		).add("self-check"
+		).add(new CommandHelp("variables", SkriptColor.DARK_RED)
+			.add("top")
+			.add("queues")
+			.add("dump")
+			.add("reset")
+		).add(new CommandHelp("profile", SkriptColor.DARK_RED)
+			.add("start")
+			.add("stop")
+			.add("show")
+			.add("dump")
 		).add("help");
 	
 	static {
@@ -330,6 +346,62 @@ public class SkriptCommand implements CommandExecutor {
 					String web = desc.getWebsite();
 					Skript.info(sender, " - " + desc.getFullName() + (web != null ? " (" + web + ")" : ""));
 				}
+			} else if (args[0].equalsIgnoreCase("self-check")) {
+				if (SkriptConfig.serializationSelfCheck.value() <= 0)
+					info(sender, "self-check.disabled");
+				info(sender, "self-check.checked", SerializationSelfCheck.getChecked(), SerializationSelfCheck.getSerialized());
+				long mismatches = SerializationSelfCheck.getMismatches();
+				if (mismatches == 0) {
+					info(sender, "self-check.no mismatches");
+				} else {
+					error(sender, "self-check.mismatches", mismatches);
+					for (Map.Entry<String, Long> e : SerializationSelfCheck.getMismatchesByType().entrySet())
+						Skript.error(sender, " - " + e.getKey() + ": " + e.getValue());
+					error(sender, "self-check.last mismatch", SerializationSelfCheck.getLastMismatch());
+				}
+			} else if (args[0].equalsIgnoreCase("variables")) {
+				if (SkriptConfig.variableStatistics.value() <= 0 && !args[1].equalsIgnoreCase("queues"))
+					info(sender, "variables.disabled");
+				if (args[1].equalsIgnoreCase("top")) {
+					info(sender, "variables.top", new Date(VariableStatistics.getSince()));
+					for (String line : VariableStatistics.getTop(10))
+						Skript.info(sender, " - " + line);
+					info(sender, "variables.databases");
+					for (String line : VariableStatistics.getStorages())
+						Skript.info(sender, " - " + line);
+				} else if (args[1].equalsIgnoreCase("queues")) {
+					info(sender, "variables.queues");
+					for (String line : VariableStatistics.getQueues())
+						Skript.info(sender, " - " + line);
+				} else if (args[1].equalsIgnoreCase("dump")) {
+					try {
+						info(sender, "variables.dumped", VariableStatistics.dump().getName());
+					} catch (IOException e) {
+						error(sender, "variables.dump error", ExceptionUtils.toString(e));
+					}
+				} else if (args[1].equalsIgnoreCase("reset")) {
+					VariableStatistics.reset();
+					info(sender, "variables.reset");
+				}
+			} else if (args[0].equalsIgnoreCase("profile")) {
+				if (args[1].equalsIgnoreCase("start")) {
+					SkriptProfiler.start();
+					info(sender, "profile.started");
+				} else if (args[1].equalsIgnoreCase("stop")) {
+					SkriptProfiler.stop();
+					info(sender, "profile.stopped");
+				} else if (args[1].equalsIgnoreCase("show")) {
+					if (!SkriptProfiler.isEnabled())
+						info(sender, "profile.not running");
+					for (String line : SkriptProfiler.getTop(10))
+						Skript.info(sender, line);
+				} else if (args[1].equalsIgnoreCase("dump")) {
+					try {
+						info(sender, "profile.dumped", SkriptProfiler.dump().getName());
+					} catch (IOException e) {
+						error(sender, "profile.dump error", ExceptionUtils.toString(e));
+					}
+				}
 			} else if (args[0].equalsIgnoreCase("help")) {
 				skriptCommandHelp.showHelp(sender);
 			} else if (args[0].equalsIgnoreCase("gen-docs")) {
@@ -214,6 +214,30 @@ public abstract class SkriptConfig {
 				}
 			});
 	
+	/**
+	 * Whether triggers are prepared to run consecutive effects and conditions in a loop, see {@link ch.njol.skript.lang.TriggerCompiler}.
+	 */
+	public final static Option<Boolean> compileTriggers = new Option<Boolean>("compile triggers", true)
+			.optional(true);
+	
+	/**
+	 * Every n-th saved value is loaded again to check whether it's equal to the saved one, see {@link ch.njol.skript.variables.SerializationSelfCheck}. 0 disables the check.
+	 */
+	public final static Option<Integer> serializationSelfCheck = new Option<Integer>("serialization self-check", 0)
+			.optional(true);
+	
+	/**
+	 * Every n-th access to a global variable is counted, see {@link ch.njol.skript.variables.VariableStatistics}. 0 disables the statistics.
+	 */
+	public final static Option<Integer> variableStatistics = new Option<Integer>("variable statistics", 0)
+			.optional(true);
+	
+	/**
+	 * List variables containing a player's UUID which are only kept in memory while the player is online, see {@link ch.njol.skript.variables.PlayerPartitions}.
+	 */
+	public final static Option<String> playerVariablePartitions = new Option<String>("player variable partitions", "")
+			.optional(true);
+	
 	@Deprecated
 	public final static Option<Boolean> enableScriptCaching = new Option<Boolean>("enable script caching", false)
 			.optional(true);
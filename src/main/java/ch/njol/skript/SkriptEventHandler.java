@@ -21,9 +21,10 @@ package ch.njol.skript;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.Bukkit;
 import org.bukkit.event.Cancellable;
@@ -94,31 +95,56 @@ public abstract class SkriptEventHandler {
 	
 	private static final List<Trigger> selfRegisteredTriggers = new ArrayList<>();
 	
-	private static Iterator<Trigger> getTriggers(Class<? extends Event> event) {
-		return triggers.stream()
-			.filter(pair -> pair.getFirst().isAssignableFrom(event))
-			.map(NonNullPair::getSecond)
-			.iterator();
+	private static final Trigger[] NO_TRIGGERS = new Trigger[0];
+	
+	/**
+	 * The triggers of each event class that has been called since the triggers last changed, by the ordinal of their {@link EventPriority},
+	 * in the order they were added. Replaced with an empty map whenever triggers are added or removed and then filled lazily,
+	 * so that calling an event usually doesn't allocate anything.
+	 */
+	private static volatile Map<Class<? extends Event>, Trigger[][]> triggerIndex = new ConcurrentHashMap<>();
+	
+	private static void invalidateTriggerIndex() {
+		triggerIndex = new ConcurrentHashMap<>();
+	}
+	
+	private static Trigger[] getTriggers(Class<? extends Event> event, EventPriority priority) {
+		Trigger[][] byPriority = triggerIndex.get(event);
+		if (byPriority == null)
+			byPriority = triggerIndex.computeIfAbsent(event, SkriptEventHandler::indexTriggers);
+		return byPriority[priority.ordinal()];
+	}
+	
+	private static Trigger[][] indexTriggers(Class<? extends Event> event) {
+		EventPriority[] priorities = EventPriority.values();
+		List<List<Trigger>> lists = new ArrayList<>(priorities.length);
+		for (int i = 0; i < priorities.length; i++)
+			lists.add(new ArrayList<>());
+		for (NonNullPair<Class<? extends Event>, Trigger> pair : triggers) {
+			if (pair.getFirst().isAssignableFrom(event))
+				lists.get(pair.getSecond().getEvent().getEventPriority().ordinal()).add(pair.getSecond());
+		}
+		Trigger[][] byPriority = new Trigger[priorities.length][];
+		for (int i = 0; i < priorities.length; i++)
+			byPriority[i] = lists.get(i).isEmpty() ? NO_TRIGGERS : lists.get(i).toArray(NO_TRIGGERS);
+		return byPriority;
 	}
 	
 	private static void check(Event e, EventPriority priority) {
-		Iterator<Trigger> ts = getTriggers(e.getClass());
-		if (!ts.hasNext())
+		Trigger[] ts = getTriggers(e.getClass(), priority);
+		if (ts.length == 0)
 			return;
 		
 		if (Skript.logVeryHigh()) {
 			boolean hasTrigger = false;
-			while (ts.hasNext()) {
-				Trigger trigger = ts.next();
-				if (trigger.getEvent().getEventPriority() == priority && trigger.getEvent().check(e)) {
+			for (Trigger trigger : ts) {
+				if (trigger.getEvent().check(e)) {
 					hasTrigger = true;
 					break;
 				}
 			}
 			if (!hasTrigger)
 				return;
-			Class<? extends Event> c = e.getClass();
-			ts = getTriggers(c);
 			
 			logEventStart(e);
 		}
@@ -131,9 +157,8 @@ public abstract class SkriptEventHandler {
 			return;
 		}
 		
-		while (ts.hasNext()) {
-			Trigger t = ts.next();
-			if (t.getEvent().getEventPriority() != priority || !t.getEvent().check(e))
+		for (Trigger t : ts) {
+			if (!t.getEvent().check(e))
 				continue;
 			
 			logTriggerStart(t);
@@ -183,6 +208,7 @@ public abstract class SkriptEventHandler {
 		for (Class<? extends Event> e : events) {
 			triggers.add(new NonNullPair<>(e, trigger));
 		}
+		invalidateTriggerIndex();
 	}
 	
 	/**
@@ -202,6 +228,7 @@ public abstract class SkriptEventHandler {
 		int previousSize = triggers.size();
 		triggers.removeIf(pair -> script.equals(pair.getSecond().getScript()));
 		info.triggers += previousSize - triggers.size();
+		invalidateTriggerIndex();
 		
 		for (int i = 0; i < selfRegisteredTriggers.size(); i++) {
 			Trigger t = selfRegisteredTriggers.get(i);
@@ -220,6 +247,7 @@ public abstract class SkriptEventHandler {
 	
 	static void removeAllTriggers() {
 		triggers.clear();
+		invalidateTriggerIndex();
 		for (Trigger t : selfRegisteredTriggers)
 			((SelfRegisteringSkriptEvent) t.getEvent()).unregisterAll();
 		selfRegisteredTriggers.clear();
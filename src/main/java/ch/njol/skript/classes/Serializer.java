@@ -102,12 +102,23 @@ public abstract class Serializer<T> extends YggdrasilSerializer<T> {
 	public abstract void deserialize(T o, Fields f) throws StreamCorruptedException, NotSerializableException;
 	
 	/**
-	 * Not currently used (everything happens on Bukkit's main thread).
-	 * 
 	 * @return Whether deserialisation must be done on Bukkit's main thread.
 	 */
 	public abstract boolean mustSyncDeserialization();
 	
+	/**
+	 * Whether values of this type must be serialised on Bukkit's main thread. If this returns false, changed variables holding values of this type
+	 * are {@link ClassInfo#clone(Object) copied} on the main thread and serialised on Skript's save thread.
+	 * <p>
+	 * Only return false if values of this type are either immutable or have a {@link ClassInfo#cloner(Cloner) cloner}, and if {@link #serialize(Object)}
+	 * does not access anything that may be changed by other threads. This also applies to all objects put into the returned {@link Fields}.
+	 * 
+	 * @return Whether serialisation must be done on Bukkit's main thread. Returns true by default.
+	 */
+	public boolean mustSyncSerialization() {
+		return true;
+	}
+	
 	@Override
 	public boolean canBeInstantiated(final Class<? extends T> c) {
 		assert info != null && info.getC().isAssignableFrom(c);
@@ -444,6 +444,11 @@ public class BukkitClasses {
 						return true;
 					}
 					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
+					
 					// return l.getWorld().getName() + ":" + l.getX() + "," + l.getY() + "," + l.getZ() + "|" + l.getYaw() + "/" + l.getPitch();
 					@Override
 					@Nullable
@@ -531,6 +536,11 @@ public class BukkitClasses {
 						return false;
 					}
 					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
+					
 					@Override
 					protected boolean canBeInstantiated() {
 						return false;
@@ -617,6 +627,11 @@ public class BukkitClasses {
 					public boolean mustSyncDeserialization() {
 						return true;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}));
 		
 		Classes.registerClass(new ClassInfo<>(Inventory.class, "inventory")
@@ -939,6 +954,11 @@ public class BukkitClasses {
 					public boolean mustSyncDeserialization() {
 						return true;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}));
 		
 		Classes.registerClass(new ClassInfo<>(CommandSender.class, "commandsender")
@@ -131,6 +131,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Number.class, new NumberArithmetic()));
 		
 		Classes.registerClass(new ClassInfo<>(Long.class, "long")
@@ -194,6 +199,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Number.class, new NumberArithmetic()));
 		
 		Classes.registerClass(new ClassInfo<>(Integer.class, "integer")
@@ -255,6 +265,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Number.class, new NumberArithmetic()));
 		
 		Classes.registerClass(new ClassInfo<>(Double.class, "double")
@@ -322,6 +337,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Number.class, new NumberArithmetic()));
 		
 		Classes.registerClass(new ClassInfo<>(Float.class, "float")
@@ -387,6 +407,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Number.class, new NumberArithmetic()));
 		
 		Classes.registerClass(new ClassInfo<>(Boolean.class, "boolean")
@@ -458,6 +483,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}));
 		
 		Classes.registerClass(new ClassInfo<>(Short.class, "short")
@@ -519,6 +549,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Number.class, new NumberArithmetic()));
 		
 		Classes.registerClass(new ClassInfo<>(Byte.class, "byte")
@@ -580,6 +615,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Number.class, new NumberArithmetic()));
 		
 		Classes.registerClass(new ClassInfo<>(String.class, "string")
@@ -671,6 +711,11 @@ public class JavaClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}));
 	}
 }
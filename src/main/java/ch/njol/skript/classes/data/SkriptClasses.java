@@ -302,6 +302,11 @@ public class SkriptClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}));
 		
 		Classes.registerClass(new ClassInfo<>(Timespan.class, "timespan")
@@ -358,6 +363,11 @@ public class SkriptClasses {
 					public boolean mustSyncDeserialization() {
 						return false;
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				})
 				.math(Timespan.class, new Arithmetic<Timespan, Timespan>() {
 					@Override
@@ -458,6 +468,11 @@ public class SkriptClasses {
 							return null;
 						}
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}));
 		
 		Classes.registerClass(new ClassInfo<>(Date.class, "date")
@@ -470,6 +485,7 @@ public class SkriptClasses {
 						"subtract a day from {_yesterday}",
 						"# now {_yesterday} represents the date 24 hours before now")
 				.since("1.4")
+				.cloner(date -> new Date(date.getTimestamp())) // dates can be changed by adding or subtracting timespans
 				.serializer(new YggdrasilSerializer<Date>() {
 //						return "" + d.getTimestamp();
 					@Override
@@ -481,6 +497,11 @@ public class SkriptClasses {
 							return null;
 						}
 					}
+					
+					@Override
+					public boolean mustSyncSerialization() {
+						return false;
+					}
 				}).math(Timespan.class, new Arithmetic<Date, Timespan>() {
 					@Override
 					public Timespan difference(final Date first, final Date second) {
@@ -32,6 +32,7 @@ import ch.njol.skript.doc.Examples;
 import ch.njol.skript.doc.Name;
 import ch.njol.skript.doc.Since;
 import ch.njol.skript.lang.Effect;
+import ch.njol.skript.lang.ExecutionFrame;
 import ch.njol.skript.lang.Expression;
 import ch.njol.skript.lang.Literal;
 import ch.njol.skript.lang.SkriptParser.ParseResult;
@@ -39,7 +40,6 @@ import ch.njol.skript.lang.Trigger;
 import ch.njol.skript.lang.TriggerItem;
 import ch.njol.skript.timings.SkriptTimings;
 import ch.njol.skript.util.Timespan;
-import ch.njol.skript.variables.Variables;
 import ch.njol.util.Kleenean;
 
 /**
@@ -79,24 +79,19 @@ public class Delay extends Effect {
 		final long start = Skript.debug() ? System.nanoTime() : 0;
 		final TriggerItem next = getNext();
 		if (next != null && Skript.getInstance().isEnabled()) { // See https://github.com/SkriptLang/Skript/issues/3702
-			delayed.add(e);
+			// The frame holds the local variables and loops, and is continued after the delay
+			final ExecutionFrame frame = ExecutionFrame.of(e);
+			frame.setDelayed();
 			final Timespan d = duration.getSingle(e);
 			if (d == null)
 				return null;
 			
-			// Back up local variables
-			Object localVars = Variables.removeLocals(e);
-			
 			Bukkit.getScheduler().scheduleSyncDelayedTask(Skript.getInstance(), new Runnable() {
 				@Override
 				public void run() {
 					if (Skript.debug())
 						Skript.info(getIndentation() + "... continuing after " + (System.nanoTime() - start) / 1000000000. + "s");
 					
-					// Re-set local variables
-					if (localVars != null)
-						Variables.setLocalVariables(e, localVars);
-					
 					Object timing = null;
 					if (SkriptTimings.enabled()) { // getTrigger call is not free, do it only if we must
 						Trigger trigger = getTrigger();
@@ -105,8 +100,7 @@ public class Delay extends Effect {
 						}
 					}
 					
-					TriggerItem.walk(next, e);
-					Variables.removeLocals(e); // Clean up local vars, we may be exiting now
+					TriggerItem.walk(next, e, frame);
 					
 					SkriptTimings.stop(timing); // Stop timing if it was even started
 				}
@@ -115,15 +109,28 @@ public class Delay extends Effect {
 		return null;
 	}
 
+	/**
+	 * Events that have been delayed while not being walked in an {@link ExecutionFrame}. Executions are marked as delayed in their frames.
+	 */
 	@SuppressWarnings("null")
 	protected final static Set<Event> delayed = Collections.newSetFromMap(new WeakHashMap<Event, Boolean>());
 
+	/**
+	 * @return Whether the current execution for the given event has been delayed, i.e. whether the event has already been handled by the server
+	 */
 	public static boolean isDelayed(final Event e) {
-		return delayed.contains(e);
+		final ExecutionFrame frame = ExecutionFrame.get(e);
+		if (frame != null)
+			return frame.isDelayed();
+		return !delayed.isEmpty() && delayed.contains(e);
 	}
 
 	public static void addDelayedEvent(Event event){
-		delayed.add(event);
+		final ExecutionFrame frame = ExecutionFrame.get(event);
+		if (frame != null)
+			frame.setDelayed();
+		else
+			delayed.add(event);
 	}
 
 	@Override
@@ -124,7 +124,7 @@ public class EffExit extends Effect { // TODO [code style] warn user about code
 			if (n instanceof SecLoop) {
 				((SecLoop) n).exit(e);
 			} else if (n instanceof SecWhile) {
-				((SecWhile) n).reset();
+				((SecWhile) n).reset(e);
 			}
 
 			if (type == EVERYTHING || type == CONDITIONALS && n instanceof SecConditional || type == LOOPS && (n instanceof SecLoop || n instanceof SecWhile))
@@ -119,7 +119,7 @@ public class EffReturn extends Effect {
 			if (parent instanceof SecLoop) {
 				((SecLoop) parent).exit(e);
 			} else if (parent instanceof SecWhile) {
-				((SecWhile) parent).reset();
+				((SecWhile) parent).reset(e);
 			}
 			parent = parent.getParent();
 		}
@@ -24,13 +24,13 @@ import ch.njol.skript.doc.Examples;
 import ch.njol.skript.doc.Name;
 import ch.njol.skript.doc.Since;
 import ch.njol.skript.lang.Effect;
+import ch.njol.skript.lang.ExecutionFrame;
 import ch.njol.skript.lang.Expression;
 import ch.njol.skript.lang.SkriptParser.ParseResult;
 import ch.njol.skript.lang.Trigger;
 import ch.njol.skript.lang.TriggerItem;
 import ch.njol.skript.timings.SkriptTimings;
 import ch.njol.skript.util.Direction;
-import ch.njol.skript.variables.Variables;
 import ch.njol.util.Kleenean;
 import io.papermc.lib.PaperLib;
 import io.papermc.lib.environments.PaperEnvironment;
@@ -112,8 +112,8 @@ public class EffTeleport extends Effect {
 			return next;
 		}
 
-		Delay.addDelayedEvent(e);
-		Object localVars = Variables.removeLocals(e);
+		ExecutionFrame frame = ExecutionFrame.of(e);
+		frame.setDelayed();
 		
 		// This will either fetch the chunk instantly if on Spigot or already loaded or fetch it async if on Paper.
 		PaperLib.getChunkAtAsync(loc).thenAccept(chunk -> {
@@ -122,10 +122,6 @@ public class EffTeleport extends Effect {
 				entity.teleport(loc);
 			}
 
-			// Re-set local variables
-			if (localVars != null)
-				Variables.setLocalVariables(e, localVars);
-			
 			// Continue the rest of the trigger if there is one
 			Object timing = null;
 			if (next != null) {
@@ -136,9 +132,8 @@ public class EffTeleport extends Effect {
 					}
 				}
 
-				TriggerItem.walk(next, e);
+				TriggerItem.walk(next, e, frame);
 			}
-			Variables.removeLocals(e); // Clean up local vars, we may be exiting now
 			SkriptTimings.stop(timing);
 		});
 		return null;
@@ -23,9 +23,9 @@ import org.bukkit.event.Event;
 import org.eclipse.jdt.annotation.Nullable;
 
 import ch.njol.skript.Skript;
+import ch.njol.skript.lang.ExecutionFrame;
 import ch.njol.skript.lang.TriggerItem;
 import ch.njol.skript.util.Timespan;
-import ch.njol.skript.variables.Variables;
 
 /**
  * @author Peter Güttinger
@@ -39,25 +39,19 @@ public class IndeterminateDelay extends Delay {
 		final long start = Skript.debug() ? System.nanoTime() : 0;
 		final TriggerItem next = getNext();
 		if (next != null && Skript.getInstance().isEnabled()) { // See https://github.com/SkriptLang/Skript/issues/3702
-			delayed.add(e);
+			final ExecutionFrame frame = ExecutionFrame.of(e);
+			frame.setDelayed();
 			final Timespan d = duration.getSingle(e);
 			if (d == null)
 				return null;
 			
-			// Back up local variables
-			Object localVars = Variables.removeLocals(e);
-			
 			Bukkit.getScheduler().scheduleSyncDelayedTask(Skript.getInstance(), new Runnable() {
 				@Override
 				public void run() {
 					if (Skript.debug())
 						Skript.info(getIndentation() + "... continuing after " + (System.nanoTime() - start) / 1000000000. + "s");
 					
-					// Re-set local variables
-					if (localVars != null)
-						Variables.setLocalVariables(e, localVars);
-					
-					TriggerItem.walk(next, e);
+					TriggerItem.walk(next, e, frame);
 				}
 			}, d.getTicks_i());
 		}
@@ -0,0 +1,218 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.lang;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.bukkit.event.Event;
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.variables.LocalVariableSlots;
+import ch.njol.skript.variables.Variables;
+
+/**
+ * The state of one execution of a trigger: its local variables, whether it has been delayed, and the state of its items, e.g. the iterators of loops.
+ * <p>
+ * A frame is created by {@link Trigger#execute(Event)} (or {@link TriggerItem#walk(TriggerItem, Event)}) and is the {@link #get(Event) current frame}
+ * of the thread while its items are walked. Items that are continued later, e.g. after a delay, pass the frame on to
+ * {@link TriggerItem#walk(TriggerItem, Event, ExecutionFrame)}. Thus two executions never share their state, even if they are run for the same event,
+ * and items don't have to look up their state in maps keyed by events.
+ * <p>
+ * Items store their state in {@link #getSlot(TriggerItem) slots}, which are numbered per trigger. Local variables that are set before the frame is created
+ * (e.g. the parameters of functions) are taken over by it.
+ * <p>
+ * Items that are walked without {@link TriggerItem#walk(TriggerItem, Event)}, e.g. by addons calling {@link TriggerItem#walk(Event)} directly, share one
+ * {@link #of(Event) detached frame} per event, like the state of items was kept per event before frames existed.
+ */
+public final class ExecutionFrame {
+
+	private final static ThreadLocal<ExecutionFrame> current = new ThreadLocal<>();
+
+	/**
+	 * Frames of events whose items are walked without a frame, see {@link #of(Event)}. These frames only reference their events weakly, thus they are
+	 * removed once their events are no longer used.
+	 */
+	private final static Map<Event, ExecutionFrame> detached = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * The event, or a {@link WeakReference} to it if this is a detached frame
+	 */
+	private final Object event;
+
+	@Nullable
+	private Object locals;
+
+	/**
+	 * The slots of the local variables stored in {@link #localValues} instead of {@link #locals}, bound by the first variable using them
+	 */
+	@Nullable
+	private LocalVariableSlots localSlots;
+	@Nullable
+	private Object[] localValues;
+
+	private boolean delayed = false;
+
+	private Object[] slots;
+
+	public ExecutionFrame(final Event event) {
+		this(event, Variables.takeUnboundLocals(event));
+	}
+
+	/**
+	 * Creates a frame with the given local variables instead of the ones set for the event before.
+	 *
+	 * @param locals A VariablesMap, or null
+	 */
+	public ExecutionFrame(final Event event, final @Nullable Object locals) {
+		this(event, locals, false);
+	}
+
+	private ExecutionFrame(final Event event, final @Nullable Object locals, final boolean detached) {
+		this.event = detached ? new WeakReference<>(event) : event;
+		slots = new Object[4];
+		this.locals = locals;
+	}
+
+	/**
+	 * @return The frame being walked on the current thread if it belongs to the given event, otherwise the detached frame of the event if it has one,
+	 *         or null if no items are being walked for the given event
+	 */
+	@Nullable
+	public static ExecutionFrame get(final @Nullable Event e) {
+		final ExecutionFrame frame = current.get();
+		if (frame != null && frame.belongsTo(e))
+			return frame;
+		if (e == null || detached.isEmpty())
+			return null;
+		return detached.get(e);
+	}
+
+	/**
+	 * @return The frame being walked on the current thread, or null if no items are being walked on this thread
+	 */
+	@Nullable
+	public static ExecutionFrame current() {
+		return current.get();
+	}
+
+	/**
+	 * Returns the frame being walked on the current thread for the given event. If the event's items are not walked with
+	 * {@link TriggerItem#walk(TriggerItem, Event)}, a detached frame is created for the event instead, which is then used by all items of the event
+	 * that are not walked in a frame.
+	 *
+	 * @return The frame of the given event
+	 */
+	public static ExecutionFrame of(final Event e) {
+		final ExecutionFrame frame = get(e);
+		if (frame != null)
+			return frame;
+		return detached.computeIfAbsent(e, event -> new ExecutionFrame(event, Variables.takeUnboundLocals(event), true));
+	}
+
+	/**
+	 * Makes the given frame the current frame of this thread, e.g. to run an effect on another thread in the frame of its trigger.
+	 *
+	 * @return The previous frame, which must be restored afterwards with this method
+	 */
+	@Nullable
+	public static ExecutionFrame enter(final @Nullable ExecutionFrame frame) {
+		final ExecutionFrame previous = current.get();
+		if (frame != null || previous != null)
+			current.set(frame);
+		return previous;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Event getEvent() {
+		final Object event = this.event;
+		if (event instanceof Event)
+			return (Event) event;
+		final Event e = ((WeakReference<Event>) event).get();
+		assert e != null; // whoever uses a detached frame references its event as well
+		return e;
+	}
+
+	private boolean belongsTo(final @Nullable Event e) {
+		final Object event = this.event;
+		return event == e || event instanceof WeakReference && ((WeakReference<?>) event).get() == e;
+	}
+
+	/**
+	 * @return The local variables of this execution, a VariablesMap if set
+	 */
+	@Nullable
+	public Object getLocals() {
+		return locals;
+	}
+
+	public void setLocals(final @Nullable Object locals) {
+		this.locals = locals;
+	}
+
+	@Nullable
+	public LocalVariableSlots getLocalSlots() {
+		return localSlots;
+	}
+
+	/**
+	 * @return The values of the local variables with {@link #getLocalSlots() slots}
+	 */
+	@Nullable
+	public Object[] getLocalValues() {
+		return localValues;
+	}
+
+	public void setLocalSlots(final @Nullable LocalVariableSlots slots, final @Nullable Object[] values) {
+		localSlots = slots;
+		localValues = values;
+	}
+
+	/**
+	 * @return Whether this execution has been delayed, i.e. whether the event has already been handled by the server
+	 */
+	public boolean isDelayed() {
+		return delayed;
+	}
+
+	public void setDelayed() {
+		delayed = true;
+	}
+
+	/**
+	 * @return The state the given item stored in this frame
+	 */
+	@Nullable
+	public Object getSlot(final TriggerItem item) {
+		final int slot = item.getFrameSlot();
+		final Object[] slots = this.slots;
+		return slot < slots.length ? slots[slot] : null;
+	}
+
+	public void setSlot(final TriggerItem item, final @Nullable Object value) {
+		final int slot = item.getFrameSlot();
+		if (slot >= slots.length)
+			slots = Arrays.copyOf(slots, Math.max(slot + 1, slots.length * 2));
+		slots[slot] = value;
+	}
+
+}
@@ -24,7 +24,8 @@ import java.util.List;
 import org.bukkit.event.Event;
 import org.eclipse.jdt.annotation.Nullable;
 
-import ch.njol.skript.variables.Variables;
+import ch.njol.skript.SkriptConfig;
+import ch.njol.skript.timings.SkriptProfiler;
 
 /**
  * @author Peter Güttinger
@@ -36,7 +37,6 @@ public class Trigger extends TriggerSection {
 	
 	@Nullable
 	private final File script;
-	private int line = -1; // -1 is default: it means there is no line number available
 	private String debugLabel;
 	
 	public Trigger(final @Nullable File script, final String name, final SkriptEvent event, final List<TriggerItem> items) {
@@ -45,6 +45,8 @@ public class Trigger extends TriggerSection {
 		this.name = name;
 		this.event = event;
 		this.debugLabel = "unknown trigger";
+		if (SkriptConfig.compileTriggers.value())
+			TriggerCompiler.compile(this);
 	}
 	
 	/**
@@ -53,18 +55,22 @@ public class Trigger extends TriggerSection {
 	 * @return false if an exception occurred
 	 */
 	public boolean execute(final Event e) {
-		boolean success = TriggerItem.walk(this, e);
-		// Clear local variables
-		Variables.removeLocals(e);
+		final boolean profile = SkriptProfiler.isEnabled();
+		final long start = profile ? System.nanoTime() : 0, allocated = profile ? SkriptProfiler.getAllocatedBytes() : 0;
+		// a new frame even if this event is already being walked, as every execution has its own local variables
+		final boolean success = TriggerItem.walk(this, e, new ExecutionFrame(e));
+		if (profile)
+			SkriptProfiler.trigger(this, System.nanoTime() - start, SkriptProfiler.getAllocatedBytes() - allocated);
 		/*
-		 * Local variables can be used in delayed effects by backing reference
-		 * of VariablesMap up. Basically:
+		 * Local variables and the state of loops are kept in the frame, which is
+		 * dropped once no item holds on to it anymore. Items that continue the
+		 * execution later keep a reference to the frame and pass it on:
 		 * 
-		 * Object localVars = Variables.removeLocals(e);
+		 * ExecutionFrame frame = ExecutionFrame.of(e);
 		 * 
 		 * ... and when you want to continue execution:
 		 * 
-		 * Variables.setLocalVariables(e, localVars);
+		 * TriggerItem.walk(next, e, frame);
 		 * 
 		 * See Delay effect for reference.
 		 */
@@ -100,24 +106,6 @@ public class Trigger extends TriggerSection {
 		return script;
 	}
 
-	/**
-	 * Sets line number for this trigger's start.
-	 * Only used for debugging.
-	 * @param line Line number
-	 */
-	public void setLineNumber(int line) {
-		this.line  = line;
-	}
-	
-	/**
-	 * Gets line number for this trigger's start.
-	 * Only use it for debugging!
-	 * @return Line number.
-	 */
-	public int getLineNumber() {
-		return line;
-	}
-	
 	public void setDebugLabel(String label) {
 		this.debugLabel = label;
 	}
@@ -0,0 +1,86 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.event.Event;
+
+import ch.njol.skript.SkriptConfig;
+
+/**
+ * Prepares triggers for {@link TriggerItem#walk(TriggerItem, Event)}, as enabled by {@link SkriptConfig#compileTriggers}.
+ * <p>
+ * Consecutive items of a section that don't override {@link TriggerItem#walk(Event)}, i.e. most effects and conditions, are put into one
+ * {@link TriggerItem#block block}, which is then executed by a simple loop calling {@link TriggerItem#run(Event)} instead of walking
+ * from item to item. Items that change the control flow themselves (sections, delays, returns, etc.) are left to the interpreter,
+ * as are all items while debugging, as blocks don't print debug messages.
+ */
+public final class TriggerCompiler {
+
+	private TriggerCompiler() {}
+
+	/**
+	 * Whether a class of trigger items uses the default {@link TriggerItem#walk(Event)}
+	 */
+	private final static ClassValue<Boolean> defaultWalk = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(final Class<?> type) {
+			for (Class<?> c = type; c != TriggerItem.class && c != null; c = c.getSuperclass()) {
+				try {
+					c.getDeclaredMethod("walk", Event.class);
+					return false;
+				} catch (final NoSuchMethodException e) {}
+			}
+			return true;
+		}
+	};
+
+	/**
+	 * Compiles the given section and all sections in it.
+	 */
+	public static void compile(final TriggerSection section) {
+		final List<TriggerItem> block = new ArrayList<>();
+		for (TriggerItem item = section.first; item != null && item.getParent() == section; item = item.getNext()) {
+			if (item instanceof TriggerSection)
+				compile((TriggerSection) item);
+			if (!(item instanceof TriggerSection) && defaultWalk.get(item.getClass())) {
+				block.add(item);
+			} else {
+				finish(block);
+			}
+			if (item == section.last)
+				break;
+		}
+		finish(block);
+	}
+
+	private static void finish(final List<TriggerItem> items) {
+		if (items.size() > 1) {
+			final TriggerItem[] block = items.toArray(new TriggerItem[0]);
+			for (int i = 0; i < block.length; i++) {
+				block[i].block = block;
+				block[i].blockIndex = i;
+			}
+		}
+		items.clear();
+	}
+
+}
@@ -24,6 +24,7 @@ import org.bukkit.event.Event;
 import org.eclipse.jdt.annotation.Nullable;
 
 import ch.njol.skript.Skript;
+import ch.njol.skript.timings.SkriptProfiler;
 import ch.njol.util.StringUtils;
 
 /**
@@ -41,6 +42,25 @@ public abstract class TriggerItem implements Debuggable {
 	@Nullable
 	private TriggerItem next = null;
 	
+	/**
+	 * Consecutive items of the same section including this one which can be {@link #run(Event) run} without walking, set by {@link TriggerCompiler}.
+	 * This item is at {@link #blockIndex} in the block.
+	 */
+	@Nullable
+	TriggerItem[] block = null;
+	int blockIndex;
+	
+	private int line = -1; // -1 is default: it means there is no line number available
+	
+	/**
+	 * The index of this item's state in {@link ExecutionFrame}s, assigned when it's first used
+	 */
+	private int frameSlot = -1;
+	/**
+	 * The number of slots assigned to the items below this item if it is the root of its items, i.e. a {@link Trigger} or the effect of an effect command
+	 */
+	private int frameSlots = 0;
+	
 	protected TriggerItem() {}
 	
 	protected TriggerItem(final TriggerSection parent) {
@@ -76,16 +96,64 @@ public abstract class TriggerItem implements Debuggable {
 	protected abstract boolean run(Event e);
 	
 	/**
+	 * Walks the given item and the items following it in the current {@link ExecutionFrame} of the given event, or in a new frame if there's none.
+	 * 
 	 * @param start
 	 * @param e
 	 * @return false if an exception occurred
 	 */
 	public static boolean walk(final TriggerItem start, final Event e) {
+		return walk(start, e, null);
+	}
+	
+	/**
+	 * Walks the given item and the items following it in the given frame, e.g. to continue an execution after a delay.
+	 * 
+	 * @param start
+	 * @param e
+	 * @param frame The frame to walk in, or null to use the current frame of the given event or a new one
+	 * @return false if an exception occurred
+	 */
+	public static boolean walk(final TriggerItem start, final Event e, @Nullable ExecutionFrame frame) {
 		assert start != null && e != null;
+		if (frame == null) {
+			frame = ExecutionFrame.get(e);
+			if (frame == null)
+				frame = new ExecutionFrame(e);
+		}
+		assert frame.getEvent() == e;
+		final ExecutionFrame previous = ExecutionFrame.enter(frame);
 		TriggerItem i = start;
 		try {
-			while (i != null)
-				i = i.walk(e);
+			final boolean debug = Skript.debug();
+			final boolean profile = SkriptProfiler.isEnabled();
+			while (i != null) {
+				if (profile) {
+					final TriggerItem item = i;
+					final long startTime = System.nanoTime(), allocated = SkriptProfiler.getAllocatedBytes();
+					i = i.walk(e);
+					SkriptProfiler.item(item, System.nanoTime() - startTime, SkriptProfiler.getAllocatedBytes() - allocated);
+					continue;
+				}
+				final TriggerItem[] block = i.block;
+				if (block == null || debug) {
+					i = i.walk(e);
+					continue;
+				}
+				// same as walking the items of the block, but without debugging
+				int k = i.blockIndex;
+				for (; k < block.length; k++) {
+					i = block[k]; // reported if an exception occurs
+					if (!i.run(e))
+						break;
+				}
+				if (k == block.length) {
+					i = i.next;
+				} else {
+					final TriggerSection parent = i.parent;
+					i = parent == null ? null : parent.getNext();
+				}
+			}
 			
 			return true;
 		} catch (final StackOverflowError err) {
@@ -97,10 +165,31 @@ public abstract class TriggerItem implements Debuggable {
 		} catch (final Exception ex) {
 			if (ex.getStackTrace().length != 0) // empty exceptions have already been printed
 				Skript.exception(ex, i);
+		} finally {
+			ExecutionFrame.enter(previous);
 		}
 		return false;
 	}
 	
+	/**
+	 * @return The index of this item's state in {@link ExecutionFrame}s
+	 */
+	final int getFrameSlot() {
+		final int slot = frameSlot;
+		return slot >= 0 ? slot : assignFrameSlot();
+	}
+	
+	private int assignFrameSlot() {
+		TriggerItem root = this;
+		for (TriggerItem p = root.parent; p != null; p = p.parent)
+			root = p;
+		synchronized (root) {
+			if (frameSlot < 0)
+				frameSlot = root.frameSlots++;
+			return frameSlot;
+		}
+	}
+	
 	/**
 	 * how much to indent each level
 	 */
@@ -132,6 +221,24 @@ public abstract class TriggerItem implements Debuggable {
 		return toString(null, false);
 	}
 	
+	/**
+	 * Sets the line this item starts at in its script.
+	 * Only used for debugging and profiling.
+	 * @param line Line number
+	 */
+	public void setLineNumber(int line) {
+		this.line = line;
+	}
+	
+	/**
+	 * Gets the line this item starts at in its script.
+	 * Only use it for debugging!
+	 * @return Line number, or -1 if not available
+	 */
+	public int getLineNumber() {
+		return line;
+	}
+	
 	public TriggerItem setParent(final @Nullable TriggerSection parent) {
 		this.parent = parent;
 		return this;
@@ -26,7 +26,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -46,12 +45,14 @@ import ch.njol.skript.classes.Changer.ChangerUtils;
 import ch.njol.skript.classes.ClassInfo;
 import ch.njol.skript.classes.Comparator.Relation;
 import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.parser.ParserInstance;
 import ch.njol.skript.lang.util.SimpleExpression;
 import ch.njol.skript.registrations.Classes;
 import ch.njol.skript.registrations.Comparators;
 import ch.njol.skript.registrations.Converters;
 import ch.njol.skript.util.StringMode;
 import ch.njol.skript.util.Utils;
+import ch.njol.skript.variables.LocalVariableSlots;
 import ch.njol.skript.variables.TypeHints;
 import ch.njol.skript.variables.Variables;
 import ch.njol.util.Checker;
@@ -84,6 +85,14 @@ public class Variable<T> implements Expression<T> {
 	@Nullable
 	private final Variable<?> source;
 
+	/**
+	 * The slots of the trigger this variable was parsed in if this is a local variable with a constant name that is not part of a list,
+	 * in which case the variable is accessed by {@link #slot} instead of by its name
+	 */
+	@Nullable
+	private final LocalVariableSlots slots;
+	private final int slot;
+
 	@SuppressWarnings("unchecked")
 	private Variable(VariableString name, Class<? extends T>[] types, boolean local, boolean list, @Nullable Variable<?> source) {
 		assert name != null;
@@ -100,6 +109,20 @@ public class Variable<T> implements Expression<T> {
 		this.superType = (Class<T>) Utils.getSuperType(types);
 
 		this.source = source;
+
+		if (source != null) {
+			slots = source.slots;
+			slot = source.slot;
+		} else {
+			LocalVariableSlots triggerSlots = ParserInstance.get().getLocalVariableSlots();
+			if (local && !list && name.isSimple() && triggerSlots != null && !name.getDefaultVariableName().contains(SEPARATOR)) {
+				slots = triggerSlots;
+				slot = triggerSlots.add(name.getDefaultVariableName());
+			} else {
+				slots = null;
+				slot = -1;
+			}
+		}
 	}
 
 	/**
@@ -272,6 +295,14 @@ public class Variable<T> implements Expression<T> {
 	 */
 	@Nullable
 	public Object getRaw(Event e) {
+		LocalVariableSlots slots = this.slots;
+		if (slots != null) {
+			String n = name.getDefaultVariableName(); // constant, as the variable has a slot
+			Object val = convertIfOldPlayer(n, e, Variables.getLocalVariable(slots, slot, n, e));
+			if (val == null)
+				return Variables.getVariable(LOCAL_VARIABLE_TOKEN + n, e, false);
+			return val;
+		}
 		String n = name.toString(e);
 		if (n.endsWith(Variable.SEPARATOR + "*") != list) // prevents e.g. {%expr%} where "%expr%" ends with "::*" from returning a Map
 			return null;
@@ -331,7 +362,7 @@ public class Variable<T> implements Expression<T> {
 		Object val = Variables.getVariable(name + "*", e, local);
 		if (val == null)
 			return new EmptyIterator<>();
-		assert val instanceof TreeMap;
+		assert val instanceof Map;
 		// temporary list to prevent CMEs
 		@SuppressWarnings("unchecked")
 		Iterator<String> keys = new ArrayList<>(((Map<String, Object>) val).keySet()).iterator();
@@ -349,7 +380,7 @@ public class Variable<T> implements Expression<T> {
 					key = keys.next();
 					if (key != null) {
 						next = convertIfOldPlayer(name + key, e, Variables.getVariable(name + key, e, local));
-						if (next != null && !(next instanceof TreeMap))
+						if (next != null && !(next instanceof Map))
 							return true;
 					}
 				}
@@ -381,7 +412,7 @@ public class Variable<T> implements Expression<T> {
 		Object val = Variables.getVariable(name + "*", e, local);
 		if (val == null)
 			return new EmptyIterator<>();
-		assert val instanceof TreeMap;
+		assert val instanceof Map;
 		// temporary list to prevent CMEs
 		@SuppressWarnings("unchecked")
 		Iterator<String> keys = new ArrayList<>(((Map<String, Object>) val).keySet()).iterator();
@@ -401,7 +432,7 @@ public class Variable<T> implements Expression<T> {
 					if (key != null) {
 						next = Converters.convert(Variables.getVariable(name + key, e, local), types);
 						next = (T) convertIfOldPlayer(name + key, e, next);
-						if (next != null && !(next instanceof TreeMap))
+						if (next != null && !(next instanceof Map))
 							return true;
 					}
 				}
@@ -438,7 +469,11 @@ public class Variable<T> implements Expression<T> {
 	}
 
 	private void set(Event e, @Nullable Object value) {
-		Variables.setVariable("" + name.toString(e), value, e, local);
+		LocalVariableSlots slots = this.slots;
+		if (slots != null)
+			Variables.setLocalVariable(slots, slot, name.getDefaultVariableName(), value, e);
+		else
+			Variables.setVariable("" + name.toString(e), value, e, local);
 	}
 
 	private void setIndex(Event e, String index, @Nullable Object value) {
@@ -25,6 +25,8 @@ import ch.njol.skript.lang.SkriptEvent;
 import ch.njol.skript.lang.SkriptParser;
 import ch.njol.skript.lang.TriggerSection;
 import ch.njol.skript.log.HandlerList;
+import ch.njol.skript.variables.LocalVariableSlots;
+import ch.njol.skript.variables.Variables;
 import ch.njol.util.Kleenean;
 import ch.njol.util.coll.CollectionUtils;
 import org.bukkit.event.Event;
@@ -66,6 +68,8 @@ public class ParserInstance {
 	private Class<? extends Event>[] currentEvents;
 	@Nullable
 	private SkriptEvent currentSkriptEvent;
+	@Nullable
+	private LocalVariableSlots localVariableSlots;
 	
 	// Sections
 	private List<TriggerSection> currentSections = new ArrayList<>();
@@ -114,6 +118,15 @@ public class ParserInstance {
 	public List<TriggerSection> getCurrentSections() {
 		return currentSections;
 	}
+	
+	/**
+	 * @return The slots of the local variables of the trigger (or function or command) being parsed, or null if not parsing one.
+	 * A new instance is used after each call to {@link #setCurrentEvent(String, Class[])}.
+	 */
+	@Nullable
+	public LocalVariableSlots getLocalVariableSlots() {
+		return localVariableSlots;
+	}
 
 	/**
 	 * @return whether {@link #getCurrentSections()} contains
@@ -224,12 +237,14 @@ public class ParserInstance {
 		currentEventName = name;
 		setCurrentEvents(events);
 		hasDelayBefore = Kleenean.FALSE;
+		localVariableSlots = new LocalVariableSlots(Variables.caseInsensitiveVariables);
 	}
 	
 	public void deleteCurrentEvent() {
 		currentEventName = null;
 		setCurrentEvents(null);
 		hasDelayBefore = Kleenean.FALSE;
+		localVariableSlots = null;
 	}
 	
 	public boolean isCurrentEvent(@Nullable Class<? extends Event> event) {
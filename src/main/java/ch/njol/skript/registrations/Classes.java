@@ -19,12 +19,12 @@
 package ch.njol.skript.registrations;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.NotSerializableException;
 import java.io.SequenceInputStream;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,12 +33,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.Chunk;
 import org.bukkit.entity.Item;
 import org.bukkit.inventory.ItemStack;
 import org.eclipse.jdt.annotation.Nullable;
@@ -58,14 +59,16 @@ import ch.njol.skript.log.ParseLogHandler;
 import ch.njol.skript.log.SkriptLogger;
 import ch.njol.skript.util.StringMode;
 import ch.njol.skript.variables.DatabaseStorage;
+import ch.njol.skript.variables.SerializationSelfCheck;
 import ch.njol.skript.variables.SerializedVariable;
 import ch.njol.skript.variables.Variables;
 import ch.njol.util.Kleenean;
+import ch.njol.util.NonNullPair;
 import ch.njol.util.StringUtils;
+import ch.njol.yggdrasil.DefaultYggdrasilOutputStream;
 import ch.njol.yggdrasil.Tag;
 import ch.njol.yggdrasil.Yggdrasil;
 import ch.njol.yggdrasil.YggdrasilInputStream;
-import ch.njol.yggdrasil.YggdrasilOutputStream;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
@@ -79,7 +82,7 @@ public abstract class Classes {
 	private static ClassInfo<?>[] classInfos = null;
 	private final static List<ClassInfo<?>> tempClassInfos = new ArrayList<>();
 	private final static HashMap<Class<?>, ClassInfo<?>> exactClassInfos = new HashMap<>();
-	private final static HashMap<Class<?>, ClassInfo<?>> superClassInfos = new HashMap<>();
+	private final static Map<Class<?>, ClassInfo<?>> superClassInfos = new ConcurrentHashMap<>(); // used by Yggdrasil on the loading and save threads
 	private final static HashMap<String, ClassInfo<?>> classInfosByCodeName = new HashMap<>();
 	
 	/**
@@ -675,15 +678,21 @@ public abstract class Classes {
 	@SuppressWarnings("null")
 	private final static Charset UTF_8 = Charset.forName("UTF-8");
 	
+	/**
+	 * The start of a value's data that is not saved with the value, i.e. its tag and class ID. Yggdrasil's header is not part of it as headerless streams are used.
+	 */
+	private final static Map<ClassInfo<?>, byte[]> yggdrasilStarts = new ConcurrentHashMap<>();
+	
 	private static byte[] getYggdrasilStart(final ClassInfo<?> c) throws NotSerializableException {
+		byte[] r = yggdrasilStarts.get(c);
+		if (r != null)
+			return r;
 		assert Enum.class.isAssignableFrom(Kleenean.class) && Tag.getType(Kleenean.class) == Tag.T_ENUM : Tag.getType(Kleenean.class); // TODO why is this check here?
 		final Tag t = Tag.getType(c.getC());
 		assert t.isWrapper() || t == Tag.T_STRING || t == Tag.T_OBJECT || t == Tag.T_ENUM;
 		final byte[] cn = t == Tag.T_OBJECT || t == Tag.T_ENUM ? Variables.yggdrasil.getID(c.getC()).getBytes(UTF_8) : null;
-		final byte[] r = new byte[YGGDRASIL_START.length + 1 + (cn == null ? 0 : 1 + cn.length)];
+		r = new byte[1 + (cn == null ? 0 : 1 + cn.length)];
 		int i = 0;
-		for (; i < YGGDRASIL_START.length; i++)
-			r[i] = YGGDRASIL_START[i];
 		r[i++] = t.tag;
 		if (cn != null) {
 			r[i++] = (byte) cn.length;
@@ -691,19 +700,86 @@ public abstract class Classes {
 				r[i++] = cn[j];
 		}
 		assert i == r.length;
+		yggdrasilStarts.put(c, r);
 		return r;
 	}
 	
 	/**
-	 * Must be called on the appropriate thread for the given value (i.e. the main thread currently)
+	 * Reused to serialise values. Each thread has its own as values are serialised on the main thread and the save thread.
+	 */
+	private final static ThreadLocal<ByteBuffer> serializationBuffer = new ThreadLocal<>();
+	
+	/**
+	 * Larger buffers are not kept after serialising an unusually large value.
+	 */
+	private final static int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+	
+	/**
+	 * Must be called on Bukkit's main thread.
 	 */
 	public static SerializedVariable.@Nullable Value serialize(@Nullable Object o) {
 		if (o == null)
 			return null;
 		
-		// temporary
 		assert Bukkit.isPrimaryThread();
 		
+		final NonNullPair<ClassInfo<?>, Object> p = getSerializationInfo(o);
+		if (p == null)
+			return null;
+		return serialize(p.getFirst(), p.getSecond());
+	}
+	
+	/**
+	 * May be called on any thread.
+	 * 
+	 * @return Whether the given value can only be serialised on Bukkit's main thread, see {@link Serializer#mustSyncSerialization()}
+	 */
+	public static boolean mustSyncSerialization(final Object o) {
+		final NonNullPair<ClassInfo<?>, Object> p = getSerializationInfo(o);
+		if (p == null)
+			return false;
+		final Serializer<?> s = p.getFirst().getSerializer();
+		return s != null && s.mustSyncSerialization();
+	}
+	
+	/**
+	 * Like {@link #serialize(Object)}, but may be called on any thread if the value doesn't {@link #mustSyncSerialization(Object) have to be serialised
+	 * on the main thread}. Unlike {@link #prepareAsyncSerialization(Object)} the value is not copied, thus it must not be changed in the meantime.
+	 */
+	public static SerializedVariable.@Nullable Value serializeOnAnyThread(final Object o) {
+		final NonNullPair<ClassInfo<?>, Object> p = getSerializationInfo(o);
+		if (p == null)
+			return null;
+		return serialize(p.getFirst(), p.getSecond());
+	}
+	
+	/**
+	 * Prepares a value to be serialised on another thread, see {@link Serializer#mustSyncSerialization()}. Must be called on Bukkit's main thread.
+	 * 
+	 * @param o
+	 * @return The class info to serialise the value as and a copy of the value, which can be passed to {@link #serialize(ClassInfo, Object)} on any thread,
+	 *         or null if the value must be serialised on the main thread or cannot be serialised at all.
+	 */
+	@Nullable
+	public static NonNullPair<ClassInfo<?>, Object> prepareAsyncSerialization(final Object o) {
+		assert Bukkit.isPrimaryThread();
+		final NonNullPair<ClassInfo<?>, Object> p = getSerializationInfo(o);
+		if (p == null)
+			return null;
+		final Serializer<?> s = p.getFirst().getSerializer();
+		if (s == null || s.mustSyncSerialization())
+			return null;
+		final Object copy = Classes.clone(p.getSecond());
+		assert copy != null;
+		p.setSecond(copy);
+		return p;
+	}
+	
+	/**
+	 * @return The class info to serialise the given value as and the value converted to that class, or null if the value cannot be saved
+	 */
+	@Nullable
+	private static NonNullPair<ClassInfo<?>, Object> getSerializationInfo(Object o) {
 		ClassInfo<?> ci = getSuperClassInfo(o.getClass());
 		if (ci.getSerializeAs() != null) {
 			ci = getExactClassInfo(ci.getSerializeAs());
@@ -717,49 +793,71 @@ public abstract class Classes {
 				return null;
 			}
 		}
-		
+		if (ci.getSerializer() == null) // value cannot be saved
+			return null;
+		return new NonNullPair<ClassInfo<?>, Object>(ci, o);
+	}
+	
+	/**
+	 * Serialises a value as the given class, which must be the class returned by {@link #prepareAsyncSerialization(Object)}.
+	 * <p>
+	 * Must be called on Bukkit's main thread if the class's serializer {@link Serializer#mustSyncSerialization() must serialise synchronously}.
+	 */
+	public static SerializedVariable.@Nullable Value serialize(final ClassInfo<?> ci, final Object o) {
 		final Serializer<?> s = ci.getSerializer();
 		if (s == null) // value cannot be saved
 			return null;
 		
-		assert s.mustSyncDeserialization() ? Bukkit.isPrimaryThread() : true;
+		assert !s.mustSyncSerialization() || Bukkit.isPrimaryThread() : ci;
 		
+		ByteBuffer buf = serializationBuffer.get();
+		if (buf == null)
+			buf = ByteBuffer.allocate(4096);
+		else
+			serializationBuffer.set(null); // in case a serializer serialises another value
+		buf.clear();
 		try {
-			final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-			final YggdrasilOutputStream yout = Variables.yggdrasil.newOutputStream(bout);
+			final DefaultYggdrasilOutputStream yout = Variables.yggdrasil.newHeaderlessOutputStream(buf);
 			yout.writeObject(o);
-			yout.flush();
-			yout.close();
-			final byte[] r = bout.toByteArray();
+			buf = yout.getBuffer();
+			final byte[] r = buf.array();
 			final byte[] start = getYggdrasilStart(ci);
 			for (int i = 0; i < start.length; i++)
-				assert r[i] == start[i] : o + " (" + ci.getC().getName() + "); " + Arrays.toString(start) + ", " + Arrays.toString(r);
-			final byte[] r2 = new byte[r.length - start.length];
-			System.arraycopy(r, start.length, r2, 0, r2.length);
+				assert r[i] == start[i] : o + " (" + ci.getC().getName() + "); " + Arrays.toString(start) + ", " + Arrays.toString(Arrays.copyOf(r, buf.position()));
+			final byte[] r2 = Arrays.copyOfRange(r, start.length, buf.position());
+			assert r2 != null;
 			
-			Object d;
-			assert equals(o, d = deserialize(ci, new ByteArrayInputStream(r2))) : o + " (" + o.getClass() + ") != " + d + " (" + (d == null ? null : d.getClass()) + "): " + Arrays.toString(r);
+			SerializationSelfCheck.serialized(ci, o, r2);
 			
 			return new SerializedVariable.Value(ci.getCodeName(), r2);
 		} catch (final IOException e) { // shouldn't happen
 			Skript.exception(e);
 			return null;
+		} finally {
+			if (buf.capacity() <= MAX_POOLED_BUFFER_SIZE)
+				serializationBuffer.set(buf);
 		}
 	}
 	
-	private static boolean equals(final @Nullable Object o, final @Nullable Object d) {
-		if (o instanceof Chunk) { // CraftChunk does neither override equals nor is it a "coordinate-specific singleton" like Block
-			if (!(d instanceof Chunk))
-				return false;
-			final Chunk c1 = (Chunk) o, c2 = (Chunk) d;
-			return c1.getWorld().equals(c2.getWorld()) && c1.getX() == c2.getX() && c1.getZ() == c2.getZ();
-		}
-		return o == null ? d == null : o.equals(d);
-	}
-	
 	@Nullable
 	public static Object deserialize(final ClassInfo<?> type, final byte[] value) {
-		return deserialize(type, new ByteArrayInputStream(value));
+		Serializer<?> s;
+		assert (s = type.getSerializer()) != null && (s.mustSyncDeserialization() ? Bukkit.isPrimaryThread() : true) : type + "; " + s + "; " + Bukkit.isPrimaryThread();
+		YggdrasilInputStream in = null;
+		try {
+			in = Variables.yggdrasil.newHeaderlessInputStream(ByteBuffer.wrap(getYggdrasilStart(type)), ByteBuffer.wrap(value));
+			return in.readObject();
+		} catch (final IOException e) { // i.e. invalid save
+			if (Skript.testing())
+				e.printStackTrace();
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (final IOException e) {}
+			}
+		}
 	}
 	
 	@Nullable
@@ -767,7 +865,7 @@ public abstract class Classes {
 		final ClassInfo<?> ci = getClassInfoNoError(type);
 		if (ci == null)
 			return null;
-		return deserialize(ci, new ByteArrayInputStream(value));
+		return deserialize(ci, value);
 	}
 	
 	@Nullable
@@ -776,7 +874,7 @@ public abstract class Classes {
 		assert (s = type.getSerializer()) != null && (s.mustSyncDeserialization() ? Bukkit.isPrimaryThread() : true) : type + "; " + s + "; " + Bukkit.isPrimaryThread();
 		YggdrasilInputStream in = null;
 		try {
-			value = new SequenceInputStream(new ByteArrayInputStream(getYggdrasilStart(type)), value);
+			value = new SequenceInputStream(new ByteArrayInputStream(YGGDRASIL_START), new SequenceInputStream(new ByteArrayInputStream(getYggdrasilStart(type)), value));
 			in = Variables.yggdrasil.newInputStream(value);
 			return in.readObject();
 		} catch (final IOException e) { // i.e. invalid save
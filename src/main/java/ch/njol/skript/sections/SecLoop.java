@@ -21,6 +21,7 @@ package ch.njol.skript.sections;
 import ch.njol.skript.Skript;
 import ch.njol.skript.SkriptAPIException;
 import ch.njol.skript.config.SectionNode;
+import ch.njol.skript.lang.ExecutionFrame;
 import ch.njol.skript.lang.Expression;
 import ch.njol.skript.lang.Section;
 import ch.njol.skript.lang.SkriptParser.ParseResult;
@@ -36,8 +37,6 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 public class SecLoop extends Section {
 
@@ -48,8 +47,20 @@ public class SecLoop extends Section {
 	@SuppressWarnings("NotNullFieldNotInitialized")
 	private Expression<?> expr;
 
-	private final transient Map<Event, Object> current = new WeakHashMap<>();
-	private final transient Map<Event, Iterator<?>> currentIter = new WeakHashMap<>();
+	/**
+	 * The state of a running loop, stored in its {@link ExecutionFrame}
+	 */
+	private final static class LoopState {
+
+		final Iterator<?> iter;
+		@Nullable
+		Object current;
+
+		LoopState(Iterator<?> iter) {
+			this.iter = iter;
+		}
+
+	}
 
 	@Nullable
 	private TriggerItem actualNext;
@@ -83,22 +94,19 @@ public class SecLoop extends Section {
 	@Override
 	@Nullable
 	protected TriggerItem walk(Event e) {
-		Iterator<?> iter = currentIter.get(e);
-		if (iter == null) {
-			iter = expr instanceof Variable ? ((Variable<?>) expr).variablesIterator(e) : expr.iterator(e);
-			if (iter != null) {
-				if (iter.hasNext())
-					currentIter.put(e, iter);
-				else
-					iter = null;
-			}
+		ExecutionFrame frame = ExecutionFrame.of(e);
+		LoopState state = (LoopState) frame.getSlot(this);
+		if (state == null) {
+			Iterator<?> iter = expr instanceof Variable ? ((Variable<?>) expr).variablesIterator(e) : expr.iterator(e);
+			if (iter != null && iter.hasNext())
+				frame.setSlot(this, state = new LoopState(iter));
 		}
-		if (iter == null || !iter.hasNext()) {
-			exit(e);
+		if (state == null || !state.iter.hasNext()) {
+			frame.setSlot(this, null);
 			debug(e, false);
 			return actualNext;
 		} else {
-			current.put(e, iter.next());
+			state.current = state.iter.next();
 			return walk(e, true);
 		}
 	}
@@ -110,7 +118,9 @@ public class SecLoop extends Section {
 
 	@Nullable
 	public Object getCurrent(Event e) {
-		return current.get(e);
+		ExecutionFrame frame = ExecutionFrame.get(e);
+		LoopState state = frame == null ? null : (LoopState) frame.getSlot(this);
+		return state == null ? null : state.current;
 	}
 
 	public Expression<?> getLoopedExpression() {
@@ -129,7 +139,8 @@ public class SecLoop extends Section {
 	}
 
 	public void exit(Event event) {
-		current.remove(event);
-		currentIter.remove(event);
+		ExecutionFrame frame = ExecutionFrame.get(event);
+		if (frame != null)
+			frame.setSlot(this, null);
 	}
 }
@@ -21,6 +21,7 @@ package ch.njol.skript.sections;
 import ch.njol.skript.Skript;
 import ch.njol.skript.config.SectionNode;
 import ch.njol.skript.lang.Condition;
+import ch.njol.skript.lang.ExecutionFrame;
 import ch.njol.skript.lang.Expression;
 import ch.njol.skript.lang.Section;
 import ch.njol.skript.lang.SkriptParser.ParseResult;
@@ -44,7 +45,6 @@ public class SecWhile extends Section {
 	private TriggerItem actualNext;
 
 	private boolean doWhile;
-	private boolean ranDoWhile = false;
 
 	@Override
 	public boolean init(Expression<?>[] exprs,
@@ -69,11 +69,14 @@ public class SecWhile extends Section {
 	@Nullable
 	@Override
 	protected TriggerItem walk(Event e) {
-		if ((doWhile && !ranDoWhile) || condition.check(e)) {
-			ranDoWhile = true;
+		ExecutionFrame frame = ExecutionFrame.of(e);
+		// whether a do-while loop already ran once is stored in the frame, as the loop may run in several executions at once
+		if ((doWhile && frame.getSlot(this) == null) || condition.check(e)) {
+			if (doWhile)
+				frame.setSlot(this, Boolean.TRUE);
 			return walk(e, true);
 		} else {
-			reset();
+			reset(e);
 			debug(e, false);
 			return actualNext;
 		}
@@ -95,8 +98,22 @@ public class SecWhile extends Section {
 		return (doWhile ? "do " : "") + "while " + condition.toString(e, debug);
 	}
 
+	/**
+	 * Resets this loop in the execution frame that is currently being walked on this thread.
+	 *
+	 * @deprecated Use {@link #reset(Event)}, as the state of the loop is kept per execution
+	 */
+	@Deprecated
 	public void reset() {
-		ranDoWhile = false;
+		ExecutionFrame frame = ExecutionFrame.current();
+		if (frame != null)
+			reset(frame.getEvent());
+	}
+
+	public void reset(Event e) {
+		ExecutionFrame frame = ExecutionFrame.get(e);
+		if (frame != null)
+			frame.setSlot(this, null);
 	}
 
 }
@@ -0,0 +1,290 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.timings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.lang.Trigger;
+import ch.njol.skript.lang.TriggerItem;
+import ch.njol.skript.lang.TriggerSection;
+import ch.njol.skript.util.FileUtils;
+
+/**
+ * Measures how often and how long triggers and their items run, independently of Paper's timings. Started and stopped with <tt>/skript profile</tt>.
+ * <p>
+ * Items are measured without the items they contain, e.g. a loop's time only includes checking whether to loop again, thus the times of all items
+ * of a trigger add up to the time of the trigger (if it isn't delayed). All counters are lock-free, so that triggers running on different threads
+ * don't wait for each other.
+ */
+public final class SkriptProfiler {
+
+	private SkriptProfiler() {}
+
+	/**
+	 * Durations are counted in buckets of powers of two nanoseconds, the last bucket containing everything longer than about 1 second.
+	 */
+	private final static int BUCKETS = 31;
+
+	/**
+	 * The measurements of one trigger or item
+	 */
+	private final static class Entry {
+
+		final String label;
+
+		/**
+		 * The labels of the trigger and sections containing the item followed by its own label, or only the trigger's label for triggers
+		 */
+		final String stack;
+
+		final LongAdder count = new LongAdder(), nanos = new LongAdder(), bytes = new LongAdder();
+		final AtomicLong max = new AtomicLong();
+		final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		Entry(final String label, final String stack) {
+			this.label = label;
+			this.stack = stack;
+		}
+
+		void record(final long nanos, final long bytes) {
+			count.increment();
+			this.nanos.add(nanos);
+			if (bytes > 0)
+				this.bytes.add(bytes);
+			if (nanos > max.get())
+				max.accumulateAndGet(nanos, Math::max);
+			histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+		}
+
+		/**
+		 * @return The duration that the given fraction of runs didn't exceed, rounded up to the next power of two
+		 */
+		long percentile(final double p) {
+			final long total = count.sum();
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += histogram.get(i);
+				if (seen >= p * total)
+					return 1L << i;
+			}
+			return max.get();
+		}
+
+	}
+
+	private static volatile boolean enabled = false;
+
+	private static volatile long started = 0, stopped = 0;
+
+	/**
+	 * Measurements by trigger or item. Triggers and items are compared by identity, thus a reloaded trigger gets new entries,
+	 * which are combined with the old ones when the results are shown.
+	 */
+	private final static Map<TriggerItem, Entry> triggers = new ConcurrentHashMap<>(), items = new ConcurrentHashMap<>();
+
+	@Nullable
+	private final static com.sun.management.ThreadMXBean threads;
+	static {
+		com.sun.management.ThreadMXBean t = null;
+		try {
+			final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+				t = (com.sun.management.ThreadMXBean) bean;
+				t.setThreadAllocatedMemoryEnabled(true);
+			}
+		} catch (final LinkageError | UnsupportedOperationException | SecurityException e) {} // not a HotSpot JVM
+		threads = t;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts profiling, discarding previous results.
+	 */
+	public static void start() {
+		reset();
+		started = System.currentTimeMillis();
+		stopped = 0;
+		enabled = true;
+	}
+
+	public static void stop() {
+		enabled = false;
+		stopped = System.currentTimeMillis();
+	}
+
+	public static void reset() {
+		triggers.clear();
+		items.clear();
+		started = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return An estimate of the number of bytes allocated by the current thread so far, or 0 if the JVM doesn't support measuring allocations
+	 */
+	public static long getAllocatedBytes() {
+		final com.sun.management.ThreadMXBean threads = SkriptProfiler.threads;
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Records a run of a whole trigger.
+	 */
+	public static void trigger(final Trigger t, final long nanos, final long bytes) {
+		Entry entry = triggers.get(t);
+		if (entry == null)
+			entry = triggers.computeIfAbsent(t, k -> new Entry(label(t), label(t)));
+		entry.record(nanos, bytes);
+	}
+
+	/**
+	 * Records a single walk of an item, excluding the items in it if it is a section.
+	 */
+	public static void item(final TriggerItem item, final long nanos, final long bytes) {
+		Entry entry = items.get(item);
+		if (entry == null)
+			entry = items.computeIfAbsent(item, k -> new Entry(label(item), stack(item)));
+		entry.record(nanos, bytes);
+	}
+
+	private static String label(final TriggerItem item) {
+		final Trigger t = item.getTrigger();
+		final File script = t == null ? null : t.getScript();
+		String text;
+		try {
+			text = item instanceof Trigger ? ((Trigger) item).getName() : item.toString(null, false);
+		} catch (final RuntimeException e) { // toString is usually only used for debugging
+			text = item.getClass().getSimpleName();
+		}
+		if (text.length() > 60)
+			text = text.substring(0, 57) + "...";
+		// ';' separates frames in the collapsed stack format
+		return ((script == null ? "<unknown>" : script.getName()) + ":" + item.getLineNumber() + " " + text).replace(';', ',');
+	}
+
+	private static String stack(final TriggerItem item) {
+		final StringBuilder b = new StringBuilder(label(item));
+		for (TriggerSection s = item.getParent(); s != null; s = s.getParent())
+			b.insert(0, label(s) + ";");
+		return "" + b;
+	}
+
+	/**
+	 * Combines the entries of reloaded triggers and items with the same label.
+	 */
+	private static List<Entry> combine(final Map<TriggerItem, Entry> entries) {
+		final Map<String, Entry> combined = new LinkedHashMap<>();
+		for (final Entry e : entries.values()) {
+			final Entry c = combined.computeIfAbsent(e.stack, s -> new Entry(e.label, e.stack));
+			c.count.add(e.count.sum());
+			c.nanos.add(e.nanos.sum());
+			c.bytes.add(e.bytes.sum());
+			c.max.accumulateAndGet(e.max.get(), Math::max);
+			for (int i = 0; i < BUCKETS; i++)
+				c.histogram.addAndGet(i, e.histogram.get(i));
+		}
+		final List<Entry> list = new ArrayList<>(combined.values());
+		list.sort(Comparator.comparingLong((Entry e) -> e.nanos.sum()).reversed());
+		return list;
+	}
+
+	private static String format(final Entry e) {
+		final long count = e.count.sum(), nanos = e.nanos.sum();
+		return e.label + ": " + count + "x, total " + String.format("%.2f", nanos / 1e6) + " ms, avg " + String.format("%.1f", count == 0 ? 0 : nanos / 1e3 / count) + " µs"
+				+ ", p50 < " + String.format("%.1f", e.percentile(0.5) / 1e3) + " µs, p99 < " + String.format("%.1f", e.percentile(0.99) / 1e3) + " µs"
+				+ ", max " + String.format("%.1f", e.max.get() / 1e3) + " µs" + (threads == null ? "" : ", ~" + e.bytes.sum() / Math.max(1, count) + " bytes allocated per run");
+	}
+
+	/**
+	 * @return The given number of triggers and items that took the most time in total, as lines of text
+	 */
+	public static List<String> getTop(final int limit) {
+		final List<String> lines = new ArrayList<>();
+		lines.add("Triggers:");
+		for (final Entry e : top(combine(triggers), limit))
+			lines.add(" - " + format(e));
+		lines.add("Lines:");
+		for (final Entry e : top(combine(items), limit))
+			lines.add(" - " + format(e));
+		return lines;
+	}
+
+	private static List<Entry> top(final List<Entry> entries, final int limit) {
+		return entries.subList(0, Math.min(limit, entries.size()));
+	}
+
+	/**
+	 * Writes the results to the folder 'profiles' in Skript's folder: the items' times in the collapsed stack format used by flame graph tools
+	 * (in microseconds), and the histograms of all triggers and items.
+	 *
+	 * @return The file containing the stacks
+	 */
+	public static File dump() throws IOException {
+		final File folder = new File(Skript.getInstance().getDataFolder(), "profiles");
+		if (!folder.exists() && !folder.mkdirs())
+			throw new IOException("Cannot create the folder " + folder.getName());
+		final String suffix = FileUtils.getBackupSuffix();
+		final File stacks = new File(folder, "profile_" + suffix + ".collapsed");
+		try (PrintWriter out = new PrintWriter(stacks, "UTF-8")) {
+			for (final Entry e : combine(items)) {
+				final long micros = e.nanos.sum() / 1000;
+				if (micros > 0)
+					out.println(e.stack + " " + micros);
+			}
+		}
+		final File histograms = new File(folder, "profile_" + suffix + ".txt");
+		try (PrintWriter out = new PrintWriter(histograms, "UTF-8")) {
+			out.println("# Profiled from " + new Date(started) + " to " + new Date(stopped == 0 ? System.currentTimeMillis() : stopped));
+			out.println("# Histograms list how many runs took less than the given time");
+			for (final List<Entry> entries : Arrays.asList(combine(triggers), combine(items))) {
+				out.println();
+				for (final Entry e : entries) {
+					out.println(format(e));
+					for (int i = 0; i < BUCKETS; i++) {
+						final long n = e.histogram.get(i);
+						if (n != 0)
+							out.println("    < " + (i == BUCKETS - 1 ? "∞" : String.format("%.1f µs", (1L << i) / 1e3)) + ": " + n);
+					}
+				}
+			}
+		}
+		return stacks;
+	}
+
+}
@@ -23,12 +23,11 @@ import org.bukkit.event.Event;
 import org.eclipse.jdt.annotation.Nullable;
 
 import ch.njol.skript.Skript;
-import ch.njol.skript.effects.Delay;
 import ch.njol.skript.lang.Effect;
+import ch.njol.skript.lang.ExecutionFrame;
 import ch.njol.skript.lang.Trigger;
 import ch.njol.skript.lang.TriggerItem;
 import ch.njol.skript.timings.SkriptTimings;
-import ch.njol.skript.variables.Variables;
 
 /**
  * Effects that extend this class are ran asynchronously. Next trigger item will be ran
@@ -46,18 +45,19 @@ public abstract class AsyncEffect extends Effect {
 	protected TriggerItem walk(Event e) {
 		debug(e, true);
 		
-		Delay.addDelayedEvent(e); // Mark this event as delayed
-		Object localVars = Variables.removeLocals(e); // Back up local variables
+		ExecutionFrame frame = ExecutionFrame.of(e); // Holds the local variables
+		frame.setDelayed(); // Mark this execution as delayed
 
 		if (!Skript.getInstance().isEnabled()) // See https://github.com/SkriptLang/Skript/issues/3702
 			return null;
 
 		Bukkit.getScheduler().runTaskAsynchronously(Skript.getInstance(), () -> {
-			// Re-set local variables
-			if (localVars != null)
-				Variables.setLocalVariables(e, localVars);
-			
-			execute(e); // Execute this effect
+			ExecutionFrame previous = ExecutionFrame.enter(frame); // Make local variables available to this effect
+			try {
+				execute(e); // Execute this effect
+			} finally {
+				ExecutionFrame.enter(previous);
+			}
 			
 			if (getNext() != null) {
 				Bukkit.getScheduler().runTask(Skript.getInstance(), () -> { // Walk to next item synchronously
@@ -69,14 +69,10 @@ public abstract class AsyncEffect extends Effect {
 						}
 					}
 					
-					TriggerItem.walk(getNext(), e);
-					
-					Variables.removeLocals(e); // Clean up local vars, we may be exiting now
+					TriggerItem.walk(getNext(), e, frame);
 					
 					SkriptTimings.stop(timing); // Stop timing if it was even started
 				});
-			} else {
-				Variables.removeLocals(e);
 			}
 		});
 		return null;
@@ -23,8 +23,10 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -62,6 +64,19 @@ public abstract class FileUtils {
 	}
 	
 	public static File backup(final File f) throws IOException {
+		final File backup = getBackupFile(f, "");
+		copy(f, backup);
+		return backup;
+	}
+	
+	/**
+	 * Creates the backups folder next to the given file if necessary and returns a new file in it named after the given file and the current date and time.
+	 * 
+	 * @param suffix Appended to the file name, e.g. ".gz" if the backup will be compressed
+	 * @return The backup file, which does not exist yet
+	 * @throws IOException If the folder could not be created or the file already exists
+	 */
+	public static File getBackupFile(final File f, final String suffix) throws IOException {
 		String name = f.getName();
 		final int c = name.lastIndexOf('.');
 		final String ext = c == -1 ? null : name.substring(c + 1);
@@ -70,10 +85,9 @@ public abstract class FileUtils {
 		final File backupFolder = new File(f.getParentFile(), "backups" + File.separator);
 		if (!backupFolder.exists() && !backupFolder.mkdirs())
 			throw new IOException("Cannot create backups folder");
-		final File backup = new File(backupFolder, name + "_" + getBackupSuffix() + (ext == null ? "" : "." + ext));
+		final File backup = new File(backupFolder, name + "_" + getBackupSuffix() + (ext == null ? "" : "." + ext) + suffix);
 		if (backup.exists())
 			throw new IOException("Backup file " + backup.getName() + " does already exist");
-		copy(f, backup);
 		return backup;
 	}
 	
@@ -106,6 +120,21 @@ public abstract class FileUtils {
 		return to;
 	}
 	
+	/**
+	 * Appends the part of a file after the given position to another file.
+	 * 
+	 * @param position The number of bytes at the start of <tt>from</tt> to skip
+	 */
+	public static void append(final File from, final long position, final File to) throws IOException {
+		try (FileChannel in = FileChannel.open(from.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(to.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			final long size = in.size();
+			long pos = position;
+			while (pos < size)
+				pos += in.transferTo(pos, size - pos, out);
+		}
+	}
+	
 	public static void copy(final File from, final File to) throws IOException {
 		if (!RUNNINGJAVA6) {
 			Files.copy(from.toPath(), to.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
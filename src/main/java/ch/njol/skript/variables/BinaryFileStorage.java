@@ -0,0 +1,757 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.bukkit.Bukkit;
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.SectionNode;
+import ch.njol.skript.log.SkriptLogger;
+import ch.njol.skript.util.ExceptionUtils;
+import ch.njol.skript.util.FileUtils;
+import ch.njol.skript.util.Task;
+import ch.njol.skript.util.Version;
+import ch.njol.skript.variables.SerializedVariable.Value;
+import ch.njol.util.NotifyingReference;
+
+/**
+ * A variable storage like {@link FlatFileStorage}, but using a compact binary format instead of CSV.
+ * <p>
+ * The file consists of a header followed by blocks. Every block is prefixed with its stored and its uncompressed length and a CRC32 checksum,
+ * and is compressed with deflate if that makes it smaller. Blocks are self-contained: each block has its own table of type names, and each name
+ * is stored as the length of the prefix it shares with the previous name of the block followed by the rest of the name, which makes the sorted
+ * blocks of a rewritten file particularly small. Changes are appended as one block per batch, and the whole file is rewritten every once in a
+ * while just like a CSV file. A block that was only partially written when the server crashed is cut off when the file is loaded.
+ * <p>
+ * The file is read using memory-mapped I/O. A CSV file is converted to this format when it is loaded by a storage of this type.
+ */
+public class BinaryFileStorage extends VariablesStorage implements SnapshotStorage {
+	
+	/**
+	 * 'SKVB'
+	 */
+	private final static int MAGIC_NUMBER = 0x534B5642;
+	
+	private final static short FORMAT_VERSION = 1;
+	
+	private final static int HEADER_SIZE = 4 + 2;
+	
+	/**
+	 * stored length, uncompressed length, checksum, flags
+	 */
+	private final static int BLOCK_HEADER_SIZE = 4 + 4 + 4 + 1;
+	
+	private final static byte FLAG_DEFLATE = 1;
+	
+	/**
+	 * A new block is started after this many bytes of records when the whole file is written
+	 */
+	private final static int BLOCK_SIZE = 64 * 1024;
+	
+	/**
+	 * Larger files are mapped in several parts
+	 */
+	private final static long MAX_MAPPING_SIZE = 1 << 30;
+	
+	/**
+	 * Defaults for the batches in which changes are appended.
+	 */
+	private final static int DEFAULT_BATCH_SIZE = 1000;
+	private final static long DEFAULT_BATCH_LATENCY = 50;
+	
+	private final static int REQUIRED_CHANGES_FOR_RESAVE = 1000;
+	
+	/**
+	 * A Lock on this object must be acquired after connectionLock (if that lock is used) (and thus also after {@link Variables#getReadLock()}).
+	 */
+	private final NotifyingReference<OutputStream> changesOut = new NotifyingReference<>();
+	
+	private volatile boolean loaded = false;
+	
+	final AtomicInteger changes = new AtomicInteger(0);
+	
+	@Nullable
+	private Task saveTask;
+	
+	private boolean loadError = false;
+	
+	private boolean compress = true;
+	
+	/**
+	 * Whether the file is rewritten once all variables have been loaded, because it is a CSV file or could not be read completely.
+	 * Changes are not appended until then, as they are part of the rewritten file anyway.
+	 */
+	private volatile boolean rewrite = false;
+	
+	protected BinaryFileStorage(final String name) {
+		super(name);
+	}
+	
+	/**
+	 * The records of a block which is being written.
+	 */
+	private final static class BlockWriter {
+		
+		private final static class Buffer extends ByteArrayOutputStream {
+			Buffer() {
+				super(BLOCK_SIZE);
+			}
+			
+			byte[] array() {
+				return buf;
+			}
+		}
+		
+		private final boolean compress;
+		
+		private final Buffer records = new Buffer();
+		private final Map<String, Integer> types = new HashMap<>();
+		private String lastName = "";
+		
+		BlockWriter(final boolean compress) {
+			this.compress = compress;
+		}
+		
+		int size() {
+			return records.size();
+		}
+		
+		void add(final String name, final @Nullable String type, final @Nullable byte[] data) {
+			int shared = 0;
+			final int max = Math.min(name.length(), lastName.length());
+			while (shared < max && name.charAt(shared) == lastName.charAt(shared))
+				shared++;
+			if (shared > 0 && Character.isHighSurrogate(name.charAt(shared - 1)))
+				shared--; // don't split surrogate pairs, the rest of the name must be valid UTF-16
+			writeVarInt(records, shared);
+			writeString(records, name.substring(shared));
+			lastName = name;
+			
+			if (type == null || data == null) {
+				writeVarInt(records, 0);
+				return;
+			}
+			final Integer index = types.get(type);
+			if (index != null) {
+				writeVarInt(records, index);
+			} else {
+				types.put(type, types.size() + 1);
+				writeVarInt(records, types.size());
+				writeString(records, type);
+			}
+			writeVarInt(records, data.length);
+			records.write(data, 0, data.length);
+		}
+		
+		/**
+		 * Writes the block and starts a new one.
+		 */
+		void writeTo(final OutputStream out) throws IOException {
+			final byte[] raw = records.array();
+			final int rawLength = records.size();
+			byte[] stored = raw;
+			int storedLength = rawLength;
+			byte flags = 0;
+			if (compress) {
+				final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+				try {
+					deflater.setInput(raw, 0, rawLength);
+					deflater.finish();
+					final byte[] compressed = new byte[rawLength];
+					int n = 0;
+					while (!deflater.finished() && n < compressed.length)
+						n += deflater.deflate(compressed, n, compressed.length - n);
+					if (deflater.finished() && n < rawLength) {
+						stored = compressed;
+						storedLength = n;
+						flags = FLAG_DEFLATE;
+					}
+				} finally {
+					deflater.end();
+				}
+			}
+			final CRC32 crc = new CRC32();
+			crc.update(stored, 0, storedLength);
+			final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+			header.putInt(storedLength).putInt(rawLength).putInt((int) crc.getValue()).put(flags);
+			out.write(header.array());
+			out.write(stored, 0, storedLength);
+			
+			records.reset();
+			types.clear();
+			lastName = "";
+		}
+		
+	}
+	
+	static void writeVarInt(final ByteArrayOutputStream out, int i) {
+		while ((i & ~0x7F) != 0) {
+			out.write((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		out.write(i);
+	}
+	
+	static int readVarInt(final ByteBuffer in) throws StreamCorruptedException {
+		int i = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final byte b = in.get();
+			i |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return i;
+		}
+		throw new StreamCorruptedException("Invalid variable-length integer");
+	}
+	
+	private static void writeString(final ByteArrayOutputStream out, final String s) {
+		final byte[] b = s.getBytes(FlatFileStorage.UTF_8);
+		writeVarInt(out, b.length);
+		out.write(b, 0, b.length);
+	}
+	
+	private static String readString(final ByteBuffer in) throws StreamCorruptedException {
+		final int length = readVarInt(in);
+		if (length < 0 || length > in.remaining())
+			throw new StreamCorruptedException("Invalid string length " + length);
+		final byte[] b = new byte[length];
+		in.get(b);
+		return new String(b, FlatFileStorage.UTF_8);
+	}
+	
+	private static void writeHeader(final OutputStream out) throws IOException {
+		out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC_NUMBER).putShort(FORMAT_VERSION).array());
+	}
+	
+	@Override
+	protected boolean load_i(final SectionNode n) {
+		SkriptLogger.setNode(null);
+		
+		final File file = this.file;
+		if (file == null) {
+			assert false : this;
+			return false;
+		}
+		
+		if (n.getValue("compression") != null) {
+			final Boolean compression = getValue(n, "compression", Boolean.class);
+			if (compression == null)
+				return false;
+			compress = compression;
+		}
+		batchSize = DEFAULT_BATCH_SIZE;
+		batchLatency = DEFAULT_BATCH_LATENCY;
+		
+		boolean binary = false, convert = false;
+		if (file.length() != 0) {
+			try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+				if (file.length() >= HEADER_SIZE && in.readInt() == MAGIC_NUMBER) {
+					final short version = in.readShort();
+					if (version > FORMAT_VERSION) {
+						Skript.error("The variables file '" + file.getName() + "' of the database '" + databaseName + "' was saved by a newer version of Skript and cannot be loaded");
+						return false;
+					}
+					binary = true;
+				}
+			} catch (final IOException e) {
+				Skript.error("Cannot read the variables file '" + file.getName() + "' of the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+				return false;
+			}
+			convert = !binary;
+		}
+		
+		IOException ioEx = null;
+		long validLength = -1;
+		final List<String> invalid = new ArrayList<>();
+		final List<String> failed;
+		if (binary) {
+			final VariableLoader<SerializedVariable> loader = new VariableLoader<>(this, v -> v);
+			try {
+				validLength = readBlocks(file, loader);
+			} catch (final IOException e) {
+				ioEx = e;
+			} finally {
+				loader.finish();
+			}
+			failed = loader.getFailed();
+		} else if (convert) {
+			final VariableLoader<String> loader = new VariableLoader<>(this, FlatFileStorage::parseLine);
+			try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(file), FlatFileStorage.UTF_8))) {
+				String line;
+				while ((line = r.readLine()) != null) {
+					line = line.trim();
+					if (line.isEmpty() || line.startsWith("#")) {
+						if (line.startsWith("# version:")) {
+							try {
+								if (new Version("" + line.substring("# version:".length()).trim()).isSmallerThan(new Version(2, 1))) {
+									Skript.error("The variables file '" + file.getName() + "' was saved by a very old version of Skript. Please load it as a CSV database once before changing the type of the database '" + databaseName + "' to 'binary'.");
+									return false;
+								}
+							} catch (final IllegalArgumentException e) {}
+						}
+						continue;
+					}
+					loader.add(line);
+				}
+			} catch (final IOException e) {
+				ioEx = e;
+			} finally {
+				loader.finish();
+			}
+			for (final String line : loader.getInvalid())
+				invalid.add(line);
+			failed = loader.getFailed();
+		} else {
+			failed = new ArrayList<>();
+		}
+		
+		if (!invalid.isEmpty() || !failed.isEmpty()) {
+			final int unsuccessful = invalid.size() + failed.size();
+			Skript.error(unsuccessful + " variable" + (unsuccessful == 1 ? "" : "s") + " could not be loaded!");
+			if (!invalid.isEmpty())
+				Skript.error("Invalid lines: " + String.join(", ", invalid));
+			if (!failed.isEmpty())
+				Skript.error("Affected variables: " + String.join(", ", failed));
+		}
+		if (ioEx != null) {
+			loadError = true;
+			Skript.error("An I/O error occurred while loading the variables: " + ExceptionUtils.toString(ioEx));
+			Skript.error("This means that some to all variables could not be loaded!");
+		}
+		final boolean incomplete = validLength != -1 && validLength < file.length();
+		if (incomplete)
+			Skript.warning("The end of the variables file '" + file.getName() + "' is incomplete, likely because the server crashed while saving. The incomplete part will be discarded.");
+		rewrite = convert || incomplete || ioEx != null;
+		
+		if (ioEx != null || !invalid.isEmpty() || !failed.isEmpty() || incomplete || convert) {
+			try {
+				if (convert)
+					Skript.info("Converting " + file.getName() + " to the binary format...");
+				final File bu = FileUtils.backup(file);
+				Skript.info("Created a backup of " + file.getName() + " as " + bu.getName());
+				loadError = false;
+			} catch (final IOException ex) {
+				Skript.error("Could not backup " + file.getName() + ": " + ex.getMessage());
+			}
+		}
+		
+		if (!rewrite)
+			connect();
+		
+		saveTask = new Task(Skript.getInstance(), 5 * 60 * 20, 5 * 60 * 20, true) {
+			@Override
+			public void run() {
+				if (changes.get() >= REQUIRED_CHANGES_FOR_RESAVE) {
+					saveVariables(false);
+					changes.set(0);
+				}
+			}
+		};
+		
+		return ioEx == null;
+	}
+	
+	/**
+	 * Reads all blocks of the given file and passes their records to the given loader.
+	 * 
+	 * @return The length of the intact part of the file
+	 */
+	private static long readBlocks(final File file, final VariableLoader<SerializedVariable> loader) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			long pos = HEADER_SIZE;
+			MappedByteBuffer map = null;
+			long mapStart = 0;
+			while (size - pos >= BLOCK_HEADER_SIZE) {
+				if (map == null || pos + BLOCK_HEADER_SIZE > mapStart + map.capacity()) {
+					mapStart = pos;
+					map = channel.map(MapMode.READ_ONLY, mapStart, Math.min(size - mapStart, MAX_MAPPING_SIZE));
+				}
+				map.position((int) (pos - mapStart));
+				final int storedLength = map.getInt(), rawLength = map.getInt(), checksum = map.getInt();
+				final byte flags = map.get();
+				if (storedLength < 0 || rawLength < 0 || storedLength > size - pos - BLOCK_HEADER_SIZE)
+					break; // incomplete block
+				final long end = pos + BLOCK_HEADER_SIZE + storedLength;
+				if (end > mapStart + map.capacity()) {
+					if (end - pos > MAX_MAPPING_SIZE)
+						throw new StreamCorruptedException("Block of " + storedLength + " bytes at position " + pos);
+					mapStart = pos;
+					map = channel.map(MapMode.READ_ONLY, mapStart, Math.min(size - mapStart, MAX_MAPPING_SIZE));
+					map.position(BLOCK_HEADER_SIZE);
+				}
+				final ByteBuffer stored = map.slice();
+				stored.limit(storedLength);
+				
+				final CRC32 crc = new CRC32();
+				crc.update(stored.duplicate());
+				if ((int) crc.getValue() != checksum)
+					break; // incompletely written block
+				
+				final ByteBuffer raw;
+				if ((flags & FLAG_DEFLATE) != 0) {
+					final byte[] in = new byte[storedLength];
+					stored.get(in);
+					final byte[] out = new byte[rawLength];
+					final Inflater inflater = new Inflater();
+					try {
+						inflater.setInput(in);
+						int n = 0;
+						while (n < rawLength && !inflater.finished()) {
+							final int r = inflater.inflate(out, n, rawLength - n);
+							if (r == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+								break;
+							n += r;
+						}
+						if (n != rawLength)
+							throw new StreamCorruptedException("Block at position " + pos + " has an invalid length");
+					} catch (final DataFormatException e) {
+						throw new StreamCorruptedException("Block at position " + pos + " cannot be decompressed: " + e.getMessage());
+					} finally {
+						inflater.end();
+					}
+					raw = ByteBuffer.wrap(out);
+				} else {
+					raw = stored;
+				}
+				try {
+					readRecords(raw, loader);
+				} catch (final BufferUnderflowException e) {
+					throw new StreamCorruptedException("Block at position " + pos + " ends within a record");
+				}
+				pos = end;
+			}
+			return pos;
+		}
+	}
+	
+	private static void readRecords(final ByteBuffer in, final VariableLoader<SerializedVariable> loader) throws StreamCorruptedException {
+		final List<String> types = new ArrayList<>();
+		String lastName = "";
+		while (in.hasRemaining()) {
+			final int shared = readVarInt(in);
+			if (shared < 0 || shared > lastName.length())
+				throw new StreamCorruptedException("Invalid name prefix length " + shared);
+			final String name = lastName.substring(0, shared) + readString(in);
+			lastName = name;
+			
+			final int type = readVarInt(in);
+			if (type == 0) {
+				loader.add(new SerializedVariable(name, null));
+				continue;
+			}
+			if (type == types.size() + 1)
+				types.add(readString(in));
+			else if (type < 0 || type > types.size())
+				throw new StreamCorruptedException("Invalid type index " + type);
+			final int length = readVarInt(in);
+			if (length < 0 || length > in.remaining())
+				throw new StreamCorruptedException("Invalid value length " + length);
+			final byte[] data = new byte[length];
+			in.get(data);
+			loader.add(new SerializedVariable(name, new Value("" + types.get(type - 1), data)));
+		}
+	}
+	
+	@Override
+	protected void allLoaded() {
+		if (rewrite) {
+			saveVariables(false);
+			rewrite = false;
+		}
+	}
+	
+	@Override
+	protected boolean requiresFile() {
+		return true;
+	}
+	
+	@Override
+	protected File getFile(final String file) {
+		return new File(file);
+	}
+	
+	@Override
+	protected boolean save(final String name, final @Nullable String type, final @Nullable byte[] value) {
+		final List<SerializedVariable> batch = new ArrayList<>(1);
+		batch.add(new SerializedVariable(name, type == null || value == null ? null : new Value(type, value)));
+		saveBatch(batch);
+		return true;
+	}
+	
+	/**
+	 * Appends the whole batch as a single block. If the block cannot be written, the batch is saved again later.
+	 */
+	@Override
+	protected boolean saveBatch(final List<SerializedVariable> batch) {
+		if (rewrite)
+			return true;
+		synchronized (connectionLock) {
+			synchronized (changesOut) {
+				final BlockWriter block = new BlockWriter(compress);
+				for (final SerializedVariable var : batch) {
+					final Value value = var.value;
+					if (!loaded && value == null)
+						continue; // see FlatFileStorage.save(String, String, byte[])
+					block.add(var.name, value == null ? null : value.type, value == null ? null : value.data);
+				}
+				if (block.size() == 0)
+					return true;
+				OutputStream out;
+				while ((out = changesOut.get()) == null) {
+					try {
+						changesOut.wait();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				final File file = this.file;
+				assert file != null;
+				final long start = file.length(); // the stream is flushed after every block
+				try {
+					block.writeTo(out);
+					out.flush();
+				} catch (final IOException e) {
+					Skript.error("Cannot save variables to the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+					// a partially written block would hide all later blocks when loading, thus it is cut off before the batch is written again
+					closeOutput();
+					try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+						raf.setLength(start);
+					} catch (final IOException e2) {
+						Skript.error("Cannot remove the partially written variables from " + file.getName() + ": " + ExceptionUtils.toString(e2));
+					}
+					connect();
+					return false;
+				}
+				changes.addAndGet(batch.size());
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	protected final void disconnect() {
+		synchronized (connectionLock) {
+			clearChangesQueue();
+			closeOutput();
+		}
+	}
+	
+	/**
+	 * Closes the output stream without discarding unsaved changes, which will wait for {@link #connect()}.
+	 */
+	private void closeOutput() {
+		synchronized (changesOut) {
+			final OutputStream out = changesOut.get();
+			if (out != null) {
+				try {
+					out.close();
+				} catch (final IOException e) {}
+				changesOut.set(null);
+			}
+		}
+	}
+	
+	@Override
+	protected final boolean connect() {
+		synchronized (connectionLock) {
+			synchronized (changesOut) {
+				if (changesOut.get() != null)
+					return true;
+				final File file = this.file;
+				assert file != null;
+				try {
+					final boolean empty = file.length() == 0;
+					final OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true));
+					if (empty)
+						writeHeader(out);
+					changesOut.set(out);
+					loaded = true;
+					return true;
+				} catch (final IOException e) {
+					Skript.exception(e);
+					return false;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void close() {
+		clearChangesQueue();
+		super.close();
+		saveVariables(true); // also closes the output stream
+	}
+	
+	/**
+	 * Prevents concurrent rewrites, which would append changes to each other's files
+	 */
+	private final Object saveLock = new Object();
+	
+	/**
+	 * Completely rewrites the file.
+	 * <p>
+	 * Works like {@link FlatFileStorage#saveVariables(boolean)}: the variables are written from a snapshot without holding any locks, and blocks appended
+	 * to the old file in the meantime are copied to the end of the new file.
+	 * 
+	 * @param finalSave whether this is the last save in this session or not.
+	 */
+	public final void saveVariables(final boolean finalSave) {
+		if (finalSave) {
+			final Task st = saveTask;
+			if (st != null)
+				st.cancel();
+			final Task bt = backupTask;
+			if (bt != null)
+				bt.cancel();
+		}
+		final File f = file;
+		if (f == null) {
+			assert false : this;
+			return;
+		}
+		synchronized (saveLock) {
+			boolean locked = true;
+			Variables.getReadLock().lock();
+			try {
+				final VariablesMap.Snapshot snapshot;
+				final long mark;
+				synchronized (connectionLock) {
+					if (loadError) {
+						try {
+							final File backup = FileUtils.backup(f);
+							Skript.info("Created a backup of the old " + f.getName() + " as " + backup.getName());
+							loadError = false;
+						} catch (final IOException e) {
+							Skript.error("Could not backup the old " + f.getName() + ": " + ExceptionUtils.toString(e));
+							Skript.error("No variables are saved!");
+							return;
+						}
+					}
+					// not connected while the file has to be rewritten (or converted), in which case changes are not saved until it has been
+					mark = changesOut.get() == null ? -1 : f.length();
+					snapshot = Variables.variables.snapshot();
+				}
+				// off the main thread, changes made meanwhile wait for the output stream instead, as values that must be serialised on the main thread are
+				// serialised there, which must not wait for the lock
+				if (mark != -1 || !Bukkit.isPrimaryThread()) {
+					Variables.getReadLock().unlock();
+					locked = false;
+				}
+				final File tempFile = new File(f.getPath() + ".temp");
+				boolean written = false;
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+					final ValueSerializer serializer = getSnapshotSerializer(snapshot);
+					writeSnapshot(snapshot, out, serializer);
+					written = true;
+				} catch (final IOException e) {
+					Skript.error("Unable to make a final save of the database '" + databaseName + "' (no variables are lost): " + ExceptionUtils.toString(e));
+				}
+				synchronized (connectionLock) {
+					try {
+						closeOutput();
+						if (written) {
+							if (mark != -1)
+								FileUtils.append(f, mark, tempFile);
+							FileUtils.move(tempFile, f, true);
+						}
+					} catch (final IOException e) {
+						Skript.error("Unable to make a final save of the database '" + databaseName + "' (no variables are lost): " + ExceptionUtils.toString(e));
+					} finally {
+						if (!finalSave) {
+							connect();
+						}
+					}
+				}
+			} finally {
+				if (locked)
+					Variables.getReadLock().unlock();
+				boolean gotLock = Variables.variablesLock.writeLock().tryLock();
+				if (gotLock) { // Only process queue now if it doesn't require us to wait
+					try {
+						Variables.processChangeQueue();
+					} finally {
+						Variables.variablesLock.writeLock().unlock();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes a complete file containing all variables of this storage in order, i.e. with as long common name prefixes as possible.
+	 */
+	@Override
+	public void writeSnapshot(final VariablesMap.Snapshot snapshot, final OutputStream out, final ValueSerializer serializer) throws IOException {
+		writeHeader(out);
+		final BlockWriter block = new BlockWriter(compress);
+		try {
+			snapshot.forEach((name, val) -> {
+				if (isStoredHere(name)) {
+					final Value value = serializer.serialize(name, val);
+					if (value != null) {
+						block.add(name, value.type, value.data);
+						if (block.size() >= BLOCK_SIZE) {
+							try {
+								block.writeTo(out);
+							} catch (final IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						}
+					}
+				}
+			});
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if (block.size() != 0)
+			block.writeTo(out);
+		out.flush();
+	}
+	
+}
@@ -0,0 +1,59 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.util.List;
+
+/**
+ * A source of the changes other servers made to a storage that is shared between multiple servers. Every change has a version, which increases with every
+ * change, thus a {@link ChangeMonitor} only has to remember the version of the last change it has read.
+ * <p>
+ * Methods of this interface are only called from the monitor thread.
+ * 
+ * @see DatabaseStorage
+ */
+interface ChangeFeed {
+	
+	/**
+	 * Reads the next changes made by other servers, ordered by their versions.
+	 * 
+	 * @param after Only changes with a greater version than this are read
+	 * @param limit How many changes to read at most
+	 * @param changes The list to add the changes to. Deleted variables are added with a null value.
+	 * @return The version of the last read change, including changes that were skipped because they are invalid, or <tt>after</tt> if there are no newer changes
+	 * @throws Exception
+	 */
+	long read(long after, int limit, List<SerializedVariable> changes) throws Exception;
+	
+	/**
+	 * Removes the records of deleted variables older than the given version, which all servers have read already.
+	 * 
+	 * @param before
+	 * @throws Exception
+	 */
+	void cleanUp(long before) throws Exception;
+	
+	/**
+	 * Called if {@link #read(long, int, List)} or {@link #cleanUp(long)} threw an exception. Should print an error and prepare the feed to be read again.
+	 * 
+	 * @param e
+	 */
+	void error(Exception e);
+	
+}
@@ -0,0 +1,217 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.classes.Serializer;
+import ch.njol.skript.registrations.Classes;
+import ch.njol.skript.util.Task;
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * Repeatedly reads the changes other servers made to a shared storage from a {@link ChangeFeed} and loads them into Skript's variables.
+ * <p>
+ * Changes are read in pages of at most {@link #limit} changes, each starting after the version of the last change of the previous page until there are no newer
+ * changes, thus a large amount of changes never has to be held in memory at once and no change is read twice. The values of a page are deserialised on the monitor thread (except for values
+ * that {@link Serializer#mustSyncDeserialization() must be deserialised synchronously}), and the whole page is then applied at once on Bukkit's main thread.
+ * Nothing is done on the main thread if there are no changes.
+ * <p>
+ * Deleted variables are kept as records with no value so that other servers can read the deletion, and are removed by {@link ChangeFeed#cleanUp(long)} once
+ * they are older than two monitor intervals plus some leeway.
+ */
+final class ChangeMonitor {
+	
+	/**
+	 * How long deleted variables are kept in addition to two monitor intervals, in milliseconds.
+	 */
+	private final static long CLEAN_UP_LEEWAY = 5000;
+	
+	private final static int WARNING_INTERVAL = 10;
+	
+	private final VariablesStorage storage;
+	private final ChangeFeed feed;
+	
+	private final long interval;
+	private final int limit;
+	
+	/**
+	 * The version of the last change that has been read
+	 */
+	private long version;
+	
+	/**
+	 * The {@link #version} at the start of recent polls as pairs of time and version, oldest first
+	 */
+	private final Deque<long[]> versions = new ArrayDeque<>();
+	
+	private long cleanedUpTo;
+	
+	/**
+	 * @param storage
+	 * @param feed
+	 * @param interval How long to wait between polls, in milliseconds
+	 * @param limit How many changes to read and apply at once at most
+	 * @param version The version of the last change that was loaded with the storage
+	 */
+	ChangeMonitor(final VariablesStorage storage, final ChangeFeed feed, final long interval, final int limit, final long version) {
+		this.storage = storage;
+		this.feed = feed;
+		this.interval = interval;
+		this.limit = limit;
+		this.version = version;
+		cleanedUpTo = version;
+	}
+	
+	void start() {
+		Skript.newThread(new Runnable() {
+			@Override
+			public void run() {
+				try { // variables were just downloaded, not need to check for modifications straight away
+					Thread.sleep(interval);
+				} catch (final InterruptedException e1) {}
+				
+				long lastWarning = Long.MIN_VALUE;
+				while (!storage.closed) {
+					final long next = System.currentTimeMillis() + interval;
+					poll();
+					cleanUp();
+					final long now = System.currentTimeMillis();
+					if (next < now && lastWarning + WARNING_INTERVAL * 1000 < now) {
+						// TODO don't print this message when Skript loads (because scripts are loaded after variables and take some time)
+						Skript.warning("Cannot load variables from the database '" + storage.databaseName + "' fast enough (loading took " + ((now - next + interval) / 1000.) + "s, monitor interval = " + (interval / 1000.) + "s). " +
+								"Please increase your monitor interval or reduce usage of variables. " +
+								"(this warning will be repeated at most once every " + WARNING_INTERVAL + " seconds)");
+						lastWarning = now;
+					}
+					while (System.currentTimeMillis() < next && !storage.closed) {
+						try {
+							Thread.sleep(next - System.currentTimeMillis());
+						} catch (final InterruptedException e) {}
+					}
+				}
+			}
+		}, "Skript database '" + storage.databaseName + "' monitor thread").start();
+	}
+	
+	/**
+	 * Reads and applies all new changes page by page.
+	 */
+	void poll() {
+		versions.add(new long[] {System.currentTimeMillis(), version});
+		final List<SerializedVariable> page = new ArrayList<>();
+		try {
+			while (!storage.closed) {
+				final long v = feed.read(version, limit, page);
+				apply(page);
+				if (v == version) // the page can be shorter than the limit if the feed skipped invalid changes, thus only an empty page ends the poll
+					break;
+				version = v;
+				page.clear();
+			}
+		} catch (final Exception e) {
+			feed.error(e);
+		}
+	}
+	
+	/**
+	 * Removes deleted variables that all servers have seen, i.e. which are older than the version of a poll at least two intervals ago.
+	 */
+	private void cleanUp() {
+		final long threshold = System.currentTimeMillis() - 2 * interval - CLEAN_UP_LEEWAY;
+		long before = cleanedUpTo;
+		while (!versions.isEmpty() && versions.peek()[0] <= threshold)
+			before = versions.remove()[1];
+		if (before <= cleanedUpTo || storage.closed)
+			return;
+		try {
+			feed.cleanUp(before);
+			cleanedUpTo = before;
+		} catch (final Exception e) {
+			feed.error(e);
+		}
+	}
+	
+	/**
+	 * Deserialises a page of changes and loads it on Bukkit's main thread.
+	 */
+	private void apply(final List<SerializedVariable> page) {
+		if (page.isEmpty())
+			return;
+		final int size = page.size();
+		final String[] names = new String[size];
+		final Object[] values = new Object[size];
+		final boolean[] sync = new boolean[size];
+		int n = 0;
+		for (final SerializedVariable var : page) {
+			final Value value = var.value;
+			if (value != null) {
+				final ClassInfo<?> ci = Classes.getClassInfoNoError(value.type);
+				final Serializer<?> s = ci == null ? null : ci.getSerializer();
+				if (ci == null || s == null) {
+					Skript.error("Cannot load the variable {" + var.name + "} from the database '" + storage.databaseName + "', because the type '" + value.type + "' cannot be recognised or cannot be stored in variables");
+					continue;
+				}
+				if (s.mustSyncDeserialization()) {
+					values[n] = value;
+					sync[n] = true;
+				} else if (storage.lazyLoading) {
+					values[n] = new LazyValue(ci, value, storage.evictValues);
+				} else {
+					final Object o = Classes.deserialize(ci, value.data);
+					if (o == null) {
+						Skript.error("Cannot load the variable {" + var.name + "} from the database '" + storage.databaseName + "', because it cannot be loaded as " + ci.getName().withIndefiniteArticle());
+						continue;
+					}
+					values[n] = o;
+				}
+			}
+			names[n++] = var.name;
+		}
+		final int count = n;
+		if (count == 0 || storage.closed)
+			return;
+		Task.callSync(() -> {
+			int loaded = 0;
+			for (int i = 0; i < count; i++) {
+				Object o = values[i];
+				if (sync[i]) {
+					final Value v = (Value) o;
+					assert v != null;
+					o = Classes.deserialize(v.type, v.data);
+					if (o == null) {
+						Skript.error("Cannot load the variable {" + names[i] + "} from the database '" + storage.databaseName + "', because it cannot be loaded as " + v.type);
+						continue;
+					}
+				}
+				names[loaded] = names[i];
+				values[loaded] = o;
+				loaded++;
+			}
+			Variables.variablesLoaded(names, values, loaded, storage);
+			return null;
+		});
+	}
+	
+}
@@ -22,7 +22,9 @@ import java.io.File;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Map.Entry;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
@@ -121,14 +123,26 @@ public class DatabaseStorage extends VariablesStorage {
 	final SynchronizedReference<Database> db = new SynchronizedReference<>(null);
 
 	private boolean monitor = false;
+
+	/**
+	 * Set once all variables have been loaded. Changes written while loading are committed all at once, later ones immediately.
+	 */
+	private boolean loaded = false;
 	long monitor_interval;
+	/**
+	 * How many changes the {@link ChangeMonitor} reads at once at most
+	 */
+	private int monitorLimit;
 
 	private final static String guid = "" + UUID.randomUUID().toString();
 
 	/**
-	 * The delay between transactions in milliseconds.
+	 * Defaults for the 'batch size' and 'batch latency' options.
 	 */
-	private final static long TRANSACTION_DELAY = 500;
+	private final static int DEFAULT_BATCH_SIZE = 500;
+	private final static long DEFAULT_BATCH_LATENCY = 50;
+	
+	private final static int DEFAULT_MONITOR_LIMIT = 1000;
 
 	DatabaseStorage(final String name, final Type type) {
 		super(name);
@@ -175,6 +189,36 @@ public class DatabaseStorage extends VariablesStorage {
 				return false;
 			monitor = monitor_changes;
 			this.monitor_interval = monitor_interval.getMilliSeconds();
+			monitorLimit = DEFAULT_MONITOR_LIMIT;
+			if (monitor && n.getValue("monitor limit") != null) {
+				final Integer monitor_limit = getValue(n, "monitor limit", Integer.class);
+				if (monitor_limit == null)
+					return false;
+				if (monitor_limit < 1) {
+					Skript.error("The monitor limit of the database '" + databaseName + "' must be at least 1");
+					return false;
+				}
+				monitorLimit = monitor_limit;
+			}
+
+			batchSize = DEFAULT_BATCH_SIZE;
+			if (n.getValue("batch size") != null) {
+				final Integer batch_size = getValue(n, "batch size", Integer.class);
+				if (batch_size == null)
+					return false;
+				if (batch_size < 1) {
+					Skript.error("The batch size of the database '" + databaseName + "' must be at least 1");
+					return false;
+				}
+				batchSize = batch_size;
+			}
+			batchLatency = DEFAULT_BATCH_LATENCY;
+			if (n.getValue("batch latency") != null) {
+				final Timespan batch_latency = getValue(n, "batch latency", Timespan.class);
+				if (batch_latency == null)
+					return false;
+				batchLatency = batch_latency.getMilliSeconds();
+			}
 
 			final Database db;
 			try {
@@ -232,7 +276,7 @@ public class DatabaseStorage extends VariablesStorage {
 				final ResultSet r2 = db.query("SELECT " + SELECT_ORDER + " FROM " + getTableName());
 				assert r2 != null;
 				try {
-					loadVariables(r2);
+					loadInitialVariables(r2);
 				} finally {
 					r2.close();
 				}
@@ -243,15 +287,14 @@ public class DatabaseStorage extends VariablesStorage {
 						Skript.info("[2.1] Updating the database '" + databaseName + "' to the new format...");
 						try {
 							Variables.getReadLock().lock();
-							for (final Entry<String, Object> v : Variables.getVariablesHashMap().entrySet()) {
-								if (accept(v.getKey())) {// only one database was possible, so only checking this database is correct
-									@SuppressWarnings("null")
-									final SerializedVariable var = Variables.serialize(v.getKey(), v.getValue());
+							Variables.forEachVariable((name, value) -> {
+								if (accept(name)) {// only one database was possible, so only checking this database is correct
+									final SerializedVariable var = Variables.serialize(name, value);
 									final SerializedVariable.Value d = var.value;
 									save(var.name, d == null ? null : d.type, d == null ? null : d.data);
 								}
-							}
-							Skript.info("Updated and transferred " + Variables.getVariablesHashMap().size() + " variables to the new table.");
+							});
+							Skript.info("Updated and transferred " + Variables.numVariables() + " variables to the new table.");
 						} finally {
 							Variables.getReadLock().unlock();
 						}
@@ -315,61 +358,21 @@ public class DatabaseStorage extends VariablesStorage {
 	protected void allLoaded() {
 		Skript.debug("Database " + databaseName + " loaded. Queue size = " + changesQueue.size());
 
-		// start committing thread. Its first execution will also commit the first batch of changed variables.
-		Skript.newThread(new Runnable() {
-			@Override
-			public void run() {
-				long lastCommit;
-				while (!closed) {
-					synchronized (db) {
-						final Database db = DatabaseStorage.this.db.get();
-						try {
-							if (db != null)
-								db.getConnection().commit();
-						} catch (final SQLException e) {
-							sqlException(e);
-						}
-						lastCommit = System.currentTimeMillis();
-					}
-					try {
-						Thread.sleep(Math.max(0, lastCommit + TRANSACTION_DELAY - System.currentTimeMillis()));
-					} catch (final InterruptedException e) {}
-				}
+		// commits the variables moved to or deleted from this database while loading. Later changes are committed as soon as they are written.
+		synchronized (db) {
+			final Database db = this.db.get();
+			try {
+				if (db != null)
+					db.getConnection().commit();
+			} catch (final SQLException e) {
+				sqlException(e);
 			}
-		}, "Skript database '" + databaseName + "' transaction committing thread").start();
-
-		if (monitor) {
-			Skript.newThread(new Runnable() {
-				@Override
-				public void run() {
-					try { // variables were just downloaded, not need to check for modifications straight away
-						Thread.sleep(monitor_interval);
-					} catch (final InterruptedException e1) {}
-
-					long lastWarning = Long.MIN_VALUE;
-					final int WARING_INTERVAL = 10;
-
-					while (!closed) {
-						final long next = System.currentTimeMillis() + monitor_interval;
-						checkDatabase();
-						final long now = System.currentTimeMillis();
-						if (next < now && lastWarning + WARING_INTERVAL * 1000 < now) {
-							// TODO don't print this message when Skript loads (because scripts are loaded after variables and take some time)
-							Skript.warning("Cannot load variables from the database fast enough (loading took " + ((now - next + monitor_interval) / 1000.) + "s, monitor interval = " + (monitor_interval / 1000.) + "s). " +
-									"Please increase your monitor interval or reduce usage of variables. " +
-									"(this warning will be repeated at most once every " + WARING_INTERVAL + " seconds)");
-							lastWarning = now;
-						}
-						while (System.currentTimeMillis() < next) {
-							try {
-								Thread.sleep(next - System.currentTimeMillis());
-							} catch (final InterruptedException e) {}
-						}
-					}
-				}
-			}, "Skript database '" + databaseName + "' monitor thread").start();
+			loaded = true;
 		}
 
+		if (monitor)
+			new ChangeMonitor(this, new SQLChangeFeed(), monitor_interval, monitorLimit, lastRowID).start();
+
 	}
 
 	@Override
@@ -426,7 +429,7 @@ public class DatabaseStorage extends VariablesStorage {
 					if (writeQuery != null)
 						writeQuery.close();
 				} catch (final SQLException e) {}
-				writeQuery = db.prepare("REPLACE INTO " + getTableName() + " (name, type, value, update_guid) VALUES (?, ?, ?, ?)");
+				writeQuery = db.prepare(getWriteSQL(getTableName()));
 
 				try {
 					if (deleteQuery != null)
@@ -438,7 +441,7 @@ public class DatabaseStorage extends VariablesStorage {
 					if (monitorQuery != null)
 						monitorQuery.close();
 				} catch (final SQLException e) {}
-				monitorQuery = db.prepare("SELECT " + SELECT_ORDER + " FROM " + getTableName() + " WHERE rowid > ? AND update_guid != ?");
+				monitorQuery = db.prepare(getMonitorSQL(getTableName()));
 				try {
 					if (monitorCleanUpQuery != null)
 						monitorCleanUpQuery.close();
@@ -452,6 +455,14 @@ public class DatabaseStorage extends VariablesStorage {
 		return true;
 	}
 
+	static String getWriteSQL(final String tableName) {
+		return "REPLACE INTO " + tableName + " (name, type, value, update_guid) VALUES (?, ?, ?, ?)";
+	}
+
+	static String getMonitorSQL(final String tableName) {
+		return "SELECT " + SELECT_ORDER + " FROM " + tableName + " WHERE rowid > ? AND update_guid != ? ORDER BY rowid LIMIT ?";
+	}
+
 	@Override
 	protected void disconnect() {
 		synchronized (db) {
@@ -478,9 +489,9 @@ public class DatabaseStorage extends VariablesStorage {
 	@Nullable
 	private PreparedStatement deleteQuery;
 	/**
-	 * Params: rowID, GUID
+	 * Params: rowID, GUID, limit
 	 * <p>
-	 * Selects changed rows. values in order: {@value #SELECT_ORDER}
+	 * Selects changed rows in the order they were changed. values in order: {@value #SELECT_ORDER}
 	 */
 	@Nullable
 	private PreparedStatement monitorQuery;
@@ -495,29 +506,31 @@ public class DatabaseStorage extends VariablesStorage {
 	@Override
 	protected boolean save(final String name, final @Nullable String type, final @Nullable byte[] value) {
 		synchronized (db) {
-			// REMIND get the actual maximum size from the database
-			if (name.length() > MAX_VARIABLE_NAME_LENGTH)
-				Skript.error("The name of the variable {" + name + "} is too long to be saved in a database (length: " + name.length() + ", maximum allowed: " + MAX_VARIABLE_NAME_LENGTH + ")! It will be truncated and won't bet available under the same name again when loaded.");
-			if (value != null && value.length > MAX_VALUE_SIZE)
-				Skript.error("The variable {" + name + "} cannot be saved in the database as its value's size (" + value.length + ") exceeds the maximum allowed size of " + MAX_VALUE_SIZE + "! An attempt to save the variable will be made nonetheless.");
+			checkSize(name, value);
 			try {
-				if (type == null) {
+				if (type == null && monitor) { // other servers have to see the deletion, thus the row is removed later by the ChangeMonitor
+					final PreparedStatement writeQuery = this.writeQuery;
+					assert writeQuery != null;
+					setWriteParameters(writeQuery, name, null, null);
+					writeQuery.executeUpdate();
+				} else if (type == null) {
 					assert value == null;
 					final PreparedStatement deleteQuery = this.deleteQuery;
 					assert deleteQuery != null;
 					deleteQuery.setString(1, name);
 					deleteQuery.executeUpdate();
 				} else {
-					int i = 1;
 					final PreparedStatement writeQuery = this.writeQuery;
 					assert writeQuery != null;
-					writeQuery.setString(i++, name);
-					writeQuery.setString(i++, type);
-					writeQuery.setBytes(i++, value); // SQLite desn't support setBlob
-					writeQuery.setString(i++, guid);
+					setWriteParameters(writeQuery, name, type, value);
 					writeQuery.executeUpdate();
 				}
+				final Database db = this.db.get();
+				if (loaded && db != null)
+					db.getConnection().commit();
 			} catch (final SQLException e) {
+				if (loaded)
+					rollback();
 				sqlException(e);
 				return false;
 			}
@@ -525,10 +538,90 @@ public class DatabaseStorage extends VariablesStorage {
 		return true;
 	}
 
+	/**
+	 * Writes the whole batch using JDBC batches and commits it, saving only the last change of every variable. If any statement fails, the transaction is
+	 * rolled back and the batch is saved again later.
+	 */
+	@Override
+	protected boolean saveBatch(final List<SerializedVariable> changes) {
+		// later changes of a variable replace earlier ones
+		final Map<String, SerializedVariable> latest = new LinkedHashMap<>();
+		for (final SerializedVariable var : changes)
+			latest.put(var.name, var);
+
+		synchronized (db) {
+			final Database db = this.db.get();
+			final PreparedStatement writeQuery = this.writeQuery, deleteQuery = this.deleteQuery;
+			if (db == null || writeQuery == null || deleteQuery == null)
+				return false;
+			try {
+				int writes = 0, deletes = 0;
+				for (final SerializedVariable var : latest.values()) {
+					final SerializedVariable.Value d = var.value;
+					checkSize(var.name, d == null ? null : d.data);
+					if (d == null && monitor) {
+						setWriteParameters(writeQuery, var.name, null, null);
+						writeQuery.addBatch();
+						writes++;
+					} else if (d == null) {
+						deleteQuery.setString(1, var.name);
+						deleteQuery.addBatch();
+						deletes++;
+					} else {
+						setWriteParameters(writeQuery, var.name, d.type, d.data);
+						writeQuery.addBatch();
+						writes++;
+					}
+				}
+				// every variable is either written or deleted, thus the order of the two batches doesn't matter
+				if (deletes != 0)
+					deleteQuery.executeBatch();
+				if (writes != 0)
+					writeQuery.executeBatch();
+				db.getConnection().commit();
+				return true;
+			} catch (final SQLException e) {
+				rollback();
+				sqlException(e);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Rolls back the current transaction after a failed write. Must be called while holding the lock on {@link #db}.
+	 */
+	private void rollback() {
+		final Database db = this.db.get();
+		if (db == null)
+			return;
+		try {
+			db.getConnection().rollback();
+		} catch (final SQLException e) {
+			Skript.error("Cannot roll back the failed changes of the database '" + databaseName + "': " + e.getLocalizedMessage());
+		}
+	}
+
+	private void checkSize(final String name, final @Nullable byte[] value) {
+		// REMIND get the actual maximum size from the database
+		if (name.length() > MAX_VARIABLE_NAME_LENGTH)
+			Skript.error("The name of the variable {" + name + "} is too long to be saved in a database (length: " + name.length() + ", maximum allowed: " + MAX_VARIABLE_NAME_LENGTH + ")! It will be truncated and won't bet available under the same name again when loaded.");
+		if (value != null && value.length > MAX_VALUE_SIZE)
+			Skript.error("The variable {" + name + "} cannot be saved in the database as its value's size (" + value.length + ") exceeds the maximum allowed size of " + MAX_VALUE_SIZE + "! An attempt to save the variable will be made nonetheless.");
+	}
+
+	private static void setWriteParameters(final PreparedStatement writeQuery, final String name, final @Nullable String type, final @Nullable byte[] value) throws SQLException {
+		int i = 1;
+		writeQuery.setString(i++, name);
+		writeQuery.setString(i++, type);
+		writeQuery.setBytes(i++, value); // SQLite desn't support setBlob
+		writeQuery.setString(i++, guid);
+	}
+
 	@Override
 	public void close() {
+		super.close(); // not synchronized, as the last batch needs the lock to be saved
 		synchronized (db) {
-			super.close();
 			final Database db = this.db.get();
 			if (db != null) {
 				try {
@@ -542,54 +635,120 @@ public class DatabaseStorage extends VariablesStorage {
 		}
 	}
 
-	long lastRowID = -1;
+	@Override
+	protected boolean supportsPartitions() {
+		return true;
+	}
 
-	protected void checkDatabase() {
-		try {
-			final long lastRowID; // local variable as this is used to clean the database below
-			ResultSet r = null;
+	@Override
+	protected void loadPartition(final String prefix, final List<SerializedVariable> variables) {
+		synchronized (db) {
+			final Database db = this.db.get();
+			if (closed || db == null)
+				return;
 			try {
-				synchronized (db) {
-					if (closed || db.get() == null)
-						return;
-					lastRowID = this.lastRowID;
-					final PreparedStatement monitorQuery = this.monitorQuery;
-					assert monitorQuery != null;
-					monitorQuery.setLong(1, lastRowID);
-					monitorQuery.setString(2, guid);
-					monitorQuery.execute();
-					r = monitorQuery.getResultSet();
-					assert r != null;
+				db.getConnection().commit(); // ends the current transaction to read the latest rows
+			} catch (final SQLException e) {
+				sqlException(e);
+				return;
+			}
+			try (final PreparedStatement query = db.prepare("SELECT " + SELECT_ORDER + " FROM " + getTableName() + " WHERE name LIKE ? ESCAPE '!'")) {
+				query.setString(1, prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%");
+				try (final ResultSet r = query.executeQuery()) {
+					while (r.next()) {
+						final String name = r.getString(1);
+						final String type = r.getString(2);
+						final byte[] value = r.getBytes(3); // Blob not supported by SQLite
+						if (name != null && name.startsWith(prefix)) // LIKE might ignore case
+							variables.add(new SerializedVariable(name, value == null || type == null ? null : new SerializedVariable.Value(type, value)));
+					}
 				}
-				if (!closed)
-					loadVariables(r);
-			} finally {
-				if (r != null)
-					r.close();
+			} catch (final SQLException e) {
+				sqlException(e);
 			}
+		}
+	}
 
-			if (!closed) { // Skript may have been disabled in the meantime // TODO not fixed
-				new Task(Skript.getInstance(), (long) Math.ceil(2. * monitor_interval / 50) + 100, true) { // 2 times the interval + 5 seconds
-					@Override
-					public void run() {
-						try {
-							synchronized (db) {
-								if (closed || db.get() == null)
-									return;
-								final PreparedStatement monitorCleanUpQuery = DatabaseStorage.this.monitorCleanUpQuery;
-								assert monitorCleanUpQuery != null;
-								monitorCleanUpQuery.setLong(1, lastRowID);
-								monitorCleanUpQuery.executeUpdate();
-							}
-						} catch (final SQLException e) {
-							sqlException(e);
-						}
-					}
-				};
+	/**
+	 * The highest rowid loaded when Skript started. As a row gets a new rowid whenever it is replaced, rowids are used as the versions of the {@link ChangeFeed}.
+	 */
+	long lastRowID = -1;
+
+	/**
+	 * Reads the rows changed by other servers with keyset pagination on their rowids.
+	 */
+	private final class SQLChangeFeed implements ChangeFeed {
+
+		@Override
+		public long read(final long after, final int limit, final List<SerializedVariable> changes) throws SQLException {
+			synchronized (db) {
+				final Database db = DatabaseStorage.this.db.get();
+				if (closed || db == null)
+					return after;
+				db.getConnection().commit(); // ends the current transaction to see the rows committed by other servers since
+				final PreparedStatement monitorQuery = DatabaseStorage.this.monitorQuery;
+				assert monitorQuery != null;
+				return readChanges(monitorQuery, guid, after, limit, changes, databaseName);
 			}
-		} catch (final SQLException e) {
-			sqlException(e);
 		}
+
+		@Override
+		public void cleanUp(final long before) throws SQLException {
+			synchronized (db) {
+				final Database db = DatabaseStorage.this.db.get();
+				if (closed || db == null)
+					return;
+				final PreparedStatement monitorCleanUpQuery = DatabaseStorage.this.monitorCleanUpQuery;
+				assert monitorCleanUpQuery != null;
+				monitorCleanUpQuery.setLong(1, before);
+				try {
+					monitorCleanUpQuery.executeUpdate();
+					db.getConnection().commit();
+				} catch (final SQLException e) {
+					rollback();
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void error(final Exception e) {
+			if (e instanceof SQLException)
+				sqlException((SQLException) e);
+			else
+				Skript.exception(e, "Cannot load the changes of the database '" + databaseName + "'");
+		}
+
+	}
+
+	/**
+	 * Reads one page of the rows changed by other servers, see {@link ChangeFeed#read(long, int, List)}.
+	 *
+	 * @param monitorQuery A statement prepared with {@link #getMonitorSQL(String)}
+	 * @param guid The GUID of this server, whose changes are skipped
+	 * @return The rowid of the last read row, including rows that were skipped, or <tt>after</tt> if no rows were read
+	 */
+	static long readChanges(final PreparedStatement monitorQuery, final String guid, final long after, final int limit, final List<SerializedVariable> changes,
+			final String databaseName) throws SQLException {
+		long version = after;
+		monitorQuery.setLong(1, after);
+		monitorQuery.setString(2, guid);
+		monitorQuery.setInt(3, limit);
+		try (final ResultSet r = monitorQuery.executeQuery()) {
+			while (r.next()) {
+				int i = 1;
+				final String name = r.getString(i++);
+				final String type = r.getString(i++);
+				final byte[] value = r.getBytes(i++); // Blob not supported by SQLite
+				version = r.getLong(i++);
+				if (name == null) {
+					Skript.error("Variable with NULL name found in the database '" + databaseName + "', ignoring it");
+					continue;
+				}
+				changes.add(new SerializedVariable(name, value == null || type == null ? null : new SerializedVariable.Value(type, value)));
+			}
+		}
+		return version;
 	}
 
 //	private final static class VariableInfo {
@@ -607,81 +766,33 @@ public class DatabaseStorage extends VariablesStorage {
 //	final static LinkedList<VariableInfo> syncDeserializing = new LinkedList<VariableInfo>();
 
 	/**
-	 * Doesn't lock the database - {@link #save(String, String, byte[])} does that // what?
+	 * Loads all variables of the database while Skript is starting. The result set is read on the main thread while the
+	 * values are deserialised on multiple threads, see {@link VariableLoader}.
 	 */
-	private void loadVariables(final ResultSet r) throws SQLException {
-//		assert !Thread.holdsLock(db);
-//		synchronized (syncDeserializing) {
-
-		final SQLException e = Task.callSync(new Callable<SQLException>() {
-			@Override
-			@Nullable
-			public SQLException call() throws Exception {
-				try {
-					while (r.next()) {
-						int i = 1;
-						final String name = r.getString(i++);
-						if (name == null) {
-							Skript.error("Variable with NULL name found in the database '" + databaseName + "', ignoring it");
-							continue;
-						}
-						final String type = r.getString(i++);
-						final byte[] value = r.getBytes(i++); // Blob not supported by SQLite
-						lastRowID = r.getLong(i++);
-						if (value == null) {
-							Variables.variableLoaded(name, null, DatabaseStorage.this);
-						} else {
-							final ClassInfo<?> c = Classes.getClassInfoNoError(type);
-							@SuppressWarnings("unused")
-							Serializer<?> s;
-							if (c == null || (s = c.getSerializer()) == null) {
-								Skript.error("Cannot load the variable {" + name + "} from the database '" + databaseName + "', because the type '" + type + "' cannot be recognised or cannot be stored in variables");
-								continue;
-							}
-//					if (s.mustSyncDeserialization()) {
-//						syncDeserializing.add(new VariableInfo(name, value, c));
-//					} else {
-							final Object d = Classes.deserialize(c, value);
-							if (d == null) {
-								Skript.error("Cannot load the variable {" + name + "} from the database '" + databaseName + "', because it cannot be loaded as " + c.getName().withIndefiniteArticle());
-								continue;
-							}
-							Variables.variableLoaded(name, d, DatabaseStorage.this);
-//					}
-						}
-					}
-				} catch (final SQLException e) {
-					return e;
+	private void loadInitialVariables(final ResultSet r) throws SQLException {
+		assert Bukkit.isPrimaryThread();
+		final VariableLoader<SerializedVariable> loader = new VariableLoader<>(this, v -> v);
+		lastRowID = -1;
+		try {
+			while (r.next()) {
+				int i = 1;
+				final String name = r.getString(i++);
+				if (name == null) {
+					Skript.error("Variable with NULL name found in the database '" + databaseName + "', ignoring it");
+					continue;
 				}
-				return null;
+				final String type = r.getString(i++);
+				final byte[] value = r.getBytes(i++); // Blob not supported by SQLite
+				lastRowID = Math.max(lastRowID, r.getLong(i++));
+				loader.add(new SerializedVariable(name, value == null || type == null ? null : new SerializedVariable.Value(type, value)));
 			}
-		});
-		if (e != null)
-			throw e;
-
-//			if (!syncDeserializing.isEmpty()) {
-//				Task.callSync(new Callable<Void>() {
-//					@Override
-//					@Nullable
-//					public Void call() throws Exception {
-//						synchronized (syncDeserializing) {
-//							for (final VariableInfo o : syncDeserializing) {
-//								final Object d = Classes.deserialize(o.ci, o.value);
-//								if (d == null) {
-//									Skript.error("Cannot load the variable {" + o.name + "} from the database " + databaseName + ", because it cannot be loaded as a " + o.ci.getName());
-//									continue;
-//								}
-//								Variables.variableLoaded(o.name, d, DatabaseStorage.this);
-//							}
-//							syncDeserializing.clear();
-//							return null;
-//						}
-//					}
-//				});
-//			}
-//		}
+		} finally {
+			loader.finish();
+		}
+		for (final String name : loader.getFailed())
+			Skript.error("Cannot load the variable {" + name + "} from the database '" + databaseName + "', because its type cannot be recognised or cannot be stored in variables, or because its value is invalid");
 	}
-
+	
 //	private final static class OldVariableInfo {
 //		final String name;
 //		final String value;
@@ -24,21 +24,20 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.bukkit.Bukkit;
 import org.eclipse.jdt.annotation.Nullable;
 
 import ch.njol.skript.Skript;
 import ch.njol.skript.config.SectionNode;
-import ch.njol.skript.lang.Variable;
 import ch.njol.skript.log.SkriptLogger;
 import ch.njol.skript.registrations.Classes;
 import ch.njol.skript.util.ExceptionUtils;
@@ -55,7 +54,7 @@ import ch.njol.util.NotifyingReference;
  * 
  * @author Peter Güttinger
  */
-public class FlatFileStorage extends VariablesStorage {
+public class FlatFileStorage extends VariablesStorage implements SnapshotStorage {
 	
 	@SuppressWarnings("null")
 	public final static Charset UTF_8 = Charset.forName("UTF-8");
@@ -98,6 +97,7 @@ public class FlatFileStorage extends VariablesStorage {
 		final Version v2_1 = new Version(2, 1);
 		boolean update2_1 = false;
 		
+		VariableLoader<Line> loader = null;
 		BufferedReader r = null;
 		try {
 			r = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
@@ -116,6 +116,13 @@ public class FlatFileStorage extends VariablesStorage {
 					}
 					continue;
 				}
+				if (!update2_1) {
+					// lines of the current format are split and deserialised on the loading threads
+					if (loader == null)
+						loader = new VariableLoader<>(this, l -> parseLine(l.text));
+					loader.add(new Line(lineNum, line));
+					continue;
+				}
 				final String[] split = splitCSV(line);
 				if (split == null || split.length != 3) {
 					Skript.error("invalid amount of commas in line " + lineNum + " ('" + line + "')");
@@ -128,11 +135,7 @@ public class FlatFileStorage extends VariablesStorage {
 				if (split[1].equals("null")) {
 					Variables.variableLoaded("" + split[0], null, this);
 				} else {
-					Object d;
-					if (update2_1)
-						d = Classes.deserialize("" + split[1], "" + split[2]);
-					else
-						d = Classes.deserialize("" + split[1], decode("" + split[2]));
+					Object d = Classes.deserialize("" + split[1], "" + split[2]);
 					if (d == null) {
 						if (invalid.length() != 0)
 							invalid.append(", ");
@@ -155,6 +158,25 @@ public class FlatFileStorage extends VariablesStorage {
 					r.close();
 				} catch (final IOException e) {}
 			}
+			if (loader != null)
+				loader.finish();
+		}
+		
+		if (loader != null) {
+			for (final Line line : loader.getInvalid()) {
+				final String[] split = splitCSV(line.text);
+				Skript.error("invalid amount of commas in line " + line.number + " ('" + line.text + "')");
+				if (invalid.length() != 0)
+					invalid.append(", ");
+				invalid.append(split == null || split.length == 0 ? "<unknown>" : split[0]);
+				unsuccessful++;
+			}
+			for (final String name : loader.getFailed()) {
+				if (invalid.length() != 0)
+					invalid.append(", ");
+				invalid.append(name);
+				unsuccessful++;
+			}
 		}
 		
 		final File file = this.file;
@@ -219,6 +241,35 @@ public class FlatFileStorage extends VariablesStorage {
 		return new File(file);
 	}
 	
+	/**
+	 * A line passed to the loading threads, numbered to report invalid lines.
+	 */
+	private final static class Line {
+		final int number;
+		final String text;
+		
+		Line(final int number, final String text) {
+			this.number = number;
+			this.text = text;
+		}
+	}
+	
+	/**
+	 * Parses a line of the current format. Called on the loading threads.
+	 * 
+	 * @param line
+	 * @return The variable or null if the line is invalid
+	 */
+	@Nullable
+	static SerializedVariable parseLine(final String line) {
+		final String[] split = splitCSV(line);
+		if (split == null || split.length != 3)
+			return null;
+		if (split[1].equals("null"))
+			return new SerializedVariable("" + split[0], null);
+		return new SerializedVariable("" + split[0], new SerializedVariable.Value("" + split[1], decode("" + split[2])));
+	}
+	
 	static String encode(final byte[] data) {
 		final char[] r = new char[data.length * 2];
 		for (int i = 0; i < data.length; i++) {
@@ -304,12 +355,19 @@ public class FlatFileStorage extends VariablesStorage {
 	protected final void disconnect() {
 		synchronized (connectionLock) {
 			clearChangesQueue();
-			synchronized (changesWriter) {
-				final PrintWriter cw = changesWriter.get();
-				if (cw != null) {
-					cw.close();
-					changesWriter.set(null);
-				}
+			closeWriter();
+		}
+	}
+	
+	/**
+	 * Closes the writer without discarding unsaved changes, which will wait for {@link #connect()}.
+	 */
+	private void closeWriter() {
+		synchronized (changesWriter) {
+			final PrintWriter cw = changesWriter.get();
+			if (cw != null) {
+				cw.close();
+				changesWriter.set(null);
 			}
 		}
 	}
@@ -339,8 +397,16 @@ public class FlatFileStorage extends VariablesStorage {
 		saveVariables(true); // also closes the writer
 	}
 	
+	/**
+	 * Prevents concurrent rewrites, which would append changes to each other's files
+	 */
+	private final Object saveLock = new Object();
+	
 	/**
 	 * Completely rewrites the while file
+	 * <p>
+	 * The variables are written from a {@link VariablesMap.Snapshot snapshot} without holding any locks, so that variables can be changed and saved
+	 * in the meantime. The changes appended to the old file after the snapshot was taken are then copied to the new file before it replaces the old one.
 	 * 
 	 * @param finalSave whether this is the last save in this session or not.
 	 */
@@ -353,16 +419,18 @@ public class FlatFileStorage extends VariablesStorage {
 			if (bt != null)
 				bt.cancel();
 		}
-		try {
+		final File f = file;
+		if (f == null) {
+			assert false : this;
+			return;
+		}
+		synchronized (saveLock) {
+			boolean locked = true;
 			Variables.getReadLock().lock();
-			synchronized (connectionLock) {
-				try {
-					final File f = file;
-					if (f == null) {
-						assert false : this;
-						return;
-					}
-					disconnect();
+			try {
+				final VariablesMap.Snapshot snapshot;
+				final long mark;
+				synchronized (connectionLock) {
 					if (loadError) {
 						try {
 							final File backup = FileUtils.backup(f);
@@ -374,76 +442,78 @@ public class FlatFileStorage extends VariablesStorage {
 							return;
 						}
 					}
-					final File tempFile = new File(Skript.getInstance().getDataFolder(), "variables.csv.temp");
-					PrintWriter pw = null;
+					// all changes written after this position are at least as new as the snapshot
+					mark = changesWriter.get() == null ? -1 : f.length();
+					snapshot = Variables.variables.snapshot();
+				}
+				// If not connected yet the old file might be in an old format, thus changes must wait until it is rewritten. Off the main thread they wait for
+				// the writer instead, as values that must be serialised on the main thread are serialised there, which must not wait for the lock.
+				if (mark != -1 || !Bukkit.isPrimaryThread()) {
+					Variables.getReadLock().unlock();
+					locked = false;
+				}
+				final File tempFile = new File(f.getPath() + ".temp");
+				boolean written = false;
+				try (OutputStream out = new FileOutputStream(tempFile)) {
+					final ValueSerializer serializer = getSnapshotSerializer(snapshot);
+					writeSnapshot(snapshot, out, serializer);
+					written = true;
+				} catch (final IOException e) {
+					Skript.error("Unable to make a final save of the database '" + databaseName + "' (no variables are lost): " + ExceptionUtils.toString(e)); // FIXME happens at random - check locks/threads
+				}
+				synchronized (connectionLock) {
 					try {
-						pw = new PrintWriter(tempFile, "UTF-8");
-						pw.println("# === Skript's variable storage ===");
-						pw.println("# Please do not modify this file manually!");
-						pw.println("#");
-						pw.println("# version: " + Skript.getVersion());
-						pw.println();
-						save(pw, "", Variables.getVariables());
-						pw.println();
-						pw.flush();
-						pw.close();
-						FileUtils.move(tempFile, f, true);
+						closeWriter();
+						if (written) {
+							if (mark != -1)
+								FileUtils.append(f, mark, tempFile);
+							FileUtils.move(tempFile, f, true);
+						}
 					} catch (final IOException e) {
-						Skript.error("Unable to make a final save of the database '" + databaseName + "' (no variables are lost): " + ExceptionUtils.toString(e)); // FIXME happens at random - check locks/threads
+						Skript.error("Unable to make a final save of the database '" + databaseName + "' (no variables are lost): " + ExceptionUtils.toString(e));
 					} finally {
-						if (pw != null)
-							pw.close();
-					}
-				} finally {
-					if (!finalSave) {
-						connect();
+						if (!finalSave) {
+							connect();
+						}
 					}
 				}
-			}
-		} finally {
-			Variables.getReadLock().unlock();
-			boolean gotLock = Variables.variablesLock.writeLock().tryLock();
-			if (gotLock) { // Only process queue now if it doesn't require us to wait
-				try {
-					Variables.processChangeQueue();
-				} finally {
-					Variables.variablesLock.writeLock().unlock();
+			} finally {
+				if (locked)
+					Variables.getReadLock().unlock();
+				boolean gotLock = Variables.variablesLock.writeLock().tryLock();
+				if (gotLock) { // Only process queue now if it doesn't require us to wait
+					try {
+						Variables.processChangeQueue();
+					} finally {
+						Variables.variablesLock.writeLock().unlock();
+					}
 				}
 			}
 		}
 	}
 	
 	/**
-	 * Saves the variables.
-	 * <p>
-	 * This method uses the sorted variables map to save the variables in order.
-	 * 
-	 * @param pw
-	 * @param parent The parent's name with {@link Variable#SEPARATOR} at the end
-	 * @param map
+	 * Writes a complete variables file. This method uses the sorted variables map to save the variables in order.
 	 */
-	@SuppressWarnings("unchecked")
-	private final void save(final PrintWriter pw, final String parent, final TreeMap<String, Object> map) {
-		outer: for (final Entry<String, Object> e : map.entrySet()) {
-			final Object val = e.getValue();
-			if (val == null)
-				continue;
-			if (val instanceof TreeMap) {
-				save(pw, parent + e.getKey() + Variable.SEPARATOR, (TreeMap<String, Object>) val);
-			} else {
-				final String name = (e.getKey() == null ? parent.substring(0, parent.length() - Variable.SEPARATOR.length()) : parent + e.getKey());
-				for (final VariablesStorage s : Variables.storages) {
-					if (s.accept(name)) {
-						if (s == this) {
-							final SerializedVariable.Value value = Classes.serialize(val);
-							if (value != null)
-								writeCSV(pw, name, value.type, encode(value.data));
-						}
-						continue outer;
-					}
-				}
+	@Override
+	public void writeSnapshot(final VariablesMap.Snapshot snapshot, final OutputStream out, final ValueSerializer serializer) throws IOException {
+		final PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, UTF_8));
+		pw.println("# === Skript's variable storage ===");
+		pw.println("# Please do not modify this file manually!");
+		pw.println("#");
+		pw.println("# version: " + Skript.getVersion());
+		pw.println();
+		snapshot.forEach((name, val) -> {
+			if (isStoredHere(name)) {
+				final SerializedVariable.Value value = serializer.serialize(name, val);
+				if (value != null)
+					writeCSV(pw, name, value.type, encode(value.data));
 			}
-		}
+		});
+		pw.println();
+		pw.flush();
+		if (pw.checkError())
+			throw new IOException("Cannot write the variables of the database '" + databaseName + "'");
 	}
 	
 }
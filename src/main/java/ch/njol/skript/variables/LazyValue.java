@@ -0,0 +1,104 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.lang.ref.SoftReference;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.registrations.Classes;
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * The serialised value of a variable loaded by a storage with lazy loading enabled. It is stored in the {@link VariablesMap} in place of the
+ * actual value and is only deserialised when the variable is read, see {@link VariablesMap.Node#get()}.
+ * <p>
+ * If <tt>evict</tt> is false, the deserialised value replaces this object in the map. Otherwise the map keeps this object, which only holds
+ * a soft reference to the deserialised value, i.e. values which are not used anymore are dropped when memory runs low and are deserialised
+ * again when they are read the next time.
+ * <p>
+ * Only values which can be deserialised on any thread are loaded lazily.
+ */
+final class LazyValue {
+	
+	private final ClassInfo<?> type;
+	private final Value serialized;
+	private final boolean evict;
+	
+	/**
+	 * The deserialised value, or a soft reference to it if <tt>evict</tt> is true.
+	 */
+	@Nullable
+	private volatile Object value;
+	
+	private volatile boolean failed = false;
+	
+	LazyValue(final ClassInfo<?> type, final Value serialized, final boolean evict) {
+		assert type.getSerializer() != null && !type.getSerializer().mustSyncDeserialization() : type;
+		this.type = type;
+		this.serialized = serialized;
+		this.evict = evict;
+	}
+	
+	/**
+	 * @return The value as it is stored in the database. Used to save the variable without deserialising it.
+	 */
+	Value getSerialized() {
+		return serialized;
+	}
+	
+	/**
+	 * @return Whether the deserialised value should replace this object
+	 */
+	boolean isReplaceable() {
+		return !evict;
+	}
+	
+	/**
+	 * @return Whether deserialising the value failed, in which case the variable is treated as not set
+	 */
+	boolean hasFailed() {
+		return failed;
+	}
+	
+	/**
+	 * Deserialises the value if it is not available already. May be called on any thread.
+	 * 
+	 * @return The value, or null if it cannot be deserialised.
+	 */
+	@Nullable
+	Object get() {
+		Object v = value;
+		if (v instanceof SoftReference)
+			v = ((SoftReference<?>) v).get();
+		if (v != null || failed)
+			return v;
+		v = Classes.deserialize(type, serialized.data);
+		if (v == null) {
+			failed = true;
+			Skript.error("A variable of the type " + type.getCodeName() + " could not be loaded from its database and will be treated as not set");
+			return null;
+		}
+		value = evict ? new SoftReference<>(v) : v;
+		return v;
+	}
+	
+}
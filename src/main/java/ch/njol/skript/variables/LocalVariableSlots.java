@@ -0,0 +1,206 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.lang.ExecutionFrame;
+
+/**
+ * The indices of the local variables with constant names of one trigger (or function or command), assigned while the trigger is parsed.
+ * <p>
+ * The values of these variables are stored in an array in the {@link ExecutionFrame} instead of the frame's variables map, so that accessing them doesn't
+ * need to build and look up their names. Only variables that can't be an element of a list variable, i.e. whose names don't contain
+ * {@link ch.njol.skript.lang.Variable#SEPARATOR}, get slots. Accessing them by name, e.g. with a variable name containing expressions, is redirected to
+ * their slots, so both ways of accessing a variable always see the same value.
+ * <p>
+ * Slots are only added on Bukkit's main thread, thus this class is not synchronised.
+ *
+ * @see ch.njol.skript.lang.parser.ParserInstance#getLocalVariableSlots()
+ */
+public final class LocalVariableSlots {
+
+	/**
+	 * Slots by variable name, with names in lower case if variables are case insensitive.
+	 */
+	private final Map<String, Integer> slots = new HashMap<>();
+
+	/**
+	 * The slot of the next added variable, which is also the number of slots
+	 */
+	private int next = 0;
+
+	private final boolean caseInsensitive;
+
+	/**
+	 * @param caseInsensitive Whether variable names are case insensitive, see {@link Variables#caseInsensitiveVariables}
+	 */
+	public LocalVariableSlots(final boolean caseInsensitive) {
+		this.caseInsensitive = caseInsensitive;
+	}
+
+	/**
+	 * @return The slot of the local variable with the given name (without the local variable token), which is added if it has none yet
+	 */
+	public int add(String name) {
+		if (caseInsensitive)
+			name = name.toLowerCase(Locale.ENGLISH);
+		final Integer slot = slots.get(name);
+		if (slot != null)
+			return slot;
+		slots.put(name, next);
+		return next++;
+	}
+
+	/**
+	 * @param name The name of a local variable as used in the variables map, i.e. in lower case if variables are case insensitive
+	 * @return The given variable's slot, or -1 if it doesn't have one
+	 */
+	int indexOf(final String name) {
+		final Integer slot = slots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	int size() {
+		return next;
+	}
+
+	/**
+	 * Returns the values of these slots in the given frame. The first slots used in a frame are bound to it, and the values of their variables are moved
+	 * from the frame's variables map to the slots.
+	 *
+	 * @return The values of these slots, or null if the frame uses different slots
+	 */
+	@Nullable
+	Object[] bind(final ExecutionFrame frame) {
+		final LocalVariableSlots bound = frame.getLocalSlots();
+		if (bound == this)
+			return frame.getLocalValues();
+		if (bound != null)
+			return null;
+		final Object[] values = new Object[next];
+		final VariablesMap map = (VariablesMap) frame.getLocals();
+		if (map != null) {
+			for (final Entry<String, Integer> slot : slots.entrySet()) {
+				final Object value = map.getVariable(slot.getKey());
+				if (value != null) {
+					values[slot.getValue()] = value;
+					map.setVariable(slot.getKey(), null);
+				}
+			}
+		}
+		frame.setLocalSlots(this, values);
+		return values;
+	}
+
+	/**
+	 * Sets the value of a slot in the given frame, binding the slots first if necessary.
+	 *
+	 * @return Whether the value was set, i.e. false if the frame uses different slots
+	 */
+	boolean set(final ExecutionFrame frame, final int slot, final @Nullable Object value) {
+		Object[] values = bind(frame);
+		if (values == null)
+			return false;
+		if (slot >= values.length) // slots added after the frame was bound, e.g. by an effect command
+			frame.setLocalSlots(this, values = Arrays.copyOf(values, next));
+		values[slot] = value;
+		return true;
+	}
+
+	/**
+	 * Moves the values of the slotted local variables of the given frame back to its variables map.
+	 */
+	static void unbind(final ExecutionFrame frame) {
+		final LocalVariableSlots slots = frame.getLocalSlots();
+		final Object[] values = frame.getLocalValues();
+		if (slots == null || values == null)
+			return;
+		VariablesMap map = (VariablesMap) frame.getLocals();
+		for (final Entry<String, Integer> slot : slots.slots.entrySet()) {
+			final int i = slot.getValue();
+			if (i < values.length && values[i] != null) {
+				if (map == null)
+					frame.setLocals(map = new VariablesMap());
+				map.setVariable(slot.getKey(), values[i]);
+			}
+		}
+		frame.setLocalSlots(null, null);
+	}
+
+	/**
+	 * Removes all local variables from the given frame, including those in slots.
+	 *
+	 * @return The removed variables
+	 */
+	@Nullable
+	static VariablesMap removeLocals(final ExecutionFrame frame) {
+		unbind(frame);
+		final VariablesMap map = (VariablesMap) frame.getLocals();
+		frame.setLocals(null);
+		return map;
+	}
+
+	/**
+	 * Replaces all local variables of the given frame, including those in slots.
+	 */
+	static void setLocals(final ExecutionFrame frame, final @Nullable VariablesMap map) {
+		frame.setLocalSlots(null, null); // the slotted variables are taken from the new map when used next
+		frame.setLocals(map);
+	}
+
+	/**
+	 * Gets a local variable of the given frame by name, from its slot if it has one.
+	 *
+	 * @param name The variable's name as used in the variables map
+	 */
+	@Nullable
+	static Object getVariable(final ExecutionFrame frame, final String name) {
+		final LocalVariableSlots slots = frame.getLocalSlots();
+		final Object[] values = frame.getLocalValues();
+		final int slot = slots == null ? -1 : slots.indexOf(name);
+		if (slot != -1 && values != null)
+			return slot < values.length ? values[slot] : null;
+		final VariablesMap map = (VariablesMap) frame.getLocals();
+		return map == null ? null : map.getVariable(name);
+	}
+
+	/**
+	 * Sets a local variable of the given frame by name, in its slot if it has one.
+	 *
+	 * @param name The variable's name as used in the variables map
+	 */
+	static void setVariable(final ExecutionFrame frame, final String name, final @Nullable Object value) {
+		final LocalVariableSlots slots = frame.getLocalSlots();
+		final int slot = slots == null ? -1 : slots.indexOf(name);
+		if (slot != -1 && slots != null && slots.set(frame, slot, value))
+			return;
+		VariablesMap map = (VariablesMap) frame.getLocals();
+		if (map == null)
+			frame.setLocals(map = new VariablesMap());
+		map.setVariable(name, value);
+	}
+
+}
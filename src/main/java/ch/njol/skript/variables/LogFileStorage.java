@@ -0,0 +1,608 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.SectionNode;
+import ch.njol.skript.log.SkriptLogger;
+import ch.njol.skript.util.ExceptionUtils;
+import ch.njol.skript.util.FileUtils;
+import ch.njol.skript.util.Task;
+import ch.njol.skript.util.Timespan;
+
+/**
+ * A variable storage that appends every change to a binary log instead of rewriting all variables.
+ * <p>
+ * Changes are appended to numbered segment files next to the configured file (e.g. <tt>variables.log.12</tt>). The configured file itself is the checkpoint,
+ * which contains all variables of the segments it covers. When the sealed segments have grown large enough compared to the checkpoint, they are merged into a
+ * new checkpoint on a background thread, thus the cost of saving a variable does not depend on how many variables there are.
+ * <p>
+ * Every record is prefixed with its length and a CRC32 checksum. A record that was only partially written when the server crashed is discarded and cut off when
+ * the storage is loaded, and checkpoints are written to a temporary file and then atomically moved in place.
+ */
+public class LogFileStorage extends VariablesStorage {
+	
+	/**
+	 * 'SKVL'
+	 */
+	private final static int MAGIC_NUMBER = 0x534B564C;
+	
+	private final static short FORMAT_VERSION = 1;
+	
+	/**
+	 * The magic number, the format version and the last segment merged into the checkpoint
+	 */
+	private final static int CHECKPOINT_HEADER_SIZE = 4 + 2 + 8;
+	
+	/**
+	 * The size after which a new segment is started
+	 */
+	private final static long SEGMENT_SIZE = 4 * 1024 * 1024;
+	
+	/**
+	 * Sealed segments are merged into the checkpoint once they are at least this large, or at least half as large as the checkpoint, whichever is larger.
+	 * This keeps the amortised cost of compaction constant per change.
+	 */
+	private final static long MIN_COMPACTION_SIZE = 2 * SEGMENT_SIZE;
+	
+	private final static byte RECORD_DELETE = 0, RECORD_SET = 1;
+	
+	/**
+	 * Must be locked after {@link #connectionLock}. Guards the checkpoint and all sealed segments.
+	 */
+	private final Object compactionLock = new Object();
+	
+	/**
+	 * The last segment merged into the checkpoint. Guarded by {@link #compactionLock}.
+	 */
+	private long checkpointSegment = -1;
+	
+	// guarded by connectionLock
+	@Nullable
+	private FileOutputStream segmentFile;
+	@Nullable
+	private DataOutputStream segmentOut;
+	private long activeSegment;
+	private long activeSegmentSize;
+	private long sealedSize;
+	
+	private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+	private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+	private final CRC32 crc = new CRC32();
+	
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+	
+	protected LogFileStorage(final String name) {
+		super(name);
+	}
+	
+	/**
+	 * A single decoded record of a segment or the checkpoint.
+	 */
+	private final static class Record {
+		final String name;
+		@Nullable
+		final String type;
+		@Nullable
+		final byte[] data;
+		final byte[] payload;
+		final int checksum;
+		
+		Record(final String name, final @Nullable String type, final @Nullable byte[] data, final byte[] payload, final int checksum) {
+			this.name = name;
+			this.type = type;
+			this.data = data;
+			this.payload = payload;
+			this.checksum = checksum;
+		}
+	}
+	
+	@Override
+	protected boolean load_i(final SectionNode n) {
+		SkriptLogger.setNode(null);
+		
+		final File file = this.file;
+		if (file == null) {
+			assert false : this;
+			return false;
+		}
+		
+		int unsuccessful = 0;
+		final StringBuilder invalid = new StringBuilder();
+		
+		synchronized (compactionLock) {
+			try {
+				checkpointSegment = readCheckpointHeader(file);
+			} catch (final IOException e) {
+				Skript.error("The variables file '" + file.getName() + "' of the database '" + databaseName + "' is not a valid variables log: " + ExceptionUtils.toString(e));
+				return false;
+			}
+			
+			// changes made after the last checkpoint, i.e. at most the size of all segments
+			final Map<String, Record> changes = new HashMap<>();
+			long lastSegment = checkpointSegment;
+			for (final Map.Entry<Long, File> segment : getSegments().entrySet()) {
+				if (segment.getKey() <= checkpointSegment) { // already merged, but not deleted as the server crashed in between
+					segment.getValue().delete();
+					continue;
+				}
+				try {
+					sealedSize += readSegment(segment.getValue(), changes, true);
+				} catch (final IOException e) {
+					Skript.error("Could not read the variables log segment '" + segment.getValue().getName() + "': " + ExceptionUtils.toString(e));
+					Skript.error("This means that some variables could not be loaded!");
+				}
+				lastSegment = segment.getKey();
+			}
+			
+			final VariableLoader<Record> loader = new VariableLoader<>(this, LogFileStorage::toVariable);
+			try {
+				if (file.length() != 0) {
+					try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+						readCheckpointHeader(in);
+						long remaining = file.length() - CHECKPOINT_HEADER_SIZE;
+						Record r;
+						while ((r = readRecord(in, remaining)) != null) {
+							remaining -= 8 + r.payload.length;
+							if (!changes.containsKey(r.name))
+								loader.add(r);
+						}
+					} catch (final IOException e) {
+						Skript.error("An I/O error occurred while loading the variables from '" + file.getName() + "': " + ExceptionUtils.toString(e));
+						Skript.error("This means that some to all variables could not be loaded!");
+						return false;
+					}
+				}
+				
+				for (final Record r : changes.values())
+					loader.add(r);
+			} finally {
+				loader.finish();
+			}
+			
+			for (final String name : loader.getFailed()) {
+				if (invalid.length() != 0)
+					invalid.append(", ");
+				invalid.append(name);
+				unsuccessful++;
+			}
+			
+			if (unsuccessful > 0) {
+				Skript.error(unsuccessful + " variable" + (unsuccessful == 1 ? "" : "s") + " could not be loaded!");
+				Skript.error("Affected variables: " + invalid.toString());
+			}
+			
+			synchronized (connectionLock) {
+				activeSegment = lastSegment + 1;
+			}
+		}
+		
+		return connect();
+	}
+	
+	/**
+	 * Called on the loading threads, see {@link VariableLoader}.
+	 */
+	private static SerializedVariable toVariable(final Record r) {
+		final String type = r.type;
+		final byte[] data = r.data;
+		return new SerializedVariable(r.name, type == null || data == null ? null : new SerializedVariable.Value(type, data));
+	}
+	
+	@Override
+	protected void allLoaded() {
+		synchronized (connectionLock) {
+			final DataOutputStream out = segmentOut;
+			if (out != null) {
+				try {
+					out.flush();
+				} catch (final IOException e) {
+					Skript.exception(e);
+				}
+			}
+		}
+	}
+	
+	@Override
+	protected boolean requiresFile() {
+		return true;
+	}
+	
+	@Override
+	protected File getFile(final String file) {
+		return new File(file);
+	}
+	
+	private File getSegmentFile(final long segment) {
+		final File file = this.file;
+		assert file != null;
+		return new File(file.getParentFile(), file.getName() + "." + segment);
+	}
+	
+	/**
+	 * @return All segment files of this storage, sorted by their number
+	 */
+	private TreeMap<Long, File> getSegments() {
+		final File file = this.file;
+		assert file != null;
+		final TreeMap<Long, File> segments = new TreeMap<>();
+		final File[] files = file.getParentFile().listFiles();
+		if (files == null)
+			return segments;
+		final String prefix = file.getName() + ".";
+		for (final File f : files) {
+			final String name = f.getName();
+			if (!name.startsWith(prefix) || !f.isFile())
+				continue;
+			try {
+				segments.put(Long.parseLong(name.substring(prefix.length())), f);
+			} catch (final NumberFormatException e) {} // e.g. the temporary checkpoint
+		}
+		return segments;
+	}
+	
+	/**
+	 * @return The last segment included in the checkpoint, or -1 if the checkpoint is empty
+	 */
+	private static long readCheckpointHeader(final File file) throws IOException {
+		if (file.length() == 0)
+			return -1;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return readCheckpointHeader(in);
+		}
+	}
+	
+	private static long readCheckpointHeader(final DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC_NUMBER)
+			throw new StreamCorruptedException("Not a variables log");
+		final short version = in.readShort();
+		if (version > FORMAT_VERSION)
+			throw new StreamCorruptedException("Unsupported format version " + version);
+		return in.readLong();
+	}
+	
+	/**
+	 * Reads a segment and puts its records into the given map, replacing earlier changes of the same variables.
+	 * 
+	 * @param truncate Whether to cut off a partially written record at the end of the segment
+	 * @return The size of the valid part of the segment
+	 */
+	private long readSegment(final File segment, final Map<String, Record> changes, final boolean truncate) throws IOException {
+		final long length = segment.length();
+		long valid = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+			Record r;
+			while (true) {
+				try {
+					r = readRecord(in, length - valid);
+				} catch (final EOFException | StreamCorruptedException e) {
+					Skript.warning("The variables log segment '" + segment.getName() + "' ends with an incomplete change (" + e.getLocalizedMessage() + "), which is likely caused by a crash. "
+							+ "This change will be discarded.");
+					break;
+				}
+				if (r == null)
+					break;
+				changes.put(r.name, r);
+				valid += 8 + r.payload.length;
+			}
+		}
+		if (truncate && valid != length) {
+			try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+				raf.setLength(valid);
+			}
+		}
+		return valid;
+	}
+	
+	/**
+	 * @param remaining The number of bytes left in the file, which limits the length of the record
+	 * @return The next record, or null if the end of the stream has been reached
+	 * @throws EOFException If the stream ends in the middle of a record
+	 * @throws StreamCorruptedException If the record's length is invalid or its checksum doesn't match
+	 */
+	@Nullable
+	private static Record readRecord(final DataInputStream in, final long remaining) throws IOException {
+		final int first = in.read(); // distinguishes the end of the stream from a truncated record
+		if (first == -1)
+			return null;
+		final int length = (first << 24) | (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+		final int checksum = in.readInt();
+		if (length < 0 || length > remaining - 8)
+			throw new StreamCorruptedException("Invalid record length " + length);
+		final byte[] payload = new byte[length];
+		in.readFully(payload);
+		final CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		if ((int) crc.getValue() != checksum)
+			throw new StreamCorruptedException("Checksum mismatch");
+		
+		final DataInputStream p = new DataInputStream(new ByteArrayInputStream(payload));
+		final String name = p.readUTF();
+		if (p.readByte() == RECORD_DELETE)
+			return new Record(name, null, null, payload, checksum);
+		final String type = p.readUTF();
+		final int dataLength = p.readInt();
+		if (dataLength < 0 || dataLength > p.available())
+			throw new StreamCorruptedException("Invalid value length " + dataLength);
+		final byte[] data = new byte[dataLength];
+		p.readFully(data);
+		return new Record(name, type, data, payload, checksum);
+	}
+	
+	private static void writeRecord(final DataOutputStream out, final byte[] payload, final int length, final int checksum) throws IOException {
+		out.writeInt(length);
+		out.writeInt(checksum);
+		out.write(payload, 0, length);
+	}
+	
+	private static void writeRecord(final DataOutputStream out, final Record r) throws IOException {
+		writeRecord(out, r.payload, r.payload.length, r.checksum);
+	}
+	
+	@Override
+	protected boolean save(final String name, final @Nullable String type, final @Nullable byte[] value) {
+		synchronized (connectionLock) {
+			if (segmentOut == null && !openSegment())
+				return false;
+			final DataOutputStream out = segmentOut;
+			assert out != null;
+			try {
+				recordBuffer.reset();
+				recordOut.writeUTF(name);
+				if (type == null || value == null) {
+					recordOut.writeByte(RECORD_DELETE);
+				} else {
+					recordOut.writeByte(RECORD_SET);
+					recordOut.writeUTF(type);
+					recordOut.writeInt(value.length);
+					recordOut.write(value);
+				}
+				final byte[] payload = recordBuffer.toByteArray();
+				crc.reset();
+				crc.update(payload, 0, payload.length);
+				writeRecord(out, payload, payload.length, (int) crc.getValue());
+				activeSegmentSize += 8 + payload.length;
+				
+				// flushing once the queue is empty writes a burst of changes at once
+				if (changesQueue.isEmpty())
+					out.flush();
+				
+				if (activeSegmentSize >= SEGMENT_SIZE)
+					sealSegment();
+			} catch (final IOException e) {
+				Skript.error("Could not save the variable {" + name + "} to the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Must be called while holding {@link #connectionLock}.
+	 */
+	private boolean openSegment() {
+		assert Thread.holdsLock(connectionLock);
+		if (segmentOut != null)
+			return true;
+		final File segment = getSegmentFile(activeSegment);
+		try {
+			final FileOutputStream fos = new FileOutputStream(segment, true);
+			segmentFile = fos;
+			segmentOut = new DataOutputStream(new BufferedOutputStream(fos));
+			activeSegmentSize = segment.length();
+			return true;
+		} catch (final IOException e) {
+			Skript.error("Cannot open the variables log segment '" + segment.getName() + "': " + ExceptionUtils.toString(e));
+			return false;
+		}
+	}
+	
+	/**
+	 * Flushes and closes the active segment, making it available for compaction. The next save will start a new segment.
+	 * <p>
+	 * Must be called while holding {@link #connectionLock}.
+	 */
+	private void sealSegment() throws IOException {
+		assert Thread.holdsLock(connectionLock);
+		final DataOutputStream out = segmentOut;
+		final FileOutputStream fos = segmentFile;
+		if (out == null || fos == null)
+			return;
+		segmentOut = null;
+		segmentFile = null;
+		try {
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (activeSegmentSize == 0) { // reuse the empty segment
+			return;
+		}
+		activeSegment++;
+		sealedSize += activeSegmentSize;
+		activeSegmentSize = 0;
+		
+		final File file = this.file;
+		assert file != null;
+		if (!closed && sealedSize >= Math.max(MIN_COMPACTION_SIZE, file.length() / 2) && compactionScheduled.compareAndSet(false, true)) {
+			new Task(Skript.getInstance(), 0, true) {
+				@Override
+				public void run() {
+					try {
+						compact(false);
+					} finally {
+						compactionScheduled.set(false);
+					}
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Merges all sealed segments into a new checkpoint. Script writes are not blocked while this is running.
+	 * 
+	 * @param sealActive Whether to seal the active segment first, so that the checkpoint contains all changes made so far
+	 * @return Whether the checkpoint could be written
+	 */
+	final boolean compact(final boolean sealActive) {
+		final File file = this.file;
+		if (file == null) {
+			assert false : this;
+			return false;
+		}
+		synchronized (compactionLock) {
+			final long last, sealed;
+			synchronized (connectionLock) {
+				if (sealActive) {
+					try {
+						sealSegment();
+					} catch (final IOException e) {
+						Skript.error("Could not seal the variables log segment of the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+						return false;
+					}
+				}
+				last = activeSegment - 1;
+				sealed = sealedSize;
+			}
+			if (last <= checkpointSegment)
+				return true;
+			
+			final Map<String, Record> changes = new HashMap<>();
+			try {
+				for (long segment = checkpointSegment + 1; segment <= last; segment++) {
+					final File f = getSegmentFile(segment);
+					if (f.exists())
+						readSegment(f, changes, false);
+				}
+				
+				final File temp = new File(file.getParentFile(), file.getName() + ".temp");
+				try (FileOutputStream fos = new FileOutputStream(temp);
+						DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+					out.writeInt(MAGIC_NUMBER);
+					out.writeShort(FORMAT_VERSION);
+					out.writeLong(last);
+					if (file.length() != 0) {
+						try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+							readCheckpointHeader(in);
+							long remaining = file.length() - CHECKPOINT_HEADER_SIZE;
+							Record r;
+							while ((r = readRecord(in, remaining)) != null) {
+								remaining -= 8 + r.payload.length;
+								if (!changes.containsKey(r.name))
+									writeRecord(out, r);
+							}
+						}
+					}
+					for (final Record r : changes.values()) {
+						if (r.data != null)
+							writeRecord(out, r);
+					}
+					out.flush();
+					fos.getFD().sync();
+				}
+				FileUtils.move(temp, file, true);
+			} catch (final IOException e) {
+				Skript.error("Could not compact the variables log of the database '" + databaseName + "' (no variables are lost): " + ExceptionUtils.toString(e));
+				return false;
+			}
+			
+			for (long segment = checkpointSegment + 1; segment <= last; segment++)
+				getSegmentFile(segment).delete();
+			checkpointSegment = last;
+			synchronized (connectionLock) {
+				sealedSize -= sealed; // segments sealed in the meantime are merged by the next compaction
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Backups first merge all changes into the checkpoint, which is then copied.
+	 */
+	@Override
+	public void startBackupTask(final Timespan t) {
+		final File file = this.file;
+		if (file == null || t.getTicks_i() == 0)
+			return;
+		backupTask = new Task(Skript.getInstance(), t.getTicks_i(), t.getTicks_i(), true) {
+			@Override
+			public void run() {
+				if (!compact(true))
+					return;
+				synchronized (compactionLock) {
+					try {
+						backup(file);
+					} catch (final IOException e) {
+						Skript.error("Automatic variables backup failed: " + e.getLocalizedMessage());
+					}
+				}
+			}
+		};
+	}
+	
+	@Override
+	protected final boolean connect() {
+		synchronized (connectionLock) {
+			return openSegment();
+		}
+	}
+	
+	@Override
+	protected final void disconnect() {
+		synchronized (connectionLock) {
+			try {
+				sealSegment();
+			} catch (final IOException e) {
+				Skript.error("Could not close the variables log segment of the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+			}
+		}
+	}
+	
+	@Override
+	public void close() {
+		final Task bt = backupTask;
+		if (bt != null)
+			bt.cancel();
+		super.close();
+		disconnect();
+	}
+	
+}
@@ -0,0 +1,472 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.SectionNode;
+import ch.njol.skript.log.SkriptLogger;
+import ch.njol.skript.util.ExceptionUtils;
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * A variable storage that keeps every variable in its own slot of a memory-mapped file, thus changing a variable only writes that variable's slot instead of
+ * appending to a log or rewriting the whole file.
+ * <p>
+ * The file is mapped in regions of {@link #REGION_SIZE} bytes, so the operating system decides which parts of the file are held in memory instead of the heap.
+ * Slots never cross region boundaries. Their sizes are multiples of 8 bytes, and freed slots are kept in free lists by the power of two below their size so
+ * they can be reused for values of a similar size.
+ * <p>
+ * A changed variable is written to a new slot, and its old slot is freed afterwards. Every slot contains a sequence number and a CRC32 checksum, so if the
+ * server crashes in between, the newer valid slot is used when the file is loaded, and a partially written slot is ignored.
+ */
+public class MappedFileStorage extends VariablesStorage {
+	
+	/**
+	 * 'SKVM'
+	 */
+	private final static int MAGIC_NUMBER = 0x534B564D;
+	
+	private final static short FORMAT_VERSION = 1;
+	
+	private final static int FILE_HEADER_SIZE = 16;
+	
+	private final static int REGION_SHIFT = 24, REGION_SIZE = 1 << REGION_SHIFT;
+	
+	/**
+	 * Slot header: size (int), state (byte), checksum (int), payload length (int)
+	 */
+	private final static int SLOT_HEADER_SIZE = 13;
+	
+	private final static int MIN_SLOT_SIZE = 64;
+	
+	private final static byte SLOT_FREE = 0, SLOT_USED = 1;
+	
+	/**
+	 * How often the mapped regions are written to the disk at most while changes are saved, in milliseconds.
+	 */
+	private final static long FORCE_INTERVAL = 1000;
+	
+	// all guarded by connectionLock
+	@Nullable
+	private RandomAccessFile raf;
+	private final List<MappedByteBuffer> regions = new ArrayList<>();
+	private final BitSet dirtyRegions = new BitSet();
+	private long lastForce = 0;
+	
+	/**
+	 * The end of the last slot. Everything after it is unused.
+	 */
+	private long end;
+	
+	/**
+	 * The offset of the slot of every stored variable, sorted by name so that the variables of a {@link #loadPartition(String, List) partition} can be found
+	 * without checking all names
+	 */
+	private final NavigableMap<String, Long> slots = new TreeMap<>();
+	
+	/**
+	 * Free slots by the power of two below their size
+	 */
+	@SuppressWarnings("unchecked")
+	private final ArrayDeque<Long>[] freeSlots = new ArrayDeque[REGION_SHIFT + 1];
+	
+	private long sequence = 0;
+	
+	private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream();
+	private final DataOutputStream payloadOut = new DataOutputStream(payloadBuffer);
+	private final CRC32 crc = new CRC32();
+	
+	protected MappedFileStorage(final String name) {
+		super(name);
+		for (int i = 0; i < freeSlots.length; i++)
+			freeSlots[i] = new ArrayDeque<>();
+	}
+	
+	@Override
+	protected boolean load_i(final SectionNode n) {
+		SkriptLogger.setNode(null);
+		
+		final File file = this.file;
+		if (file == null) {
+			assert false : this;
+			return false;
+		}
+		
+		synchronized (connectionLock) {
+			try {
+				open(file);
+			} catch (final IOException e) {
+				Skript.error("Cannot open the variables file '" + file.getName() + "' of the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+				return false;
+			}
+			
+			final VariableLoader<SerializedVariable> loader = new VariableLoader<>(this, v -> v);
+			try {
+				long offset = FILE_HEADER_SIZE;
+				final long length = (long) regions.size() << REGION_SHIFT;
+				while (offset < length) {
+					final int size = getInt(offset);
+					if (size == 0) { // never written to
+						break;
+					} else if (size < 8 || size % 8 != 0 || (offset >>> REGION_SHIFT) != ((offset + size - 1) >>> REGION_SHIFT)) {
+						Skript.error("The variables file '" + file.getName() + "' of the database '" + databaseName + "' is corrupted at offset " + offset + ". "
+								+ "Please restore it from a backup or delete it if you don't need the variables saved in it.");
+						return false;
+					}
+					final SerializedVariable var = readSlot(offset);
+					if (var == null) {
+						free(offset, size, false);
+					} else {
+						final Long previous = slots.get(var.name);
+						if (previous == null || getSequence(previous) < getSequence(offset)) { // the server crashed between writing the new slot and freeing the old one
+							if (previous != null)
+								free(previous, getInt(previous), true);
+							slots.put(var.name, offset);
+							loader.add(var);
+						} else {
+							free(offset, size, true);
+						}
+						sequence = Math.max(sequence, getSequence(offset));
+					}
+					offset += size;
+				}
+				end = offset;
+			} finally {
+				loader.finish();
+			}
+			
+			final List<String> failed = loader.getFailed();
+			if (!failed.isEmpty()) {
+				Skript.error(failed.size() + " variable" + (failed.size() == 1 ? "" : "s") + " could not be loaded!");
+				Skript.error("Affected variables: " + String.join(", ", failed));
+			}
+		}
+		return true;
+	}
+	
+	private void open(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		this.raf = raf;
+		final boolean created = raf.length() == 0;
+		final long length = Math.max(REGION_SIZE, (raf.length() + REGION_SIZE - 1) & -REGION_SIZE);
+		if (raf.length() != length)
+			raf.setLength(length);
+		for (long offset = 0; offset < length; offset += REGION_SIZE)
+			regions.add(raf.getChannel().map(MapMode.READ_WRITE, offset, REGION_SIZE));
+		final MappedByteBuffer header = regions.get(0);
+		if (created) {
+			header.putInt(0, MAGIC_NUMBER);
+			header.putShort(4, FORMAT_VERSION);
+			dirtyRegions.set(0);
+		} else {
+			if (header.getInt(0) != MAGIC_NUMBER)
+				throw new IOException("Not a mapped variables file");
+			final short version = header.getShort(4);
+			if (version > FORMAT_VERSION)
+				throw new IOException("Unsupported format version " + version);
+		}
+	}
+	
+	private ByteBuffer region(final long offset) {
+		return regions.get((int) (offset >>> REGION_SHIFT));
+	}
+	
+	private static int index(final long offset) {
+		return (int) (offset & (REGION_SIZE - 1));
+	}
+	
+	private int getInt(final long offset) {
+		return region(offset).getInt(index(offset));
+	}
+	
+	private long getSequence(final long slot) {
+		return region(slot).getLong(index(slot) + SLOT_HEADER_SIZE);
+	}
+	
+	/**
+	 * @return The variable in the given slot, or null if the slot is free or was not written completely
+	 */
+	@Nullable
+	private SerializedVariable readSlot(final long slot) {
+		final ByteBuffer region = region(slot);
+		final int i = index(slot);
+		final int size = region.getInt(i);
+		if (region.get(i + 4) != SLOT_USED)
+			return null;
+		final int checksum = region.getInt(i + 5);
+		final int length = region.getInt(i + 9);
+		if (length < 8 || length > size - SLOT_HEADER_SIZE)
+			return null;
+		final ByteBuffer payload = region.duplicate();
+		payload.limit(i + SLOT_HEADER_SIZE + length).position(i + SLOT_HEADER_SIZE);
+		crc.reset();
+		crc.update(payload.duplicate());
+		if ((int) crc.getValue() != checksum)
+			return null;
+		try {
+			payload.getLong(); // sequence
+			final String name = new String(getBytes(payload), StandardCharsets.UTF_8);
+			final byte[] type = getBytes(payload);
+			final byte[] data = getBytes(payload);
+			return new SerializedVariable(name, new Value(new String(type, StandardCharsets.UTF_8), data));
+		} catch (final RuntimeException e) { // invalid lengths
+			return null;
+		}
+	}
+	
+	private static byte[] getBytes(final ByteBuffer b) {
+		final byte[] bytes = new byte[b.getInt()];
+		b.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Marks a slot as free and adds it to the free lists.
+	 * 
+	 * @param write Whether the slot has to be marked as free in the file, i.e. whether it contains a valid variable
+	 */
+	private void free(final long slot, final int size, final boolean write) {
+		if (write) {
+			region(slot).put(index(slot) + 4, SLOT_FREE);
+			dirtyRegions.set((int) (slot >>> REGION_SHIFT));
+		}
+		freeSlots[31 - Integer.numberOfLeadingZeros(size)].add(slot);
+	}
+	
+	/**
+	 * Finds a free slot of at least the given size, or creates a new one at the end of the file.
+	 */
+	private long allocate(final int size) throws IOException {
+		final int c = 32 - Integer.numberOfLeadingZeros(size - 1); // slots in this class are at least 2^c bytes large
+		for (int i = c; i <= Math.min(c + 1, REGION_SHIFT); i++) {
+			final Long slot = freeSlots[i].poll();
+			if (slot != null)
+				return slot;
+		}
+		final int slotSize = Math.max(MIN_SLOT_SIZE, Integer.highestOneBit(size - 1) << 1);
+		final long regionEnd = ((end >>> REGION_SHIFT) + 1) << REGION_SHIFT;
+		if (end + slotSize > regionEnd) { // fill the rest of the region with a free slot
+			final int rest = (int) (regionEnd - end);
+			region(end).putInt(index(end), rest);
+			region(end).put(index(end) + 4, SLOT_FREE);
+			dirtyRegions.set((int) (end >>> REGION_SHIFT));
+			free(end, rest, false);
+			end = regionEnd;
+		}
+		if (end >>> REGION_SHIFT >= regions.size()) {
+			final RandomAccessFile raf = this.raf;
+			assert raf != null;
+			raf.setLength(end + REGION_SIZE);
+			regions.add(raf.getChannel().map(MapMode.READ_WRITE, end, REGION_SIZE));
+		}
+		final long slot = end;
+		region(slot).putInt(index(slot), slotSize);
+		end += slotSize;
+		return slot;
+	}
+	
+	@Override
+	protected boolean save(final String name, final @Nullable String type, final @Nullable byte[] value) {
+		synchronized (connectionLock) {
+			if (raf == null)
+				return false;
+			try {
+				return write(name, type, value);
+			} catch (final IOException e) {
+				Skript.error("Could not save the variable {" + name + "} to the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Writes a variable into a new slot and frees its previous slot. Must be called while holding {@link #connectionLock} and connected.
+	 * 
+	 * @return Whether the variable was saved, i.e. false if it is too large
+	 * @throws IOException If the file cannot be extended
+	 */
+	private boolean write(final String name, final @Nullable String type, final @Nullable byte[] value) throws IOException {
+		final Long previous = slots.get(name);
+		if (type == null || value == null) {
+			if (previous != null) {
+				free(previous, getInt(previous), true);
+				slots.remove(name);
+			}
+			return true;
+		}
+		payloadBuffer.reset();
+		payloadOut.writeLong(++sequence);
+		writeBytes(payloadOut, name.getBytes(StandardCharsets.UTF_8));
+		writeBytes(payloadOut, type.getBytes(StandardCharsets.UTF_8));
+		writeBytes(payloadOut, value);
+		final byte[] payload = payloadBuffer.toByteArray();
+		final int size = (SLOT_HEADER_SIZE + payload.length + 7) & -8;
+		if (size > REGION_SIZE - FILE_HEADER_SIZE) {
+			Skript.error("The variable {" + name + "} is too large to be saved in the database '" + databaseName + "' (" + payload.length + " bytes)");
+			return false;
+		}
+		
+		final long slot = allocate(size);
+		final ByteBuffer region = region(slot).duplicate();
+		final int i = index(slot);
+		crc.reset();
+		crc.update(payload, 0, payload.length);
+		region.putInt(i + 5, (int) crc.getValue());
+		region.putInt(i + 9, payload.length);
+		region.position(i + SLOT_HEADER_SIZE);
+		region.put(payload);
+		region.put(i + 4, SLOT_USED);
+		dirtyRegions.set((int) (slot >>> REGION_SHIFT));
+		
+		if (previous != null)
+			free(previous, getInt(previous), true);
+		slots.put(name, slot);
+		return true;
+	}
+	
+	@Override
+	protected boolean supportsPartitions() {
+		return true;
+	}
+	
+	/**
+	 * Only reads the slots of the partition's variables, which are next to each other in {@link #slots}.
+	 */
+	@Override
+	protected void loadPartition(final String prefix, final List<SerializedVariable> variables) {
+		synchronized (connectionLock) {
+			if (raf == null)
+				return;
+			for (final Long slot : slots.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+				final SerializedVariable var = readSlot(slot);
+				if (var != null)
+					variables.add(var);
+			}
+		}
+	}
+	
+	private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Writes the changes one by one. If the file cannot be extended, the whole batch is written again later. Writing the changes before the failure again is
+	 * harmless, as every change replaces the variable's slot.
+	 */
+	@Override
+	protected boolean saveBatch(final List<SerializedVariable> changes) {
+		synchronized (connectionLock) {
+			if (raf == null)
+				return false;
+			for (final SerializedVariable var : changes) {
+				final Value value = var.value;
+				try {
+					write(var.name, value == null ? null : value.type, value == null ? null : value.data);
+				} catch (final IOException e) {
+					Skript.error("Could not save the variable {" + var.name + "} to the database '" + databaseName + "': " + ExceptionUtils.toString(e));
+					return false;
+				}
+			}
+			if (System.currentTimeMillis() - lastForce >= FORCE_INTERVAL)
+				force();
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes all changed regions to the disk. Must be called while holding {@link #connectionLock}.
+	 */
+	private void force() {
+		for (int i = dirtyRegions.nextSetBit(0); i >= 0 && i < regions.size(); i = dirtyRegions.nextSetBit(i + 1))
+			regions.get(i).force();
+		dirtyRegions.clear();
+		lastForce = System.currentTimeMillis();
+	}
+	
+	@Override
+	protected void allLoaded() {
+		synchronized (connectionLock) {
+			force();
+		}
+	}
+	
+	@Override
+	protected boolean requiresFile() {
+		return true;
+	}
+	
+	@Override
+	protected File getFile(final String file) {
+		return new File(file);
+	}
+	
+	/**
+	 * The file stays mapped, this only makes sure that it is complete on the disk, e.g. for backups.
+	 */
+	@Override
+	protected void disconnect() {
+		synchronized (connectionLock) {
+			force();
+		}
+	}
+	
+	@Override
+	protected boolean connect() {
+		return true;
+	}
+	
+	@Override
+	public void close() {
+		super.close();
+		synchronized (connectionLock) {
+			force();
+			regions.clear();
+			final RandomAccessFile raf = this.raf;
+			this.raf = null;
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (final IOException e) {
+					Skript.exception(e);
+				}
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,353 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.util.FileUtils;
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * A file holding the changes of a {@link VariablesStorage} that did not fit into its {@link VariablesStorage#changesQueue changes queue}, in the order they were
+ * made. Changes are appended to the end of the file and read from its start. The file is emptied once all changes have been saved and removed, and rewritten
+ * without the removed changes once they make up more than half of it.
+ * <p>
+ * Every change is saved as the time it was made, the variable's name and its serialised value (or nothing if the variable was deleted). A change that was only
+ * partially written is discarded when the journal is opened.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class OverflowJournal {
+	
+	/**
+	 * Names and types must not be longer than this, which also catches corrupted lengths.
+	 */
+	private final static int MAX_STRING_LENGTH = 1 << 20;
+	
+	/**
+	 * Removed changes are only cut off the start of the file once they take up at least this many bytes, and more than half of the file.
+	 */
+	private final static long MIN_COMPACT_LENGTH = 1 << 16;
+	
+	private final File file;
+	
+	@Nullable
+	private RandomAccessFile raf;
+	
+	private long readPosition, writePosition;
+	
+	private int size;
+	
+	/**
+	 * The time of the change at {@link #readPosition}
+	 */
+	private long headTime;
+	
+	/**
+	 * The number of changes returned by the last {@link #peek(List, int)} and the position after them, reset by any method that moves the changes in the file
+	 */
+	private int peeked;
+	private long peekedPosition;
+	
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+	
+	OverflowJournal(final File file) {
+		this.file = file;
+	}
+	
+	File getFile() {
+		return file;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * @return How many changes are in this journal
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * @return The time of the oldest change in this journal in milliseconds, or -1 if it's empty
+	 */
+	long getOldestTime() {
+		return size == 0 ? -1 : headTime;
+	}
+	
+	private RandomAccessFile open() throws IOException {
+		RandomAccessFile raf = this.raf;
+		if (raf == null)
+			this.raf = raf = new RandomAccessFile(file, "rw");
+		return raf;
+	}
+	
+	/**
+	 * Opens the journal file if it exists and counts the changes in it. A partially written change at the end of the file is cut off.
+	 * 
+	 * @return How many changes are in the file
+	 * @throws IOException
+	 */
+	int load() throws IOException {
+		readPosition = writePosition = 0;
+		size = 0;
+		peeked = 0;
+		if (!file.exists())
+			return 0;
+		final RandomAccessFile raf = open();
+		final DataInputStream in = inputAt(raf, 0);
+		long position = 0;
+		int size = 0;
+		try {
+			while (true) {
+				position += readRecord(in, null);
+				if (size == 0)
+					headTime = recordTime;
+				size++;
+			}
+		} catch (final EOFException | StreamCorruptedException e) {}
+		raf.setLength(position);
+		writePosition = position;
+		this.size = size;
+		return size;
+	}
+	
+	private static DataInputStream inputAt(final RandomAccessFile raf, final long position) throws IOException {
+		raf.seek(position);
+		return new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+	}
+	
+	// the time of the last change read by readRecord
+	private long recordTime;
+	
+	/**
+	 * Reads a single change.
+	 * 
+	 * @param in
+	 * @param changes The list to add the change to, or null to skip it
+	 * @return The length of the change in bytes
+	 * @throws IOException
+	 */
+	private long readRecord(final DataInputStream in, final @Nullable List<SerializedVariable> changes) throws IOException {
+		recordTime = in.readLong();
+		final byte[] name = readBytes(in, MAX_STRING_LENGTH);
+		long length = 8 + 4 + name.length + 1;
+		Value value = null;
+		if (in.readBoolean()) {
+			final byte[] type = readBytes(in, MAX_STRING_LENGTH);
+			final byte[] data = readBytes(in, Integer.MAX_VALUE);
+			value = new Value(new String(type, StandardCharsets.UTF_8), data);
+			length += 4 + type.length + 4 + data.length;
+		}
+		if (changes != null)
+			changes.add(new SerializedVariable(new String(name, StandardCharsets.UTF_8), value));
+		return length;
+	}
+	
+	private static byte[] readBytes(final DataInputStream in, final int maxLength) throws IOException {
+		final int length = in.readInt();
+		if (length < 0 || length > maxLength)
+			throw new StreamCorruptedException("invalid length " + length);
+		final byte[] b = new byte[length];
+		in.readFully(b);
+		return b;
+	}
+	
+	/**
+	 * Appends a change to the end of this journal.
+	 * 
+	 * @param var
+	 * @param time When the change was made
+	 * @throws IOException
+	 */
+	void append(final SerializedVariable var, final long time) throws IOException {
+		final RandomAccessFile raf = open();
+		recordBytes.reset();
+		writeRecord(record, var, time);
+		raf.seek(writePosition);
+		raf.write(recordBytes.toByteArray());
+		writePosition += recordBytes.size();
+		if (size == 0)
+			headTime = time;
+		size++;
+	}
+	
+	private static void writeRecord(final DataOutputStream out, final SerializedVariable var, final long time) throws IOException {
+		out.writeLong(time);
+		final byte[] name = var.name.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(name.length);
+		out.write(name);
+		final Value value = var.value;
+		out.writeBoolean(value != null);
+		if (value != null) {
+			final byte[] type = value.type.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(type.length);
+			out.write(type);
+			out.writeInt(value.data.length);
+			out.write(value.data);
+		}
+	}
+	
+	/**
+	 * Reads the oldest changes from this journal without removing them. They must be removed with {@link #removePeeked()} once they have been saved, thus they
+	 * are not lost if the server stops before.
+	 * 
+	 * @param changes The list to add the read changes to
+	 * @param max How many changes to read at most
+	 * @throws IOException
+	 */
+	void peek(final List<SerializedVariable> changes, final int max) throws IOException {
+		peeked = 0;
+		if (size == 0)
+			return;
+		final DataInputStream in = inputAt(open(), readPosition);
+		long position = readPosition;
+		int read = 0;
+		while (read < max && read < size) {
+			position += readRecord(in, changes);
+			read++;
+		}
+		peeked = read;
+		peekedPosition = position;
+	}
+	
+	/**
+	 * Removes the changes returned by the last call to {@link #peek(List, int)}. Does nothing if the journal has been {@link #prepend(Collection, long) rewritten}
+	 * or {@link #clear() cleared} since.
+	 * 
+	 * @throws IOException
+	 */
+	void removePeeked() throws IOException {
+		final int removed = peeked;
+		if (removed == 0)
+			return;
+		peeked = 0;
+		size -= removed;
+		if (size == 0) {
+			open().setLength(0);
+			readPosition = writePosition = 0;
+		} else {
+			readPosition = peekedPosition;
+			headTime = inputAt(open(), readPosition).readLong();
+			if (readPosition >= MIN_COMPACT_LENGTH && readPosition > writePosition / 2)
+				rewrite(Collections.<SerializedVariable>emptyList(), 0);
+		}
+	}
+	
+	/**
+	 * Reads all changes in this journal without removing them.
+	 * 
+	 * @param changes The list to add the changes to
+	 * @throws IOException
+	 */
+	void peekAll(final List<SerializedVariable> changes) throws IOException {
+		if (size == 0)
+			return;
+		final DataInputStream in = inputAt(open(), readPosition);
+		for (int i = 0; i < size; i++)
+			readRecord(in, changes);
+	}
+	
+	/**
+	 * Inserts changes before all changes in this journal by rewriting the file.
+	 * 
+	 * @param vars
+	 * @param time When the changes were made
+	 * @throws IOException
+	 */
+	void prepend(final Collection<SerializedVariable> vars, final long time) throws IOException {
+		if (vars.isEmpty())
+			return;
+		rewrite(vars, time);
+	}
+	
+	/**
+	 * Rewrites the file with the given changes followed by the changes that have not been removed yet.
+	 */
+	private void rewrite(final Collection<SerializedVariable> vars, final long time) throws IOException {
+		final File temp = new File(file.getPath() + ".temp");
+		final RandomAccessFile raf = open();
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			for (final SerializedVariable var : vars)
+				writeRecord(out, var, time);
+			final DataInputStream in = inputAt(raf, readPosition);
+			final byte[] buffer = new byte[8192];
+			long remaining = writePosition - readPosition;
+			while (remaining > 0) {
+				final int r = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (r < 0)
+					throw new EOFException();
+				out.write(buffer, 0, r);
+				remaining -= r;
+			}
+		}
+		close();
+		FileUtils.move(temp, file, true);
+		load();
+	}
+	
+	/**
+	 * Removes all changes from this journal.
+	 * 
+	 * @throws IOException
+	 */
+	void clear() throws IOException {
+		size = 0;
+		peeked = 0;
+		readPosition = writePosition = 0;
+		final RandomAccessFile raf = this.raf;
+		if (raf != null)
+			raf.setLength(0);
+	}
+	
+	/**
+	 * Closes the file, and deletes it if this journal is empty.
+	 * 
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		final RandomAccessFile raf = this.raf;
+		this.raf = null;
+		if (raf != null)
+			raf.close();
+		if (size == 0 && file.exists() && !file.delete())
+			throw new IOException("Cannot delete " + file);
+	}
+	
+}
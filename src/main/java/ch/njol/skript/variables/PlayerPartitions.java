@@ -0,0 +1,296 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.SkriptConfig;
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.classes.Serializer;
+import ch.njol.skript.lang.Variable;
+import ch.njol.skript.registrations.Classes;
+import ch.njol.skript.util.Task;
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * Keeps the variables of players in memory only while they are online.
+ * <p>
+ * The partitions are configured with the 'player variable partitions' option as a list of list variables containing a player's UUID, e.g.
+ * <tt>data::%uuid%::*, stats::%uuid%::*</tt>. The variables of a player's partition are not loaded when Skript starts (if the storage they are saved in
+ * {@link VariablesStorage#supportsPartitions() supports partitions}), but when the player logs in. When the player quits, the partition is removed from memory
+ * again after {@link #EVICTION_DELAY}, but only once all changes made until the player quit have been saved by the storages.
+ * <p>
+ * Reading or changing a variable of a partition that is not in memory, e.g. of an offline player, first loads the whole partition, blocking until it has been
+ * loaded. Thus a change never replaces a saved value that was not loaded, and the partition is removed from memory again after {@link #EVICTION_DELAY}.
+ */
+public final class PlayerPartitions {
+	
+	private PlayerPartitions() {}
+	
+	/**
+	 * How long a partition is kept in memory after its player quit, in ticks
+	 */
+	private final static long EVICTION_DELAY = 30 * 20;
+	
+	private final static int UUID_LENGTH = 36;
+	
+	/**
+	 * The parts of the configured variable names before '%uuid%'
+	 */
+	private static String[] prefixes = new String[0];
+	
+	/**
+	 * UUIDs of the players whose partitions are in memory. Only changed on Bukkit's main thread, apart from {@link #init()}.
+	 */
+	private final static Set<String> loaded = new HashSet<>();
+	
+	/**
+	 * Eviction tasks of players who quit
+	 */
+	private final static Map<String, Task> evictions = new HashMap<>();
+	
+	/**
+	 * Reads the configured partitions and remembers the players that are already online (when Skript is reloaded). Called before the storages are loaded.
+	 * 
+	 * @return Whether the option is valid
+	 */
+	static boolean init() {
+		final String option = SkriptConfig.playerVariablePartitions.value().trim();
+		final List<String> prefixes = new ArrayList<>();
+		if (!option.isEmpty()) {
+			for (String pattern : option.split(",")) {
+				pattern = pattern.trim();
+				if (Variables.caseInsensitiveVariables) // names are only lower case if variables are case insensitive
+					pattern = pattern.toLowerCase(Locale.ENGLISH);
+				final int uuid = pattern.toLowerCase(Locale.ENGLISH).indexOf("%uuid%");
+				if (uuid == -1 || !pattern.substring(uuid).equalsIgnoreCase("%uuid%" + Variable.SEPARATOR + "*")) {
+					Skript.error("Invalid player variable partition '" + pattern + "'. Partitions must be list variables like 'data::%uuid%::*', i.e. must end in '%uuid%" + Variable.SEPARATOR + "*'.");
+					return false;
+				}
+				prefixes.add(pattern.substring(0, uuid));
+			}
+		}
+		PlayerPartitions.prefixes = prefixes.toArray(new String[0]);
+		if (prefixes.isEmpty())
+			return true;
+		
+		for (final Player p : Bukkit.getOnlinePlayers())
+			loaded.add(p.getUniqueId().toString());
+		Bukkit.getPluginManager().registerEvents(new Listener() {
+			@EventHandler(priority = EventPriority.MONITOR)
+			public void onPreLogin(final AsyncPlayerPreLoginEvent e) {
+				if (e.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED)
+					load(e.getUniqueId(), false);
+			}
+			
+			@EventHandler(priority = EventPriority.MONITOR)
+			public void onQuit(final PlayerQuitEvent e) {
+				scheduleEviction(e.getPlayer().getUniqueId().toString(), System.currentTimeMillis());
+			}
+		}, Skript.getInstance());
+		return true;
+	}
+	
+	/**
+	 * @param name
+	 * @return The UUID of the partition the given variable belongs to, or null if it doesn't belong to a partition
+	 */
+	@Nullable
+	static String getPartition(final String name) {
+		for (final String prefix : prefixes) {
+			if (!name.startsWith(prefix) || name.length() <= prefix.length() + UUID_LENGTH + Variable.SEPARATOR.length()
+					|| !name.startsWith(Variable.SEPARATOR, prefix.length() + UUID_LENGTH))
+				continue;
+			final String uuid = name.substring(prefix.length(), prefix.length() + UUID_LENGTH);
+			if (isUUID(uuid))
+				return uuid;
+		}
+		return null;
+	}
+	
+	private static boolean isUUID(final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (i == 8 || i == 13 || i == 18 || i == 23 ? c != '-' : !(c >= '0' && c <= '9' || c >= 'a' && c <= 'f'))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether a loaded variable belongs to the partition of an offline player, in which case it must not be put into memory as it can be loaded from
+	 * its storage again when the player logs in.
+	 * 
+	 * @param name
+	 * @param source The storage the variable was loaded from
+	 * @return Whether the variable should be ignored
+	 */
+	static boolean isEvicted(final String name, final VariablesStorage source) {
+		if (prefixes.length == 0 || !source.supportsPartitions())
+			return false;
+		final String uuid = getPartition(name);
+		if (uuid == null)
+			return false;
+		synchronized (loaded) {
+			return !loaded.contains(uuid);
+		}
+	}
+	
+	/**
+	 * Loads the partition of the given variable if it is not in memory, so that the variable is never read or changed without the saved values of its
+	 * partition. Blocks until the partition has been loaded.
+	 * <p>
+	 * Must not be called while holding a lock on the variables.
+	 */
+	static void ensureLoaded(final String name) {
+		if (prefixes.length == 0)
+			return;
+		final String uuid = getPartition(name);
+		if (uuid == null)
+			return;
+		synchronized (loaded) {
+			if (loaded.contains(uuid))
+				return;
+		}
+		final VariablesStorage s = Variables.getStorage(name);
+		if (s == null || !s.supportsPartitions()) // loaded with all other variables
+			return;
+		load(UUID.fromString(uuid), true);
+	}
+	
+	/**
+	 * Loads a player's partition from the storages. The calling thread, e.g. the login thread, is blocked until the partition has been put into memory.
+	 * 
+	 * @param evict Whether to remove the partition from memory again, i.e. whether it is loaded for a player who is not logging in
+	 */
+	private static void load(final UUID id, final boolean evict) {
+		final String uuid = id.toString();
+		final List<SerializedVariable> vars = new ArrayList<>();
+		for (final String prefix : prefixes) {
+			final String partition = prefix + uuid + Variable.SEPARATOR;
+			for (final VariablesStorage s : Variables.storages) {
+				if (!s.supportsPartitions())
+					continue;
+				final int start = vars.size();
+				s.loadPartition(partition, vars);
+				// variables of this partition might also be left in other storages if the config was changed, only the storage responsible for a variable is used
+				for (int i = vars.size() - 1; i >= start; i--) {
+					if (Variables.getStorage(vars.get(i).name) != s)
+						vars.remove(i);
+				}
+			}
+		}
+		
+		// deserialise on this thread if possible
+		final String[] names = new String[vars.size()];
+		final Object[] values = new Object[vars.size()];
+		int n = 0;
+		for (final SerializedVariable var : vars) {
+			final Value value = var.value;
+			if (value == null)
+				continue;
+			final ClassInfo<?> ci = Classes.getClassInfoNoError(value.type);
+			final Serializer<?> s = ci == null ? null : ci.getSerializer();
+			if (ci == null || s == null) {
+				Skript.error("Cannot load the variable {" + var.name + "}, because the type '" + value.type + "' cannot be recognised or cannot be stored in variables");
+				continue;
+			}
+			names[n] = var.name;
+			values[n++] = s.mustSyncDeserialization() ? value : Classes.deserialize(ci, value.data);
+		}
+		final int count = n;
+		Task.callSync(() -> {
+			final Task eviction = evictions.remove(uuid);
+			if (eviction != null)
+				eviction.cancel();
+			synchronized (loaded) {
+				if (!loaded.add(uuid))
+					return null; // still in memory
+			}
+			for (int i = 0; i < count; i++) {
+				if (values[i] instanceof Value) {
+					final Value v = (Value) values[i];
+					values[i] = Classes.deserialize(v.type, v.data);
+				}
+				if (values[i] == null)
+					Skript.error("Cannot load the variable {" + names[i] + "}, because its value is invalid");
+			}
+			Variables.partitionLoaded(names, values, count);
+			if (evict)
+				scheduleEviction(uuid, System.currentTimeMillis());
+			return null;
+		});
+	}
+	
+	/**
+	 * Removes a partition from memory after {@link #EVICTION_DELAY} if its player is still offline, and if all changes made until the player quit and all
+	 * changes of the partition have been saved by then. Otherwise the check is repeated after the same delay.
+	 */
+	private static void scheduleEviction(final String uuid, final long quitTime) {
+		final Task old = evictions.put(uuid, new Task(Skript.getInstance(), EVICTION_DELAY) {
+			@Override
+			public void run() {
+				evictions.remove(uuid);
+				if (Bukkit.getPlayer(UUID.fromString(uuid)) != null)
+					return;
+				final String[] partition = new String[prefixes.length];
+				for (int i = 0; i < prefixes.length; i++)
+					partition[i] = prefixes[i] + uuid + Variable.SEPARATOR;
+				if (Variables.hasPendingChanges(partition)) { // changed while the player is offline, and not passed to the storage yet
+					scheduleEviction(uuid, quitTime);
+					return;
+				}
+				final long age = System.currentTimeMillis() - quitTime;
+				for (final VariablesStorage s : Variables.storages) {
+					if (s.getOldestChangeAge() >= age) { // a change made before the player quit has not been saved yet
+						scheduleEviction(uuid, quitTime);
+						return;
+					}
+				}
+				synchronized (loaded) {
+					loaded.remove(uuid);
+				}
+				final String[] lists = new String[prefixes.length];
+				for (int i = 0; i < prefixes.length; i++)
+					lists[i] = partition[i] + "*";
+				Variables.evictPartition(lists);
+			}
+		});
+		if (old != null)
+			old.cancel();
+	}
+	
+}
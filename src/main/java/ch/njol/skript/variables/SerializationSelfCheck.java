@@ -0,0 +1,130 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.SkriptConfig;
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.classes.Serializer;
+import ch.njol.skript.registrations.Classes;
+
+/**
+ * Deserialises every n-th serialised value again and compares it with the original value, as configured by {@link SkriptConfig#serializationSelfCheck}.
+ * <p>
+ * Values that can only be deserialised on the main thread are skipped if they were serialised on another thread, as they could only be compared on a later tick,
+ * by which time they might have been changed.
+ * <p>
+ * This used to be an assertion in {@link Classes#serialize(ClassInfo, Object)}, which doubled the cost of saving variables on servers running with assertions enabled.
+ */
+public final class SerializationSelfCheck {
+	
+	private SerializationSelfCheck() {}
+	
+	private final static AtomicLong serialized = new AtomicLong(), checked = new AtomicLong(), mismatches = new AtomicLong();
+	private final static Map<String, AtomicLong> mismatchesByType = new ConcurrentHashMap<>();
+	
+	@Nullable
+	private static volatile String lastMismatch = null;
+	
+	/**
+	 * Called whenever a value has been serialised. Checks the value if it's the n-th value since the last check. Can be called from any thread.
+	 * 
+	 * @param ci The class the value was serialised as
+	 * @param o The serialised value
+	 * @param data The serialised data
+	 */
+	public static void serialized(final ClassInfo<?> ci, final Object o, final byte[] data) {
+		final int interval = SkriptConfig.serializationSelfCheck.value();
+		if (interval <= 0 || serialized.incrementAndGet() % interval != 0)
+			return;
+		final Serializer<?> s = ci.getSerializer();
+		assert s != null : ci;
+		if (s.mustSyncDeserialization() && !Bukkit.isPrimaryThread())
+			return;
+		check(ci, o, data);
+	}
+	
+	private static void check(final ClassInfo<?> ci, final Object o, final byte[] data) {
+		checked.incrementAndGet();
+		final Object d = Classes.deserialize(ci, data);
+		if (equals(o, d))
+			return;
+		mismatches.incrementAndGet();
+		mismatchesByType.computeIfAbsent(ci.getCodeName(), t -> new AtomicLong()).incrementAndGet();
+		lastMismatch = o + " (" + o.getClass().getName() + ") != " + d + " (" + (d == null ? null : d.getClass().getName()) + ")";
+	}
+	
+	private static boolean equals(final @Nullable Object o, final @Nullable Object d) {
+		if (o instanceof Chunk) { // CraftChunk does neither override equals nor is it a "coordinate-specific singleton" like Block
+			if (!(d instanceof Chunk))
+				return false;
+			final Chunk c1 = (Chunk) o, c2 = (Chunk) d;
+			return c1.getWorld().equals(c2.getWorld()) && c1.getX() == c2.getX() && c1.getZ() == c2.getZ();
+		}
+		return o == null ? d == null : o.equals(d);
+	}
+	
+	/**
+	 * @return The number of values serialised while the self-check was enabled
+	 */
+	public static long getSerialized() {
+		return serialized.get();
+	}
+	
+	/**
+	 * @return The number of values that have been deserialised again
+	 */
+	public static long getChecked() {
+		return checked.get();
+	}
+	
+	/**
+	 * @return The number of values that were not equal to the original value after deserialising them
+	 */
+	public static long getMismatches() {
+		return mismatches.get();
+	}
+	
+	/**
+	 * @return The number of mismatches by the code name of the class info the values were serialised as
+	 */
+	public static Map<String, Long> getMismatchesByType() {
+		final Map<String, Long> r = new TreeMap<>();
+		for (final Map.Entry<String, AtomicLong> e : mismatchesByType.entrySet())
+			r.put(e.getKey(), e.getValue().get());
+		return r;
+	}
+	
+	/**
+	 * @return A description of the last mismatch, or null if there was none
+	 */
+	@Nullable
+	public static String getLastMismatch() {
+		return lastMismatch;
+	}
+	
+}
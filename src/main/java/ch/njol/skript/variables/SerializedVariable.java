@@ -28,6 +28,11 @@ public class SerializedVariable {
 	@Nullable
 	public Value value;
 	
+	/**
+	 * When this change was queued to be saved, see {@link VariablesStorage#getOldestChangeAge()}
+	 */
+	long queueTime;
+	
 	public SerializedVariable(final String name, final @Nullable Value value) {
 		this.name = name;
 		this.value = value;
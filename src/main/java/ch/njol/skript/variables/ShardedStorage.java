@@ -0,0 +1,216 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.EntryNode;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.config.SectionNode;
+
+/**
+ * A storage that distributes its variables among several storages of the same type by the hash of their names, e.g. to spread many variables over multiple
+ * tables of an SQL database or over multiple files, which can then be loaded and saved independently of each other.
+ * <p>
+ * Each shard is configured like the sharded database itself, except that the shard's number is appended to the file name and the table name. Changing the
+ * amount of shards moves the variables to their new shards the next time they are loaded.
+ */
+public class ShardedStorage extends VariablesStorage {
+	
+	private final static String DEFAULT_TABLE = "variables21";
+	
+	private VariablesStorage[] shards = new VariablesStorage[0];
+	
+	ShardedStorage(final String name) {
+		super(name);
+	}
+	
+	@Override
+	protected boolean load_i(final SectionNode n) {
+		final Integer count = getValue(n, "shards", Integer.class);
+		final String shardType = getValue(n, "shard type");
+		if (count == null || shardType == null)
+			return false;
+		if (count < 1) {
+			Skript.error("The amount of shards of the database '" + databaseName + "' must be at least 1");
+			return false;
+		}
+		if (shardType.equalsIgnoreCase("sharded")) {
+			Skript.error("The shards of the database '" + databaseName + "' cannot be sharded themselves");
+			return false;
+		}
+		
+		final VariablesStorage[] shards = new VariablesStorage[count];
+		for (int i = 0; i < count; i++) {
+			final VariablesStorage s = Variables.createStorage(shardType, databaseName + " (shard " + i + ")");
+			if (s == null) {
+				Skript.error("Invalid shard type '" + shardType + "' in the database '" + databaseName + "'");
+				discard(shards, i);
+				return false;
+			}
+			if (!s.load(getShardNode(n, shardType, i))) {
+				discard(shards, i);
+				return false;
+			}
+			shards[i] = s;
+		}
+		this.shards = shards;
+		return true;
+	}
+	
+	/**
+	 * Stops the shards loaded before another shard failed to load. They must not be closed normally, as that would rewrite their files without any variables.
+	 */
+	private static void discard(final VariablesStorage[] shards, final int loaded) {
+		for (int i = 0; i < loaded; i++)
+			shards[i].discard();
+	}
+	
+	/**
+	 * Creates the configuration of a shard: a copy of the sharded database's configuration with the file and table names numbered.
+	 */
+	private static SectionNode getShardNode(final SectionNode n, final String shardType, final int shard) {
+		final SectionNode s = new SectionNode(n.getKey() + " (shard " + shard + ")", "", n, n.getLine());
+		for (final Node node : n) {
+			if (node instanceof EntryNode)
+				s.add(new EntryNode("" + node.getKey(), ((EntryNode) node).getValue(), s));
+		}
+		s.remove("shards");
+		s.remove("shard type");
+		s.set("type", shardType);
+		s.set("pattern", ".*"); // the sharded database already checked the pattern
+		final String file = n.getValue("file");
+		if (file != null) {
+			final int dot = file.lastIndexOf('.');
+			s.set("file", dot > Math.max(file.lastIndexOf('/'), file.lastIndexOf(File.separatorChar)) ? file.substring(0, dot) + "-" + shard + file.substring(dot) : file + "-" + shard);
+		}
+		s.set("table", n.get("table", DEFAULT_TABLE) + "_" + shard);
+		return s;
+	}
+	
+	@Override
+	VariablesStorage getStorage(final String name) {
+		final VariablesStorage[] shards = this.shards;
+		return shards[(name.hashCode() & Integer.MAX_VALUE) % shards.length];
+	}
+	
+	/**
+	 * Variables are only passed to the shards, which have their own write threads.
+	 */
+	@Override
+	protected boolean hasWriteThread() {
+		return false;
+	}
+	
+	/**
+	 * Partitions are supported if all shards support them.
+	 */
+	@Override
+	protected boolean supportsPartitions() {
+		for (final VariablesStorage s : shards) {
+			if (!s.supportsPartitions())
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	protected void loadPartition(final String prefix, final List<SerializedVariable> variables) {
+		for (final VariablesStorage s : shards) {
+			final int start = variables.size();
+			s.loadPartition(prefix, variables);
+			for (int i = variables.size() - 1; i >= start; i--) { // left behind when the amount of shards was changed
+				if (getStorage(variables.get(i).name) != s)
+					variables.remove(i);
+			}
+		}
+	}
+	
+	@Override
+	public int getQueueSize() {
+		int r = 0;
+		for (final VariablesStorage s : shards)
+			r += s.getQueueSize();
+		return r;
+	}
+	
+	@Override
+	public int getSpilledChanges() {
+		int r = 0;
+		for (final VariablesStorage s : shards)
+			r += s.getSpilledChanges();
+		return r;
+	}
+	
+	@Override
+	public long getOldestChangeAge() {
+		long r = 0;
+		for (final VariablesStorage s : shards)
+			r = Math.max(r, s.getOldestChangeAge());
+		return r;
+	}
+	
+	@Override
+	public long getSavedChanges() {
+		long r = 0;
+		for (final VariablesStorage s : shards)
+			r += s.getSavedChanges();
+		return r;
+	}
+	
+	@Override
+	protected boolean save(final String name, final @Nullable String type, final @Nullable byte[] value) {
+		return getStorage(name).save(name, type, value);
+	}
+	
+	@Override
+	protected void allLoaded() {
+		for (final VariablesStorage s : shards)
+			s.allLoaded();
+	}
+	
+	@Override
+	protected boolean requiresFile() {
+		return false;
+	}
+	
+	@Override
+	protected File getFile(final String file) {
+		return new File(file);
+	}
+	
+	@Override
+	protected boolean connect() {
+		boolean r = true;
+		for (final VariablesStorage s : shards)
+			r &= s.connect();
+		return r;
+	}
+	
+	@Override
+	protected void disconnect() {
+		for (final VariablesStorage s : shards)
+			s.disconnect();
+	}
+	
+}
@@ -0,0 +1,59 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * A {@link VariablesStorage} that can write its whole file from a {@link VariablesMap.Snapshot snapshot} of the variables.
+ * Backups of such storages are created from a snapshot without disconnecting from the database.
+ */
+interface SnapshotStorage {
+	
+	/**
+	 * Serialises the values written by {@link SnapshotStorage#writeSnapshot(VariablesMap.Snapshot, OutputStream, ValueSerializer)}
+	 */
+	interface ValueSerializer {
+		
+		/**
+		 * @param value The value as stored in the snapshot, possibly a {@link LazyValue}
+		 * @return The serialised value, or null if it can't be saved
+		 */
+		@Nullable
+		Value serialize(String name, Object value);
+		
+	}
+	
+	/**
+	 * Serialises values with {@link Variables#serialize(Object)}, i.e. on the current thread
+	 */
+	ValueSerializer DIRECT = (name, value) -> Variables.serialize(value);
+	
+	/**
+	 * Writes the variables of this storage contained in the given snapshot to the given stream in the format of this storage's file.
+	 * Called without holding any locks, possibly concurrently with saving changes.
+	 */
+	void writeSnapshot(VariablesMap.Snapshot snapshot, OutputStream out, ValueSerializer serializer) throws IOException;
+	
+}
@@ -0,0 +1,233 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bukkit.Bukkit;
+import org.eclipse.jdt.annotation.Nullable;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.classes.Serializer;
+import ch.njol.skript.registrations.Classes;
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * Deserialises the variables read by a storage on multiple threads while the storage keeps reading.
+ * <p>
+ * Records are collected into chunks which are parsed and deserialised by a pool of loading threads. Values whose serializer
+ * {@link Serializer#mustSyncDeserialization() must deserialise synchronously} are left alone by the loading threads and are
+ * deserialised by the thread which reads the records, i.e. Bukkit's main thread. Finished chunks are passed to
+ * {@link Variables#variablesLoaded(String[], Object[], int, VariablesStorage)} in the order in which they were read, thus
+ * a later record of a variable still overrides an earlier one.
+ * <p>
+ * If the storage uses {@link VariablesStorage#lazyLoading lazy loading}, values which can be deserialised on any thread are not
+ * deserialised at all but stored as {@link LazyValue}s.
+ * <p>
+ * {@link #add(Object)} and {@link #finish()} must only be called from Bukkit's main thread.
+ * 
+ * @param <R> The type of the records read by the storage
+ */
+final class VariableLoader<R> {
+	
+	/**
+	 * Parses a single record of a storage. Called on the loading threads, thus implementations must not touch any state of
+	 * the storage.
+	 */
+	static interface RecordParser<R> {
+		
+		/**
+		 * @param record
+		 * @return The parsed record, or null if it is invalid. Records with a null value are deletions.
+		 */
+		@Nullable
+		SerializedVariable parse(R record);
+		
+	}
+	
+	private final static int CHUNK_SIZE = 1000;
+	
+	private final static byte LOADED = 0, INVALID = 1, FAILED = 2, SYNC = 3;
+	
+	private final static class Chunk<R> {
+		final R[] records;
+		int size = 0;
+		
+		final String[] names = new String[CHUNK_SIZE];
+		final Object[] values = new Object[CHUNK_SIZE];
+		final byte[] states = new byte[CHUNK_SIZE];
+		
+		@SuppressWarnings("unchecked")
+		Chunk() {
+			records = (R[]) new Object[CHUNK_SIZE];
+		}
+	}
+	
+	private final VariablesStorage storage;
+	private final RecordParser<R> parser;
+	
+	private final ExecutorService executor;
+	private final int maxPendingChunks;
+	
+	private final Deque<Future<Chunk<R>>> pending = new ArrayDeque<>();
+	private Chunk<R> chunk = new Chunk<>();
+	
+	private final List<R> invalid = new ArrayList<>();
+	private final List<String> failed = new ArrayList<>();
+	
+	VariableLoader(final VariablesStorage storage, final RecordParser<R> parser) {
+		this.storage = storage;
+		this.parser = parser;
+		final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1); // the main thread is busy reading
+		executor = Executors.newFixedThreadPool(threads, r -> Skript.newThread(r, "Skript variable loading thread (" + storage.databaseName + ")"));
+		maxPendingChunks = 2 * threads;
+	}
+	
+	/**
+	 * Adds a record to be loaded. Merges all chunks that have been deserialised already, and blocks if the loading threads
+	 * cannot keep up with the storage.
+	 * 
+	 * @param record
+	 */
+	void add(final R record) {
+		assert Bukkit.isPrimaryThread();
+		final Chunk<R> c = chunk;
+		c.records[c.size++] = record;
+		if (c.size < CHUNK_SIZE)
+			return;
+		pending.add(executor.submit(() -> process(c)));
+		chunk = new Chunk<>();
+		while (!pending.isEmpty() && (pending.size() >= maxPendingChunks || pending.peek().isDone()))
+			merge(pending.remove());
+	}
+	
+	/**
+	 * Waits until all added records are loaded and stops the loading threads.
+	 */
+	void finish() {
+		assert Bukkit.isPrimaryThread();
+		try {
+			final Chunk<R> c = chunk;
+			if (c.size > 0)
+				pending.add(executor.submit(() -> process(c)));
+			while (!pending.isEmpty())
+				merge(pending.remove());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * @return Records that could not be parsed
+	 */
+	List<R> getInvalid() {
+		return invalid;
+	}
+	
+	/**
+	 * @return Names of variables whose value could not be deserialised
+	 */
+	List<String> getFailed() {
+		return failed;
+	}
+	
+	private Chunk<R> process(final Chunk<R> c) {
+		for (int i = 0; i < c.size; i++) {
+			try {
+				final SerializedVariable v = parser.parse(c.records[i]);
+				if (v == null) {
+					c.states[i] = INVALID;
+					continue;
+				}
+				c.names[i] = v.name;
+				final Value value = v.value;
+				if (value == null) {
+					c.states[i] = LOADED;
+					continue;
+				}
+				final ClassInfo<?> ci = Classes.getClassInfoNoError(value.type);
+				final Serializer<?> s = ci == null ? null : ci.getSerializer();
+				if (ci == null || s == null) {
+					c.states[i] = FAILED;
+				} else if (s.mustSyncDeserialization()) {
+					c.values[i] = value;
+					c.states[i] = SYNC;
+				} else if (storage.lazyLoading) {
+					c.values[i] = new LazyValue(ci, value, storage.evictValues);
+					c.states[i] = LOADED;
+				} else {
+					final Object o = Classes.deserialize(ci, value.data);
+					c.values[i] = o;
+					c.states[i] = o == null ? FAILED : LOADED;
+				}
+			} catch (final RuntimeException e) {
+				c.states[i] = c.names[i] == null ? INVALID : FAILED;
+				if (Skript.testing())
+					e.printStackTrace();
+			}
+		}
+		return c;
+	}
+	
+	private void merge(final Future<Chunk<R>> f) {
+		final Chunk<R> c;
+		try {
+			c = f.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Skript.exception(e, "Interrupted while loading variables");
+		} catch (final ExecutionException e) {
+			throw Skript.exception(e.getCause(), "Error while loading variables");
+		}
+		int n = 0;
+		for (int i = 0; i < c.size; i++) {
+			final String name = c.names[i];
+			Object value = c.values[i];
+			switch (c.states[i]) {
+				case INVALID:
+					invalid.add(c.records[i]);
+					continue;
+				case SYNC:
+					final Value v = (Value) value;
+					assert v != null;
+					value = Classes.deserialize(v.type, v.data);
+					if (value != null)
+						break;
+					//$FALL-THROUGH$
+				case FAILED:
+					failed.add(name);
+					continue;
+				default:
+			}
+			c.names[n] = name;
+			c.values[n] = value;
+			n++;
+		}
+		Variables.variablesLoaded(c.names, c.values, n, storage);
+	}
+	
+}
@@ -0,0 +1,296 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.GsonBuilder;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.SkriptConfig;
+import ch.njol.skript.lang.Variable;
+import ch.njol.skript.variables.SerializedVariable.Value;
+
+/**
+ * Samples accesses to global variables as configured by {@link SkriptConfig#variableStatistics}, to find out which variables are used the most, how large
+ * list variables get, and how much is saved to which database.
+ * <p>
+ * Variables are grouped by their pattern, i.e. their name with UUIDs and numbers replaced with <tt>%uuid%</tt> and <tt>%number%</tt>, so that e.g.
+ * all <tt>{balance::%uuid%}</tt> variables are counted together. Only every n-th access is recorded, and the counts are multiplied by n when shown.
+ */
+public final class VariableStatistics {
+
+	private VariableStatistics() {}
+
+	/**
+	 * Patterns seen after this many patterns are counted as {@link #OTHER}, so that scripts using many unusual names can't fill the memory.
+	 */
+	private final static int MAX_PATTERNS = 10000;
+
+	private final static String OTHER = "<other>";
+
+	private final static class PatternStatistics {
+
+		final LongAdder reads = new LongAdder(), writes = new LongAdder(), bytes = new LongAdder();
+		final AtomicInteger largestList = new AtomicInteger();
+
+		long accesses() {
+			return reads.sum() + writes.sum();
+		}
+
+	}
+
+	private final static class StorageStatistics {
+
+		final LongAdder saved = new LongAdder(), deleted = new LongAdder(), bytes = new LongAdder();
+
+	}
+
+	private final static Map<String, PatternStatistics> patterns = new ConcurrentHashMap<>();
+
+	private final static Map<String, StorageStatistics> storages = new ConcurrentHashMap<>();
+
+	private static volatile long since = System.currentTimeMillis();
+
+	/**
+	 * @return Whether the current access should be recorded
+	 */
+	private static boolean sample() {
+		final int interval = SkriptConfig.variableStatistics.value();
+		return interval > 0 && (interval == 1 || ThreadLocalRandom.current().nextInt(interval) == 0);
+	}
+
+	/**
+	 * Called whenever a global variable is read. Can be called from any thread.
+	 *
+	 * @param value The variable's value, a Map if it is a list variable
+	 */
+	static void read(final String name, final @Nullable Object value) {
+		if (!sample())
+			return;
+		final PatternStatistics s = get(name);
+		s.reads.increment();
+		if (value instanceof Map) {
+			// sizes of list views are counted without loading lazily loaded values
+			final int size = value instanceof VariablesMap.ListView ? ((VariablesMap.ListView) value).countEntries() : ((Map<?, ?>) value).size();
+			s.largestList.accumulateAndGet(size, Math::max);
+		}
+	}
+
+	/**
+	 * Called whenever a global variable is set or deleted. Can be called from any thread.
+	 */
+	static void written(final String name) {
+		if (!sample())
+			return;
+		get(name).writes.increment();
+	}
+
+	/**
+	 * Called when a changed variable is passed to the given storage to be saved. Storage totals are not sampled.
+	 */
+	static void saved(final VariablesStorage storage, final SerializedVariable var) {
+		final int interval = SkriptConfig.variableStatistics.value();
+		if (interval <= 0)
+			return;
+		final Value value = var.value;
+		final StorageStatistics s = storages.computeIfAbsent(storage.databaseName, n -> new StorageStatistics());
+		if (value == null) {
+			s.deleted.increment();
+			return;
+		}
+		s.saved.increment();
+		s.bytes.add(value.data.length);
+		if (sample())
+			get(var.name).bytes.add(value.data.length);
+	}
+
+	private static PatternStatistics get(final String name) {
+		final String pattern = getPattern(name);
+		final PatternStatistics s = patterns.get(pattern);
+		if (s != null)
+			return s;
+		if (patterns.size() >= MAX_PATTERNS)
+			return patterns.computeIfAbsent(OTHER, p -> new PatternStatistics());
+		return patterns.computeIfAbsent(pattern, p -> new PatternStatistics());
+	}
+
+	/**
+	 * @return The given variable name with all parts that are UUIDs or numbers replaced with <tt>%uuid%</tt> or <tt>%number%</tt> respectively
+	 */
+	static String getPattern(final String name) {
+		final StringBuilder b = new StringBuilder(name.length());
+		int start = 0;
+		while (true) {
+			int end = name.indexOf(Variable.SEPARATOR, start);
+			if (end == -1)
+				end = name.length();
+			if (isUUID(name, start, end))
+				b.append("%uuid%");
+			else if (isNumber(name, start, end))
+				b.append("%number%");
+			else
+				b.append(name, start, end);
+			if (end == name.length())
+				return "" + b;
+			b.append(Variable.SEPARATOR);
+			start = end + Variable.SEPARATOR.length();
+		}
+	}
+
+	private static boolean isUUID(final String s, final int start, final int end) {
+		if (end - start != 36)
+			return false;
+		for (int i = 0; i < 36; i++) {
+			final char c = s.charAt(start + i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-')
+					return false;
+			} else if (!('0' <= c && c <= '9' || 'a' <= c && c <= 'f' || 'A' <= c && c <= 'F')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isNumber(final String s, final int start, final int end) {
+		int i = start;
+		if (i < end && s.charAt(i) == '-')
+			i++;
+		if (i == end)
+			return false;
+		for (; i < end; i++) {
+			final char c = s.charAt(i);
+			if (!('0' <= c && c <= '9' || c == '.'))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Estimated statistics of the most used patterns as lines of text, sorted by the sum of reads and writes
+	 */
+	public static List<String> getTop(final int limit) {
+		final long interval = Math.max(1, SkriptConfig.variableStatistics.value());
+		final List<Entry<String, PatternStatistics>> top = new ArrayList<>(patterns.entrySet());
+		top.sort(Comparator.comparingLong((Entry<String, PatternStatistics> e) -> e.getValue().accesses()).reversed());
+		final List<String> lines = new ArrayList<>();
+		for (final Entry<String, PatternStatistics> e : top.subList(0, Math.min(limit, top.size()))) {
+			final PatternStatistics s = e.getValue();
+			final int largestList = s.largestList.get();
+			lines.add("{" + e.getKey() + "}: " + s.reads.sum() * interval + " reads, " + s.writes.sum() * interval + " writes, "
+					+ s.bytes.sum() * interval + " bytes saved" + (largestList > 0 ? ", largest list: " + largestList : ""));
+		}
+		return lines;
+	}
+
+	/**
+	 * @return The number of changes and bytes passed to each database, as lines of text
+	 */
+	public static List<String> getStorages() {
+		final List<String> lines = new ArrayList<>();
+		for (final Entry<String, StorageStatistics> e : storages.entrySet()) {
+			final StorageStatistics s = e.getValue();
+			lines.add(e.getKey() + ": " + s.saved.sum() + " saved (" + s.bytes.sum() + " bytes), " + s.deleted.sum() + " deleted");
+		}
+		return lines;
+	}
+
+	/**
+	 * Unlike the other statistics these are always available, as every storage counts its saved changes anyway.
+	 *
+	 * @return One line per database describing its unsaved changes and how fast changes are saved to it
+	 */
+	public static List<String> getQueues() {
+		final List<String> lines = new ArrayList<>();
+		for (final VariablesStorage s : Variables.storages) {
+			lines.add(s.databaseName + ": " + s.getQueueSize() + " waiting (" + s.getSpilledChanges() + " in the overflow journal), oldest for "
+					+ s.getOldestChangeAge() / 1000 + " seconds, " + s.getSavedChanges() + " saved ("
+					+ String.format(Locale.ENGLISH, "%.1f", s.getThroughput()) + " per second)");
+		}
+		return lines;
+	}
+
+	/**
+	 * @return When the statistics were last reset
+	 */
+	public static long getSince() {
+		return since;
+	}
+
+	public static void reset() {
+		patterns.clear();
+		storages.clear();
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 * Writes all statistics to a JSON file in Skript's folder.
+	 *
+	 * @return The written file
+	 */
+	public static File dump() throws IOException {
+		final long interval = Math.max(1, SkriptConfig.variableStatistics.value());
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put("since", since);
+		json.put("until", System.currentTimeMillis());
+		json.put("sample interval", interval);
+		final Map<String, Object> ps = new LinkedHashMap<>();
+		for (final Entry<String, PatternStatistics> e : patterns.entrySet()) {
+			final PatternStatistics s = e.getValue();
+			final Map<String, Object> p = new LinkedHashMap<>();
+			p.put("reads", s.reads.sum() * interval);
+			p.put("writes", s.writes.sum() * interval);
+			p.put("bytes", s.bytes.sum() * interval);
+			p.put("largest list", s.largestList.get());
+			ps.put(e.getKey(), p);
+		}
+		json.put("patterns", ps);
+		final Map<String, Object> ss = new LinkedHashMap<>();
+		for (final Entry<String, StorageStatistics> e : storages.entrySet()) {
+			final StorageStatistics s = e.getValue();
+			final Map<String, Object> st = new LinkedHashMap<>();
+			st.put("saved", s.saved.sum());
+			st.put("deleted", s.deleted.sum());
+			st.put("bytes", s.bytes.sum());
+			ss.put(e.getKey(), st);
+		}
+		json.put("databases", ss);
+		final File f = new File(Skript.getInstance().getDataFolder(), "variable-statistics.json");
+		Files.write(f.toPath(), new GsonBuilder().setPrettyPrinting().create().toJson(json).getBytes(StandardCharsets.UTF_8));
+		return f;
+	}
+
+}
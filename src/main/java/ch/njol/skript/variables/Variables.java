@@ -21,12 +21,13 @@ package ch.njol.skript.variables;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
-import java.util.TreeMap;
+import java.util.WeakHashMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -34,6 +35,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 
 import org.bukkit.Bukkit;
@@ -48,12 +50,15 @@ import ch.njol.skript.SkriptAPIException;
 import ch.njol.skript.SkriptConfig;
 import ch.njol.skript.classes.ClassInfo;
 import ch.njol.skript.classes.ConfigurationSerializer;
+import ch.njol.skript.classes.Serializer;
 import ch.njol.skript.config.Config;
 import ch.njol.skript.config.Node;
 import ch.njol.skript.config.SectionNode;
+import ch.njol.skript.lang.ExecutionFrame;
 import ch.njol.skript.lang.Variable;
 import ch.njol.skript.registrations.Classes;
 import ch.njol.skript.registrations.Converters;
+import ch.njol.skript.util.Task;
 import ch.njol.skript.variables.DatabaseStorage.Type;
 import ch.njol.skript.variables.SerializedVariable.Value;
 import ch.njol.util.Closeable;
@@ -109,9 +114,32 @@ public abstract class Variables {
 	
 	static List<VariablesStorage> storages = new ArrayList<>();
 	
+	/**
+	 * @param type The database type as written in the config
+	 * @param name The name of the new storage
+	 * @return A new, unloaded storage of the given type, or null if the type is invalid
+	 */
+	@Nullable
+	static VariablesStorage createStorage(final String type, final String name) {
+		if (type.equalsIgnoreCase("csv") || type.equalsIgnoreCase("file") || type.equalsIgnoreCase("flatfile"))
+			return new FlatFileStorage(name);
+		if (type.equalsIgnoreCase("log"))
+			return new LogFileStorage(name);
+		if (type.equalsIgnoreCase("binary"))
+			return new BinaryFileStorage(name);
+		if (type.equalsIgnoreCase("mapped"))
+			return new MappedFileStorage(name);
+		if (type.equalsIgnoreCase("mysql"))
+			return new DatabaseStorage(name, Type.MYSQL);
+		if (type.equalsIgnoreCase("sqlite"))
+			return new DatabaseStorage(name, Type.SQLITE);
+		if (type.equalsIgnoreCase("sharded"))
+			return new ShardedStorage(name);
+		return null;
+	}
+	
 	public static boolean load() {
-		assert variables.treeMap.isEmpty();
-		assert variables.hashMap.isEmpty();
+		assert variables.size() == 0;
 		assert storages.isEmpty();
 		
 		final Config c = SkriptConfig.getConfig();
@@ -123,6 +151,9 @@ public abstract class Variables {
 			return false;
 		}
 		
+		if (!PlayerPartitions.init())
+			return false;
+		
 		Skript.closeOnDisable(new Closeable() {
 			@Override
 			public void close() {
@@ -164,18 +195,12 @@ public abstract class Variables {
 					
 					final String name = n.getKey();
 					assert name != null;
-					final VariablesStorage s;
-					if (type.equalsIgnoreCase("csv") || type.equalsIgnoreCase("file") || type.equalsIgnoreCase("flatfile")) {
-						s = new FlatFileStorage(name);
-					} else if (type.equalsIgnoreCase("mysql")) {
-						s = new DatabaseStorage(name, Type.MYSQL);
-					} else if (type.equalsIgnoreCase("sqlite")) {
-						s = new DatabaseStorage(name, Type.SQLITE);
-					} else {
-						if (!type.equalsIgnoreCase("disabled") && !type.equalsIgnoreCase("none")) {
-							Skript.error("Invalid database type '" + type + "'");
-							successful = false;
-						}
+					if (type.equalsIgnoreCase("disabled") || type.equalsIgnoreCase("none"))
+						continue;
+					final VariablesStorage s = createStorage(type, name);
+					if (s == null) {
+						Skript.error("Invalid database type '" + type + "'");
+						successful = false;
 						continue;
 					}
 					
@@ -224,6 +249,13 @@ public abstract class Variables {
 			loadingLoggerThread.interrupt();
 			
 			saveThread.start();
+			
+			flushTask = new Task(Skript.getInstance(), FLUSH_INTERVAL, FLUSH_INTERVAL) {
+				@Override
+				public void run() {
+					flushChanges();
+				}
+			};
 		}
 		return true;
 	}
@@ -238,21 +270,18 @@ public abstract class Variables {
 	
 	final static ReadWriteLock variablesLock = new ReentrantReadWriteLock(true);
 	/**
-	 * must be locked with {@link #variablesLock}.
+	 * Changes must be locked with {@link #variablesLock}. Variables can be read without locking.
 	 */
-	final static VariablesMap variables = new VariablesMap();
+	final static VariablesMap variables = new VariablesMap(true);
 
 	/**
-	 * Not to be accessed outside of Bukkit's main thread!
-	 */
-	private final static Map<Event, VariablesMap> localVariables = new ConcurrentHashMap<>();
-	
-	/**
-	 * Remember to lock with {@link #getReadLock()} and to not make any changes!
+	 * Local variables of events that are not being walked, e.g. the parameters of a function before its trigger is executed.
+	 * They are taken over by the {@link ExecutionFrame} created for the event. The local variables of executions are stored in their frames.
+	 * <p>
+	 * The events are only referenced weakly, as local variables may be set for events that never get a frame. The map is synchronised, as events may be
+	 * walked on any thread.
 	 */
-	static TreeMap<String, Object> getVariables() {
-		return variables.treeMap;
-	}
+	private final static Map<Event, VariablesMap> localVariables = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	/**
 	 * Removes local variables associated with given event and returns them,
@@ -262,6 +291,9 @@ public abstract class Variables {
 	 */
 	@Nullable
 	public static VariablesMap removeLocals(Event event) {
+		final ExecutionFrame frame = ExecutionFrame.get(event);
+		if (frame != null)
+			return LocalVariableSlots.removeLocals(frame);
 		return localVariables.remove(event);
 	}
 	
@@ -272,15 +304,91 @@ public abstract class Variables {
 	 * @param map New local variables.
 	 */
 	public static void setLocalVariables(Event event, Object map) {
-		localVariables.put(event, (VariablesMap) map);
+		final ExecutionFrame frame = ExecutionFrame.get(event);
+		if (frame != null)
+			LocalVariableSlots.setLocals(frame, (VariablesMap) map);
+		else
+			localVariables.put(event, (VariablesMap) map);
 	}
 	
 	/**
-	 * Remember to lock with {@link #getReadLock()}!
+	 * Removes the local variables that were set for the given event while it was not being walked, to be used by a new {@link ExecutionFrame}.
 	 */
-	@SuppressWarnings("null")
-	static Map<String, Object> getVariablesHashMap() {
-		return Collections.unmodifiableMap(variables.hashMap);
+	@Nullable
+	public static VariablesMap takeUnboundLocals(Event event) {
+		return localVariables.isEmpty() ? null : localVariables.remove(event);
+	}
+	
+	/**
+	 * Returns the value of a local variable with a slot assigned while parsing.
+	 * 
+	 * @param slots The slots of the trigger the variable was parsed in
+	 * @param slot The variable's slot
+	 * @param name The variable's name, used if the event's execution uses different slots
+	 * @return The variable's value, or null if it is not set
+	 */
+	@Nullable
+	public static Object getLocalVariable(final LocalVariableSlots slots, final int slot, final String name, final Event e) {
+		final ExecutionFrame frame = ExecutionFrame.get(e);
+		if (frame != null) {
+			final Object[] values = slots.bind(frame);
+			if (values != null)
+				return slot < values.length ? values[slot] : null;
+		}
+		return getVariable(name, e, true);
+	}
+	
+	/**
+	 * Sets a local variable with a slot assigned while parsing.
+	 * 
+	 * @param slots The slots of the trigger the variable was parsed in
+	 * @param slot The variable's slot
+	 * @param name The variable's name, used if the event's execution uses different slots
+	 * @param value The variable's new value, or null to delete it
+	 */
+	public static void setLocalVariable(final LocalVariableSlots slots, final int slot, final String name, final @Nullable Object value, final Event e) {
+		final ExecutionFrame frame = ExecutionFrame.get(e);
+		if (frame != null && slots.set(frame, slot, serializableValue(value)))
+			return;
+		setVariable(name, value, e, true);
+	}
+	
+	/**
+	 * @return The given value converted to the type it is serialized as, as done for all values stored in variables
+	 */
+	@Nullable
+	private static Object serializableValue(final @Nullable Object value) {
+		if (value == null)
+			return null;
+		final ClassInfo<?> ci = Classes.getSuperClassInfo(value.getClass());
+		final Class<?> sas = ci.getSerializeAs();
+		if (sas == null)
+			return value;
+		final Object converted = Converters.convert(value, sas);
+		assert converted != null : ci + ", " + sas;
+		return converted;
+	}
+	
+	/**
+	 * Calls the given action for every global variable that is not a list, in order.
+	 * <p>
+	 * Lock with {@link #getReadLock()} to prevent variables from being changed in the meantime.
+	 */
+	static void forEachVariable(final BiConsumer<String, Object> action) {
+		variables.forEach(action);
+	}
+	
+	/**
+	 * Takes a snapshot of all global variables, which can then be read without locking while variables are changed.
+	 * Unlike {@link #forEachVariable(BiConsumer)} this only holds {@link #getReadLock()} for a moment.
+	 */
+	static VariablesMap.Snapshot snapshotVariables() {
+		variablesLock.readLock().lock();
+		try {
+			return variables.snapshot();
+		} finally {
+			variablesLock.readLock().unlock();
+		}
 	}
 	
 	@SuppressWarnings("null")
@@ -304,25 +412,26 @@ public abstract class Variables {
         }
         assert n != null;
 	    if (local) {
+			final ExecutionFrame frame = ExecutionFrame.get(e);
+			if (frame != null) // variables with slots are only accessed by their slots
+				return LocalVariableSlots.getVariable(frame, n);
 			final VariablesMap map = localVariables.get(e);
 			if (map == null)
 				return null;
 			return map.getVariable(n);
 		} else {
+			PlayerPartitions.ensureLoaded(n);
+			
 			// Prevent race conditions from returning variables with incorrect values
-			if (!changeQueue.isEmpty()) {
-				for (VariableChange change : changeQueue) {
-					if (change.name.equals(n))
-						return change.value;
-				}
+			if (!queuedChanges.isEmpty()) {
+				final VariableChange change = queuedChanges.get(n);
+				if (change != null)
+					return change.value;
 			}
 			
-			try {
-				variablesLock.readLock().lock();
-				return variables.getVariable(n);
-			} finally {
-				variablesLock.readLock().unlock();
-			}
+			final Object value = variables.getVariable(n);
+			VariableStatistics.read(n, value);
+			return value;
 		}
 	}
 	
@@ -338,25 +447,23 @@ public abstract class Variables {
             n = name.toLowerCase(Locale.ENGLISH);
         }
         assert n != null;
-	    if (value != null) {
-			assert !n.endsWith("::*");
-			final ClassInfo<?> ci = Classes.getSuperClassInfo(value.getClass());
-			final Class<?> sas = ci.getSerializeAs();
-			if (sas != null) {
-				value = Converters.convert(value, sas);
-				assert value != null : ci + ", " + sas;
-			}
-		}
+	    assert value == null || !n.endsWith("::*");
+		value = serializableValue(value);
 		if (local) {
 			assert e != null : n;
-			VariablesMap map = localVariables.computeIfAbsent(e, event -> new VariablesMap());
-			map.setVariable(n, value);
+			final ExecutionFrame frame = ExecutionFrame.get(e);
+			if (frame != null)
+				LocalVariableSlots.setVariable(frame, n, value);
+			else
+				localVariables.computeIfAbsent(e, event -> new VariablesMap()).setVariable(n, value);
 		} else {
+			PlayerPartitions.ensureLoaded(n);
 			setVariable(n, value);
 		}
 	}
 	
 	static void setVariable(final String name, @Nullable final Object value) {
+		VariableStatistics.written(name);
 		boolean gotLock = variablesLock.writeLock().tryLock();
 		if (gotLock) {
 			try {
@@ -372,10 +479,15 @@ public abstract class Variables {
 	}
 	
 	/**
-	 * Changes to variables that have not yet been written.
+	 * Changes to variables that have not yet been written, in the order they were made.
 	 */
 	final static Queue<VariableChange> changeQueue = new ConcurrentLinkedQueue<>();
 	
+	/**
+	 * The latest change of each variable in {@link #changeQueue}, so that reads don't have to search the queue.
+	 */
+	private final static Map<String, VariableChange> queuedChanges = new ConcurrentHashMap<>();
+	
 	/**
 	 * A variable change name-value pair.
 	 */
@@ -398,7 +510,11 @@ public abstract class Variables {
 	 * @param value New value.
 	 */
 	private static void queueVariableChange(String name, @Nullable Object value) {
-		changeQueue.add(new VariableChange(name, value));
+		VariableChange change = new VariableChange(name, value);
+		synchronized (changeQueue) { // keeps both collections in the same order
+			queuedChanges.put(name, change);
+			changeQueue.add(change);
+		}
 	}
 	
 	/**
@@ -413,6 +529,7 @@ public abstract class Variables {
 			
 			variables.setVariable(change.name, change.value);
 			saveVariableChange(change.name, change.value);
+			queuedChanges.remove(change.name, change); // only after the change is visible in the map
 		}
 	}
 	
@@ -441,21 +558,13 @@ public abstract class Variables {
 	static boolean variableLoaded(final String name, final @Nullable Object value, final VariablesStorage source) {
 		assert Bukkit.isPrimaryThread(); // required by serialisation
 		
+		if (PlayerPartitions.isEvicted(name, source))
+			return true;
+		
 		synchronized (tempVars) {
 			final Map<String, NonNullPair<Object, VariablesStorage>> tvs = tempVars.get();
 			if (tvs != null) {
-				if (value == null)
-					return false;
-				final NonNullPair<Object, VariablesStorage> v = tvs.get(name);
-				if (v != null && v.getSecond() != source) {// variable already loaded from another database
-					loadConflicts++;
-					if (loadConflicts <= MAX_CONFLICT_WARNINGS)
-						Skript.warning("The variable {" + name + "} was loaded twice from different databases (" + v.getSecond().databaseName + " and " + source.databaseName + "), only the one from " + source.databaseName + " will be kept.");
-					else if (loadConflicts == MAX_CONFLICT_WARNINGS + 1)
-						Skript.warning("[!] More than " + MAX_CONFLICT_WARNINGS + " variables were loaded more than once from different databases, no more warnings will be printed.");
-					v.getSecond().save(name, null, null);
-				}
-				tvs.put(name, new NonNullPair<>(value, source));
+				loadTemp(tvs, name, value, source);
 				return false;
 			}
 		}
@@ -467,8 +576,9 @@ public abstract class Variables {
 			variablesLock.writeLock().unlock();
 		}
 		
-		for (final VariablesStorage s : storages) {
-			if (s.accept(name)) {
+		for (final VariablesStorage storage : storages) {
+			if (storage.accept(name)) {
+				final VariablesStorage s = storage.getStorage(name);
 				if (s != source) {
 					final Value v = serialize(value);
 					s.save(name, v != null ? v.type : null, v != null ? v.data : null);
@@ -481,6 +591,105 @@ public abstract class Variables {
 		return false;
 	}
 	
+	/**
+	 * Like {@link #variableLoaded(String, Object, VariablesStorage)}, but for many variables at once. While storages are loading, all variables are
+	 * put into {@link #tempVars} at once instead of locking it for every single variable.
+	 * <p>
+	 * Must be called on Bukkit's main thread.
+	 * 
+	 * @param names
+	 * @param values
+	 * @param count How many variables of the given arrays to load
+	 * @param source
+	 */
+	static void variablesLoaded(final String[] names, final Object[] values, final int count, final VariablesStorage source) {
+		assert Bukkit.isPrimaryThread();
+		
+		synchronized (tempVars) {
+			final Map<String, NonNullPair<Object, VariablesStorage>> tvs = tempVars.get();
+			if (tvs != null) {
+				for (int i = 0; i < count; i++)
+					loadTemp(tvs, names[i], values[i], source);
+				return;
+			}
+		}
+		
+		for (int i = 0; i < count; i++)
+			variableLoaded(names[i], values[i], source);
+	}
+	
+	/**
+	 * @param name
+	 * @return The storage responsible for the given variable, i.e. the first storage that {@link VariablesStorage#accept(String) accepts} it, or null if
+	 *         there is no such storage
+	 */
+	@Nullable
+	static VariablesStorage getStorage(final String name) {
+		for (final VariablesStorage s : storages) {
+			if (s.accept(name))
+				return s;
+		}
+		return null;
+	}
+	
+	/**
+	 * Puts the variables of a player's partition into memory, see {@link PlayerPartitions}. The loaded values replace the values in memory, as the saved
+	 * values are the latest ones of a partition that was not in memory. The variables are not saved again.
+	 * <p>
+	 * Must be called on Bukkit's main thread.
+	 */
+	static void partitionLoaded(final String[] names, final Object[] values, final int count) {
+		assert Bukkit.isPrimaryThread();
+		variablesLock.writeLock().lock();
+		try {
+			processChangeQueue();
+			for (int i = 0; i < count; i++) {
+				final Object value = values[i];
+				if (value != null)
+					variables.setVariable(names[i], value);
+			}
+		} finally {
+			variablesLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes the variables of a player's partition from memory without deleting them from the storages, see {@link PlayerPartitions}.
+	 * 
+	 * @param lists The list variables of the partition
+	 */
+	static void evictPartition(final String[] lists) {
+		variablesLock.writeLock().lock();
+		try {
+			processChangeQueue();
+			for (final String list : lists)
+				variables.setVariable(list, null);
+		} finally {
+			variablesLock.writeLock().unlock();
+		}
+	}
+	
+	private static void loadTemp(final Map<String, NonNullPair<Object, VariablesStorage>> tvs, final String name, final @Nullable Object value, final VariablesStorage source) {
+		if (PlayerPartitions.isEvicted(name, source))
+			return;
+		if (value == null) { // a deleted variable, e.g. from a storage's journal, only deletes the variable if it was loaded from the same storage
+			final NonNullPair<Object, VariablesStorage> v = tvs.get(name);
+			if (v != null && v.getSecond() == source)
+				tvs.remove(name);
+			return;
+		}
+		final NonNullPair<Object, VariablesStorage> v = tvs.get(name);
+		if (v != null && v.getSecond() != source) {// variable already loaded from another database
+			loadConflicts++;
+			if (loadConflicts <= MAX_CONFLICT_WARNINGS)
+				Skript.warning("The variable {" + name + "} was loaded twice from different databases (" + v.getSecond().databaseName + " and " + source.databaseName + "), only the one from " + source.databaseName + " will be kept.");
+			else if (loadConflicts == MAX_CONFLICT_WARNINGS + 1)
+				Skript.warning("[!] More than " + MAX_CONFLICT_WARNINGS + " variables were loaded more than once from different databases, no more warnings will be printed.");
+			v.getSecond().save(name, null, null);
+		}
+		tvs.put(name, new NonNullPair<>(value, source));
+	}
+	
 	/**
 	 * Stores loaded variables into the variables map and the appropriate databases.
 	 *
@@ -524,17 +733,144 @@ public abstract class Variables {
 	
 	public static SerializedVariable.@Nullable Value serialize(final @Nullable Object value) {
 		assert Bukkit.isPrimaryThread();
+		if (value instanceof LazyValue) // not deserialised yet (or anymore)
+			return ((LazyValue) value).getSerialized();
 		return Classes.serialize(value);
 	}
 
+	/**
+	 * Marks a deleted variable in {@link #unsavedChanges}.
+	 */
+	private final static Object DELETED = new Object();
+	
+	/**
+	 * Variables changed since the last {@link #flushChanges() flush}, mapped to their new value or {@link #DELETED}.
+	 * Only the latest value of a variable is kept, thus a variable changed many times between two flushes is only serialised and saved once.
+	 * <p>
+	 * Must be synchronised with {@link #unsavedChangesLock}.
+	 */
+	private static Map<String, Object> unsavedChanges = new LinkedHashMap<>();
+	private final static Object unsavedChangesLock = new Object();
+	
+	/**
+	 * How often changed variables are serialised and handed to the storages, in ticks.
+	 */
+	private final static int FLUSH_INTERVAL = 1;
+	
+	@Nullable
+	private static Task flushTask;
+	
 	private static void saveVariableChange(final String name, final @Nullable Object value) {
-		saveQueue.add(serialize(name, value));
+		synchronized (unsavedChangesLock) {
+			unsavedChanges.put(name, value == null ? DELETED : value);
+		}
+	}
+	
+	/**
+	 * Serialises all variables changed since the last flush and queues them to be saved. Called every {@link #FLUSH_INTERVAL} ticks.
+	 * <p>
+	 * Must be called on Bukkit's main thread, as required by serialisation.
+	 */
+	static void flushChanges() {
+		final Map<String, Object> changes;
+		synchronized (unsavedChangesLock) {
+			if (unsavedChanges.isEmpty())
+				return;
+			changes = unsavedChanges;
+			unsavedChanges = new LinkedHashMap<>();
+		}
+		for (final Entry<String, Object> change : changes.entrySet()) {
+			final String name = change.getKey();
+			final Object value = change.getValue();
+			if (value == DELETED) {
+				saveQueue.add(new SerializedVariable(name, null));
+				continue;
+			}
+			final NonNullPair<ClassInfo<?>, Object> async = value instanceof LazyValue ? null : Classes.prepareAsyncSerialization(value);
+			saveQueue.add(async != null ? new PendingSerialization(name, async.getFirst(), async.getSecond()) : serialize(name, value));
+		}
+	}
+	
+	/**
+	 * A changed variable whose value is serialised on the {@link #saveThread}, see {@link Serializer#mustSyncSerialization()}.
+	 * Its {@link SerializedVariable#value value} is not set until it is {@link #serialize() serialised}.
+	 */
+	private final static class PendingSerialization extends SerializedVariable {
+		
+		private final ClassInfo<?> type;
+		private final Object object;
+		
+		PendingSerialization(final String name, final ClassInfo<?> type, final Object object) {
+			super(name, null);
+			this.type = type;
+			this.object = object;
+		}
+		
+		@Nullable
+		SerializedVariable serialize() {
+			try {
+				return new SerializedVariable(name, Classes.serialize(type, object));
+			} catch (final RuntimeException e) { // don't let a broken serializer stop the save thread
+				Skript.exception(e, "Cannot save the variable {" + name + "}");
+				return null;
+			}
+		}
+		
 	}
 	
 	final static BlockingQueue<SerializedVariable> saveQueue = new LinkedBlockingQueue<>();
 	
+	/**
+	 * The change the {@link #saveThread} is currently passing to its storage, which is neither in the {@link #saveQueue} nor in the storage's queue yet
+	 */
+	@Nullable
+	private static volatile SerializedVariable savingChange;
+	
+	/**
+	 * Checks whether a change of a variable starting with any of the given prefixes has not been passed to its storage yet, i.e. whether such a change is in
+	 * {@link #unsavedChanges} or the {@link #saveQueue}. Changes that have been passed to a storage are checked with {@link VariablesStorage#getOldestChangeAge()}.
+	 * <p>
+	 * Must be called on Bukkit's main thread, as {@link #flushChanges()} moves changes from {@link #unsavedChanges} to the {@link #saveQueue}.
+	 */
+	static boolean hasPendingChanges(final String[] prefixes) {
+		synchronized (unsavedChangesLock) {
+			for (final String name : unsavedChanges.keySet()) {
+				if (startsWithAny(name, prefixes))
+					return true;
+			}
+		}
+		final SerializedVariable saving = savingChange;
+		if (saving != null && startsWithAny(saving.name, prefixes))
+			return true;
+		for (final SerializedVariable v : saveQueue) {
+			if (startsWithAny(v.name, prefixes))
+				return true;
+		}
+		final SerializedVariable saved = savingChange; // might have been taken from the queue while the queue was checked
+		return saved != null && startsWithAny(saved.name, prefixes);
+	}
+	
+	private static boolean startsWithAny(final String name, final String[] prefixes) {
+		for (final String prefix : prefixes) {
+			if (name.startsWith(prefix))
+				return true;
+		}
+		return false;
+	}
+	
 	static volatile boolean closed = false;
 	
+	/**
+	 * Added to the {@link #saveQueue} by {@link #close()} to stop the {@link #saveThread}.
+	 */
+	private final static SerializedVariable CLOSE_MARKER = new SerializedVariable("", null);
+	
+	/**
+	 * How long {@link #close()} waits for the {@link #saveThread} to pass all changes to the storages, in milliseconds. As storages don't block when they can't save
+	 * changes fast enough, this is only exceeded if serialising the changes takes that long.
+	 */
+	private final static long CLOSE_TIMEOUT = 30000;
+	
 	private final static Thread saveThread = Skript.newThread(new Runnable() {
 		@Override
 		public void run() {
@@ -542,13 +878,24 @@ public abstract class Variables {
 				try {
 					// Save one variable change
 					SerializedVariable v = saveQueue.take();
+					if (v == CLOSE_MARKER)
+						break;
+					savingChange = v;
+					if (v instanceof PendingSerialization) {
+						v = ((PendingSerialization) v).serialize();
+						if (v == null)
+							continue;
+					}
 					for (VariablesStorage s : storages) {
 						if (s.accept(v.name)) {
-							s.save(v);
+							s.getStorage(v.name).save(v);
 							break;
 						}
 					}
-				} catch (final InterruptedException e) {}
+				} catch (final InterruptedException e) {
+				} finally {
+					savingChange = null;
+				}
 			}
 		}
 	}, "Skript variable save thread");
@@ -561,22 +908,27 @@ public abstract class Variables {
 			variablesLock.writeLock().unlock();
 		}
 		
-		while (saveQueue.size() > 0) {
-			try {
-				Thread.sleep(10);
-			} catch (final InterruptedException e) {}
+		final Task ft = flushTask;
+		if (ft != null)
+			ft.cancel();
+		flushChanges();
+		
+		// the save thread stops once it has passed all changes before the marker to the storages
+		saveQueue.add(CLOSE_MARKER);
+		try {
+			saveThread.join(CLOSE_TIMEOUT);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 		closed = true;
 		saveThread.interrupt();
+		final int lost = saveQueue.size();
+		if (lost > 0)
+			Skript.error(lost + " variable changes could not be passed to the databases in time and were not saved");
 	}
 	
 	public static int numVariables() {
-		try {
-			variablesLock.readLock().lock();
-			return variables.hashMap.size();
-		} finally {
-			variablesLock.readLock().unlock();
-		}
+		return variables.size();
 	}
 	
 }
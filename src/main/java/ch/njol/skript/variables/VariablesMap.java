@@ -18,23 +18,43 @@
  */
 package ch.njol.skript.variables;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiConsumer;
 
 import org.eclipse.jdt.annotation.Nullable;
 
 import ch.njol.skript.lang.Variable;
-import ch.njol.skript.util.Utils;
-import ch.njol.util.StringUtils;
 
+/**
+ * Stores variables in a trie, with one node per part of a variable name separated by {@link Variable#SEPARATOR}.
+ * <p>
+ * Single variables and list variables are looked up in the same structure without splitting the name into new strings. The nodes of a list are sorted
+ * using {@link #variableNameComparator}.
+ * <p>
+ * {@link #snapshot()} freezes the current state of the map: every node belongs to the epoch it was created in, and nodes of an older epoch are copied
+ * together with their ancestors before they are changed, so that a snapshot can be read while the map is being changed.
+ */
 final class VariablesMap {
 
-	final static Comparator<String> variableNameComparator = new Comparator<String>() {
+	/**
+	 * Compares variable names so that numbers are sorted by their value, e.g. "2" before "10", while other characters are compared as usual.
+	 * <p>
+	 * Numbers of any length are compared digit by digit without parsing them, thus comparing names doesn't create any objects.
+	 */
+	final static Comparator<CharSequence> variableNameComparator = new Comparator<CharSequence>() {
 		@Override
-		public int compare(@Nullable String s1, @Nullable String s2) {
+		public int compare(@Nullable CharSequence s1, @Nullable CharSequence s2) {
 			if (s1 == null)
 				return s2 == null ? 0 : -1;
 
@@ -51,11 +71,8 @@ final class VariablesMap {
 
 				if ('0' <= c1 && c1 <= '9' && '0' <= c2 && c2 <= '9') {
 					// Numbers/digits are treated differently from other characters.
-					int i2 = StringUtils.findLastDigit(s1, i);
-					int j2 = StringUtils.findLastDigit(s2, j);
-
-					long n1 = Utils.parseLong("" + s1.substring(i, i2));
-					long n2 = Utils.parseLong("" + s2.substring(j, j2));
+					int i2 = findLastDigit(s1, i);
+					int j2 = findLastDigit(s2, j);
 
 					// If the number is prefixed by a '-', it should be treated as negative, thus inverting the order.
 					// If the previous number was negative, and the only thing separating them was a '.',
@@ -65,11 +82,9 @@ final class VariablesMap {
 					lastNumberNegative = i > 0 && s1.charAt(i - 1) == '-';
 					int isPositive = (lastNumberNegative | previousNegative) ? -1 : 1;
 
-					if (n1 > n2)
-						return isPositive;
-
-					if (n1 < n2)
-						return -1 * isPositive;
+					int result = compareNumbers(s1, i, i2, s2, j, j2);
+					if (result != 0)
+						return result * isPositive;
 
 					// Represent same number, but different length, indicating leading zeros
 					if (i2 - i > j2 - j)
@@ -99,10 +114,381 @@ final class VariablesMap {
 			return 0;
 		}
 	};
-	
-	final HashMap<String, Object> hashMap = new HashMap<>();
-	final TreeMap<String, Object> treeMap = new TreeMap<>();
-	
+
+	private static int findLastDigit(CharSequence s, int start) {
+		int end = start;
+		while (end < s.length() && '0' <= s.charAt(end) && s.charAt(end) <= '9')
+			end++;
+		return end;
+	}
+
+	/**
+	 * Compares the values of two unsigned numbers given as runs of digits, ignoring leading zeros.
+	 */
+	private static int compareNumbers(CharSequence s1, int start1, int end1, CharSequence s2, int start2, int end2) {
+		while (start1 < end1 && s1.charAt(start1) == '0')
+			start1++;
+		while (start2 < end2 && s2.charAt(start2) == '0')
+			start2++;
+		// more significant digits always mean a larger number
+		if (end1 - start1 != end2 - start2)
+			return end1 - start1 > end2 - start2 ? 1 : -1;
+		for (; start1 < end1; start1++, start2++) {
+			char c1 = s1.charAt(start1);
+			char c2 = s2.charAt(start2);
+			if (c1 != c2)
+				return c1 > c2 ? 1 : -1;
+		}
+		return 0;
+	}
+
+	private final static String LIST_SUFFIX = Variable.SEPARATOR + "*";
+
+	/**
+	 * A variable in the trie. Its children are the variables whose names start with this variable's name followed by {@link Variable#SEPARATOR}.
+	 * Nodes without a value and without children are removed from their parent.
+	 */
+	final static class Node {
+
+		/**
+		 * The epoch this node was created in. Nodes of older epochs may be part of a {@link Snapshot} and must not be changed.
+		 */
+		final int epoch;
+
+		/**
+		 * The value of this variable, possibly a {@link LazyValue}. Use {@link #get()} to get the actual value.
+		 */
+		@Nullable
+		volatile Object value;
+
+		/**
+		 * The keys are the parts of the children's names after the separator, and are always strings.
+		 */
+		@Nullable
+		volatile NavigableMap<CharSequence, Node> children;
+
+		Node(int epoch) {
+			this.epoch = epoch;
+		}
+
+		/**
+		 * @return A node of the given epoch with the same value and a copy of this node's children map (the children themselves are not copied)
+		 */
+		Node copy(int epoch, VariablesMap map) {
+			Node copy = new Node(epoch);
+			copy.value = value;
+			NavigableMap<CharSequence, Node> children = this.children;
+			if (children != null) {
+				NavigableMap<CharSequence, Node> c = map.newChildren();
+				c.putAll(children);
+				copy.children = c;
+			}
+			return copy;
+		}
+
+		boolean hasChildren() {
+			NavigableMap<CharSequence, Node> children = this.children;
+			return children != null && !children.isEmpty();
+		}
+
+		boolean isEmpty() {
+			return value == null && !hasChildren();
+		}
+
+		/**
+		 * @return Whether this node has a value, without deserialising it. Lazily loaded values count unless they already failed to be deserialised.
+		 */
+		boolean hasValue() {
+			Object value = this.value;
+			return value != null && !(value instanceof LazyValue && ((LazyValue) value).hasFailed());
+		}
+
+		/**
+		 * @return The value of this variable, deserialising it first if it was loaded lazily
+		 */
+		@Nullable
+		Object get() {
+			Object value = this.value;
+			if (!(value instanceof LazyValue))
+				return value;
+			LazyValue lazy = (LazyValue) value;
+			Object v = lazy.get();
+			if (v != null && lazy.isReplaceable())
+				VALUE.compareAndSet(this, lazy, v); // fails if the variable has been changed in the meantime
+			return v;
+		}
+
+		private final static AtomicReferenceFieldUpdater<Node, Object> VALUE = AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+	}
+
+	/**
+	 * A part of a variable name, used to look up nodes without creating a substring for every part of the name.
+	 */
+	private final static class NameSegment implements CharSequence {
+
+		private final String name;
+		private int start, end;
+
+		NameSegment(String name) {
+			this.name = name;
+		}
+
+		NameSegment set(int start, int end) {
+			this.start = start;
+			this.end = end;
+			return this;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return name.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return name.substring(this.start + start, this.start + end);
+		}
+
+		@Override
+		public String toString() {
+			return name.substring(start, end);
+		}
+
+	}
+
+	/**
+	 * A read-only view of a list variable, i.e. of the children of a node. The <tt>null</tt> key maps to the value of the node itself,
+	 * and children that have children themselves are represented by another view.
+	 */
+	final static class ListView extends AbstractMap<String, Object> {
+
+		final Node node;
+
+		ListView(Node node) {
+			this.node = node;
+		}
+
+		@Nullable
+		static Object valueOf(Node node) {
+			return node.hasChildren() ? new ListView(node) : node.get();
+		}
+
+		@Override
+		@Nullable
+		public Object get(@Nullable Object key) {
+			if (key == null)
+				return node.get();
+			NavigableMap<CharSequence, Node> children = node.children;
+			if (children == null || !(key instanceof CharSequence))
+				return null;
+			Node child = children.get(key);
+			return child == null ? null : valueOf(child);
+		}
+
+		@Override
+		public boolean containsKey(@Nullable Object key) {
+			return get(key) != null;
+		}
+
+		/**
+		 * Counts the entries of this list without deserialising lazily loaded values, which is also how {@link #size()} is calculated. Lazily loaded values
+		 * that cannot be deserialised are thus counted until they have been read once.
+		 */
+		int countEntries() {
+			int size = node.hasValue() ? 1 : 0;
+			NavigableMap<CharSequence, Node> children = node.children;
+			if (children != null) {
+				for (Node child : children.values()) {
+					if (child.hasChildren() || child.hasValue())
+						size++;
+				}
+			}
+			return size;
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return new AbstractSet<Entry<String, Object>>() {
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					NavigableMap<CharSequence, Node> children = node.children;
+					Iterator<Entry<CharSequence, Node>> iter = children == null ? null : children.entrySet().iterator();
+					return new Iterator<Entry<String, Object>>() {
+						@Nullable
+						private Entry<String, Object> next;
+						{
+							Object value = node.get();
+							if (value != null)
+								next = new SimpleImmutableEntry<>(null, value);
+						}
+
+						@Override
+						public boolean hasNext() {
+							while (next == null && iter != null && iter.hasNext()) {
+								Entry<CharSequence, Node> e = iter.next();
+								Object value = valueOf(e.getValue());
+								if (value != null)
+									next = new SimpleImmutableEntry<>((String) e.getKey(), value);
+							}
+							return next != null;
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							Entry<String, Object> n = next;
+							assert n != null;
+							next = null;
+							return n;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return countEntries();
+				}
+			};
+		}
+
+	}
+
+	/**
+	 * The state of a map at the time {@link VariablesMap#snapshot()} was called. Later changes to the map don't change its snapshots.
+	 */
+	final static class Snapshot {
+
+		private final Node root;
+		private final int size;
+
+		Snapshot(Node root, int size) {
+			this.root = root;
+			this.size = size;
+		}
+
+		/**
+		 * @return The number of single variables in this snapshot
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Like {@link VariablesMap#forEach(BiConsumer)}, but visits exactly the variables of this snapshot.
+		 */
+		void forEach(BiConsumer<String, Object> action) {
+			VariablesMap.forEach(root, "", action);
+		}
+
+	}
+
+	private final boolean concurrent;
+
+	/**
+	 * Only replaced by writers, see {@link #writable(Node, NavigableMap, CharSequence)}.
+	 */
+	private volatile Node root = new Node(0);
+
+	/**
+	 * The current epoch, incremented by every {@link #snapshot()}. Nodes of older epochs are copied before they are changed.
+	 */
+	private volatile int epoch = 0;
+
+	/**
+	 * The number of single variables in this map. Only changed by writers, which are synchronised.
+	 */
+	private volatile int size = 0;
+
+	VariablesMap() {
+		this(false);
+	}
+
+	/**
+	 * @param concurrent Whether variables may be read from this map without locking while another thread changes it.
+	 *            Changing variables must still be synchronised.
+	 */
+	VariablesMap(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	private NavigableMap<CharSequence, Node> newChildren() {
+		return concurrent ? new ConcurrentSkipListMap<>(variableNameComparator) : new TreeMap<>(variableNameComparator);
+	}
+
+	/**
+	 * @return The number of single variables in this map
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Takes a snapshot of this map. Must be synchronised with writers, but the returned snapshot can then be read without any synchronisation
+	 * while this map is changed.
+	 * <p>
+	 * Taking a snapshot only increments the {@link #epoch}. Afterwards every change copies the nodes on its path once, thus the first changes after
+	 * a snapshot are a bit slower.
+	 */
+	synchronized Snapshot snapshot() {
+		Snapshot snapshot = new Snapshot(root, size);
+		epoch++;
+		return snapshot;
+	}
+
+	/**
+	 * @return The root node, copied first if it belongs to an older epoch
+	 */
+	private Node writableRoot() {
+		Node root = this.root;
+		if (root.epoch != epoch)
+			this.root = root = root.copy(epoch, this);
+		return root;
+	}
+
+	/**
+	 * Replaces the given child with a copy if it belongs to an older epoch.
+	 * 
+	 * @param children The children of a node of the current epoch
+	 * @param key The key of the child in <tt>children</tt>
+	 * @return The child that can be changed
+	 */
+	private Node writable(Node child, NavigableMap<CharSequence, Node> children, CharSequence key) {
+		if (child.epoch == epoch)
+			return child;
+		Node copy = child.copy(epoch, this);
+		children.put(key.toString(), copy);
+		return copy;
+	}
+
+	/**
+	 * Finds the node for the first <tt>end</tt> characters of the given name.
+	 */
+	@Nullable
+	private Node getNode(String name, int end) {
+		NameSegment segment = new NameSegment(name);
+		Node node = root;
+		int start = 0;
+		while (true) {
+			NavigableMap<CharSequence, Node> children = node.children;
+			if (children == null)
+				return null;
+			int sep = name.indexOf(Variable.SEPARATOR, start);
+			if (sep == -1 || sep > end)
+				sep = end;
+			node = children.get(segment.set(start, sep));
+			if (node == null || sep == end)
+				return node;
+			start = sep + Variable.SEPARATOR.length();
+		}
+	}
+
 	/**
 	 * Returns the internal value of the requested variable.
 	 * <p>
@@ -111,117 +497,137 @@ final class VariablesMap {
 	 * @param name
 	 * @return an Object for a normal Variable or a Map<String, Object> for a list variable, or null if the variable is not set.
 	 */
-	@SuppressWarnings("unchecked")
 	@Nullable
 	final Object getVariable(String name) {
-		if (!name.endsWith("*")) {
-			return hashMap.get(name);
+		if (!name.endsWith(LIST_SUFFIX)) {
+			Node node = getNode(name, name.length());
+			return node == null ? null : node.get();
 		} else {
-			String[] split = Variables.splitVariableName(name);
-			Map<String, Object> current = treeMap;
-			for (int i = 0; i < split.length; i++) {
-				String n = split[i];
-				if (n.equals("*")) {
-					assert i == split.length - 1;
-					return current;
-				}
-				Object o = current.get(n);
-				if (o == null)
-					return null;
-				if (o instanceof Map) {
-					current = (Map<String, Object>) o;
-					assert i != split.length - 1;
-					continue;
-				} else {
-					return null;
-				}
-			}
-			return null;
+			Node node = getNode(name, name.length() - LIST_SUFFIX.length());
+			if (node == null || node.children == null)
+				return null;
+			return new ListView(node);
 		}
 	}
-	
+
 	/**
 	 * Sets a variable.
 	 * 
 	 * @param name The variable's name. Can be a "list variable::*" (<tt>value</tt> must be <tt>null</tt> in this case)
 	 * @param value The variable's value. Use <tt>null</tt> to delete the variable.
 	 */
-	@SuppressWarnings("unchecked")
 	final void setVariable(String name, @Nullable Object value) {
-		if (!name.endsWith("*")) {
-			if (value == null)
-				hashMap.remove(name);
-			else
-				hashMap.put(name, value);
-		}
-		String[] split = Variables.splitVariableName(name);
-		TreeMap<String, Object> parent = treeMap;
-		for (int i = 0; i < split.length; i++) {
-			String n = split[i];
-			Object current = parent.get(n);
-			if (current == null) {
-				if (i == split.length - 1) {
-					if (value != null)
-						parent.put(n, value);
-					break;
-				} else if (value != null) {
-					parent.put(n, current = new TreeMap<>(variableNameComparator));
-					parent = (TreeMap<String, Object>) current;
-					continue;
-				} else {
-					break;
-				}
-			} else if (current instanceof TreeMap) {
-				if (i == split.length - 1) {
-					if (value == null)
-						((TreeMap<String, Object>) current).remove(null);
-					else
-						((TreeMap<String, Object>) current).put(null, value);
-					break;
-				} else if (i == split.length - 2 && split[i + 1].equals("*")) {
-					assert value == null;
-					deleteFromHashMap(StringUtils.join(split, Variable.SEPARATOR, 0, i + 1), (TreeMap<String, Object>) current);
-					Object v = ((TreeMap<String, Object>) current).get(null);
-					if (v == null)
-						parent.remove(n);
-					else
-						parent.put(n, v);
-					break;
-				} else {
-					parent = (TreeMap<String, Object>) current;
-					continue;
-				}
+		boolean list = name.endsWith(LIST_SUFFIX);
+		if (value == null) {
+			int end = list ? name.length() - LIST_SUFFIX.length() : name.length();
+			Node node = getNode(name, end);
+			if (node == null || (list ? node.children == null : node.value == null))
+				return; // don't copy any nodes if nothing changes
+			remove(writableRoot(), name, 0, end, list, new NameSegment(name));
+			return;
+		}
+		assert !list : name;
+
+		NameSegment segment = new NameSegment(name);
+		Node node = writableRoot();
+		int epoch = this.epoch;
+		int start = 0;
+		while (true) {
+			NavigableMap<CharSequence, Node> children = node.children;
+			if (children == null)
+				node.children = children = newChildren();
+			int sep = name.indexOf(Variable.SEPARATOR, start);
+			if (sep == -1)
+				sep = name.length();
+			Node child = children.get(segment.set(start, sep));
+			if (child == null) {
+				child = new Node(epoch);
+				children.put(name.substring(start, sep), child);
 			} else {
-				if (i == split.length - 1) {
-					if (value == null)
-						parent.remove(n);
-					else
-						parent.put(n, value);
-					break;
-				} else if (value != null) {
-					TreeMap<String, Object> c = new TreeMap<>(variableNameComparator);
-					c.put(null, current);
-					parent.put(n, c);
-					parent = c;
-					continue;
-				} else {
-					break;
-				}
+				child = writable(child, children, segment);
 			}
+			node = child;
+			if (sep == name.length())
+				break;
+			start = sep + Variable.SEPARATOR.length();
 		}
+		if (node.value == null)
+			size++;
+		node.value = value;
 	}
-	
-	@SuppressWarnings("unchecked")
-	void deleteFromHashMap(String parent, TreeMap<String, Object> current) {
-		for (Entry<String, Object> e : current.entrySet()) {
-			if (e.getKey() == null)
-				continue;
-			hashMap.remove(parent + Variable.SEPARATOR + e.getKey());
-			Object val = e.getValue();
-			if (val instanceof TreeMap) {
-				deleteFromHashMap(parent + Variable.SEPARATOR + e.getKey(), (TreeMap<String, Object>) val);
+
+	/**
+	 * Removes a variable or all variables of a list below the given node, and removes nodes that become empty.
+	 * 
+	 * @param start The start of the part of the name of a child of the given node
+	 * @param end The end of the name, excluding the list suffix if removing a list
+	 * @param list Whether to remove the child variables of the named variable instead of its value
+	 */
+	private void remove(Node node, String name, int start, int end, boolean list, NameSegment segment) {
+		NavigableMap<CharSequence, Node> children = node.children;
+		if (children == null)
+			return;
+		int sep = name.indexOf(Variable.SEPARATOR, start);
+		if (sep == -1 || sep > end)
+			sep = end;
+		Node child = children.get(segment.set(start, sep));
+		if (child == null)
+			return;
+		child = writable(child, children, segment);
+		if (sep != end) {
+			remove(child, name, sep + Variable.SEPARATOR.length(), end, list, segment);
+		} else if (list) {
+			NavigableMap<CharSequence, Node> removed = child.children;
+			if (removed != null) {
+				child.children = null;
+				size -= count(removed);
 			}
+		} else if (child.value != null) {
+			child.value = null;
+			size--;
 		}
+		if (child.isEmpty())
+			children.remove(segment.set(start, sep));
 	}
-	
+
+	private static int count(NavigableMap<CharSequence, Node> children) {
+		int count = 0;
+		for (Node child : children.values()) {
+			if (child.value != null)
+				count++;
+			NavigableMap<CharSequence, Node> c = child.children;
+			if (c != null)
+				count += count(c);
+		}
+		return count;
+	}
+
+	/**
+	 * Calls the given action for every single variable in this map, in the order of the lists they are in.
+	 * <p>
+	 * Variables changed while this method is running may or may not be visited. Values loaded lazily are passed as {@link LazyValue}s,
+	 * which {@link Variables#serialize(Object)} can save without deserialising them.
+	 */
+	void forEach(BiConsumer<String, Object> action) {
+		forEach(root, "", action);
+	}
+
+	/**
+	 * @param prefix The name of the given node followed by {@link Variable#SEPARATOR}, or an empty string for the root
+	 */
+	private static void forEach(Node node, String prefix, BiConsumer<String, Object> action) {
+		NavigableMap<CharSequence, Node> children = node.children;
+		if (children == null)
+			return;
+		for (Entry<CharSequence, Node> e : children.entrySet()) {
+			String name = prefix + e.getKey();
+			Node child = e.getValue();
+			Object value = child.value;
+			if (value != null)
+				action.accept(name, value);
+			if (child.children != null)
+				forEach(child, name + Variable.SEPARATOR, action);
+		}
+	}
+
 }
@@ -18,12 +18,24 @@
  */
 package ch.njol.skript.variables;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.zip.GZIPOutputStream;
 
+import org.bukkit.Bukkit;
 import org.eclipse.jdt.annotation.Nullable;
 
 import ch.njol.skript.Skript;
@@ -36,10 +48,9 @@ import ch.njol.skript.util.FileUtils;
 import ch.njol.skript.util.Task;
 import ch.njol.skript.util.Timespan;
 import ch.njol.skript.variables.SerializedVariable.Value;
+import ch.njol.skript.variables.SnapshotStorage.ValueSerializer;
 import ch.njol.util.Closeable;
 
-// FIXME ! large databases (>25 MB) cause the server to be unresponsive instead of loading slowly
-
 /**
  * @author Peter Güttinger
  */
@@ -47,43 +58,190 @@ public abstract class VariablesStorage implements Closeable {
 	
 	private final static int QUEUE_SIZE = 1000, FIRST_WARNING = 300;
 	
+	/**
+	 * Changes waiting to be saved by the {@link #writeThread}. If this queue is full, changes are written to the {@link #journal} instead.
+	 */
 	final LinkedBlockingQueue<SerializedVariable> changesQueue = new LinkedBlockingQueue<>(QUEUE_SIZE);
 	
+	/**
+	 * Holds changes that did not fit into the {@link #changesQueue}. While it is not empty all changes are appended to it, and the write thread reads changes from it
+	 * when the queue is empty, thus changes are always saved in the order they were made.
+	 * <p>
+	 * Must be locked when used. Created in {@link #load(SectionNode)}.
+	 */
+	@Nullable
+	private OverflowJournal journal;
+	
+	/**
+	 * Notified by the write thread whenever it has saved a batch of changes.
+	 */
+	private final Object savedLock = new Object();
+	
+	private volatile long savedChanges = 0;
+	
+	// the last sample used to calculate the throughput
+	private long throughputTime = System.nanoTime(), throughputChanges = 0;
+	private double throughput = 0;
+	
 	protected volatile boolean closed = false;
 	
+	/**
+	 * Set by {@link #discard()}, prevents {@link #close()} from being called when Skript gets disabled.
+	 */
+	private volatile boolean discarded = false;
+	
 	protected final String databaseName;
 	
 	@Nullable
 	protected File file;
 	
 	/**
-	 * null for '.*' or '.+'
+	 * null for '.*' or '.+', or if the pattern is a plain prefix (see {@link #variablePrefix})
 	 */
 	@Nullable
 	private Pattern variablePattern;
 	
+	/**
+	 * Set instead of {@link #variablePattern} if the pattern is a literal prefix followed by '.*', e.g. 'players::.*', as checking that is much faster than matching the regex.
+	 */
+	@Nullable
+	private String variablePrefix;
+	
+	/**
+	 * The maximum amount of changes passed to {@link #saveBatch(List)} at once. Must be set in {@link #load_i(SectionNode)} if changed.
+	 */
+	protected int batchSize = 1;
+	
+	/**
+	 * How long the write thread waits for more changes before saving an incomplete batch, in milliseconds.
+	 */
+	protected long batchLatency = 0;
+	
+	/**
+	 * Whether values are only deserialised when they are used, set by the optional 'lazy loading' entry. See {@link LazyValue}.
+	 */
+	boolean lazyLoading = false;
+	
+	/**
+	 * Whether lazily loaded values may be dropped again when memory runs low, set by the optional 'evict unused values' entry.
+	 */
+	boolean evictValues = false;
+	
 	// created in the constructor, started in load()
 	private final Thread writeThread;
 	
+	/**
+	 * The changes being saved by the {@link #writeThread}. Only used by the write thread, and by {@link #close()} after the write thread has stopped, which puts
+	 * a batch that could not be saved into the {@link #journal}.
+	 */
+	private final List<SerializedVariable> batch = new ArrayList<>();
+	
+	/**
+	 * Whether the {@link #batch} was read from the {@link #journal}, from which it is only removed once it has been saved
+	 */
+	private boolean batchFromJournal = false;
+	
+	/**
+	 * How long the write thread waits before saving a batch again that could not be saved, in milliseconds. Doubled after every failed attempt up to
+	 * {@link #MAX_RETRY_DELAY}.
+	 */
+	private final static long FIRST_RETRY_DELAY = 1000, MAX_RETRY_DELAY = 60000;
+	
 	protected VariablesStorage(final String name) {
 		databaseName = name;
 		writeThread = Skript.newThread(new Runnable() {
 			@Override
 			public void run() {
+				final List<SerializedVariable> batch = VariablesStorage.this.batch;
 				while (!closed) {
+					if (readJournal(batch)) {
+						saveChanges(batch);
+						continue;
+					}
 					try {
-						final SerializedVariable var = changesQueue.take();
-						final Value d = var.value;
-						if (d != null)
-							save(var.name, d.type, d.data);
-						else
-							save(var.name, null, null);
-					} catch (final InterruptedException e) {}
+						batch.add(changesQueue.take());
+					} catch (final InterruptedException e) {
+						continue;
+					}
+					try {
+						final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchLatency);
+						while (batch.size() < batchSize) {
+							changesQueue.drainTo(batch, batchSize - batch.size());
+							final long wait = deadline - System.nanoTime();
+							if (batch.size() >= batchSize || wait <= 0)
+								break;
+							final SerializedVariable var = changesQueue.poll(wait, TimeUnit.NANOSECONDS);
+							if (var == null)
+								break;
+							batch.add(var);
+						}
+					} catch (final InterruptedException e) {} // save what we have
+					saveChanges(batch);
 				}
 			}
 		}, "Skript variable save thread for database '" + name + "'");
 	}
 	
+	/**
+	 * Saves and clears the given batch. If the batch cannot be saved it is retried until it is saved or this storage is closed, in which case the batch is kept
+	 * for {@link #close()}. Only called from the {@link #writeThread}.
+	 */
+	private void saveChanges(final List<SerializedVariable> batch) {
+		long retryDelay = FIRST_RETRY_DELAY;
+		while (!saveBatch(batch)) {
+			if (closed)
+				return;
+			Skript.warning("Cannot save " + batch.size() + " variable changes to the database '" + databaseName + "', retrying in " + retryDelay / 1000 + " seconds");
+			try {
+				Thread.sleep(retryDelay);
+			} catch (final InterruptedException e) {}
+			retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+		}
+		if (batchFromJournal) {
+			batchFromJournal = false;
+			final OverflowJournal journal = this.journal;
+			assert journal != null;
+			synchronized (journal) {
+				try {
+					journal.removePeeked();
+				} catch (final IOException e) {
+					Skript.exception(e, "Cannot remove the saved variable changes of the database '" + databaseName + "' from " + journal.getFile().getName());
+				}
+			}
+		}
+		savedChanges += batch.size();
+		batch.clear();
+		synchronized (savedLock) {
+			savedLock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Reads the next batch of changes from the {@link #journal} if the {@link #changesQueue} is empty, i.e. if all changes in the journal are the oldest unsaved changes.
+	 * The changes stay in the journal until they have been saved.
+	 * 
+	 * @return Whether any changes were added to the batch
+	 */
+	private boolean readJournal(final List<SerializedVariable> batch) {
+		final OverflowJournal journal = this.journal;
+		if (journal == null)
+			return false;
+		synchronized (journal) {
+			if (journal.isEmpty() || !changesQueue.isEmpty())
+				return false;
+			try {
+				journal.peek(batch, batchSize);
+				batchFromJournal = !batch.isEmpty();
+			} catch (final IOException e) {
+				Skript.exception(e, "Cannot read the variable changes of the database '" + databaseName + "' from " + journal.getFile().getName() + ", " + journal.size() + " changes are lost");
+				try {
+					journal.clear();
+				} catch (final IOException e2) {}
+			}
+		}
+		return !batch.isEmpty();
+	}
+	
 	@Nullable
 	protected String getValue(final SectionNode n, final String key) {
 		return getValue(n, key, String.class);
@@ -114,12 +272,26 @@ public abstract class VariablesStorage implements Closeable {
 		if (pattern == null)
 			return false;
 		try {
-			variablePattern = pattern.equals(".*") || pattern.equals(".+") ? null : Pattern.compile(pattern);
+			variablePrefix = getLiteralPrefix(pattern);
+			variablePattern = pattern.equals(".*") || pattern.equals(".+") || variablePrefix != null ? null : Pattern.compile(pattern);
 		} catch (final PatternSyntaxException e) {
 			Skript.error("Invalid pattern '" + pattern + "': " + e.getLocalizedMessage());
 			return false;
 		}
 		
+		if (n.getValue("lazy loading") != null) {
+			final Boolean lazy = getValue(n, "lazy loading", Boolean.class);
+			if (lazy == null)
+				return false;
+			lazyLoading = lazy;
+			if (lazy && n.getValue("evict unused values") != null) {
+				final Boolean evict = getValue(n, "evict unused values", Boolean.class);
+				if (evict == null)
+					return false;
+				evictValues = evict;
+			}
+		}
+		
 		if (requiresFile()) {
 			final String f = getValue(n, "file");
 			if (f == null)
@@ -154,6 +326,13 @@ public abstract class VariablesStorage implements Closeable {
 				return false;
 			}
 			
+			if (n.getValue("backup compression") != null) {
+				final Boolean compression = getValue(n, "backup compression", Boolean.class);
+				if (compression == null)
+					return false;
+				compressBackups = compression;
+			}
+			
 			if (!"0".equals(getValue(n, "backup interval"))) {
 				final Timespan backupInterval = getValue(n, "backup interval", Timespan.class);
 				if (backupInterval != null)
@@ -164,12 +343,71 @@ public abstract class VariablesStorage implements Closeable {
 		if (!load_i(n))
 			return false;
 		
-		writeThread.start();
-		Skript.closeOnDisable(this);
+		if (hasWriteThread()) {
+			if (!loadJournal())
+				return false;
+			writeThread.start();
+			Skript.closeOnDisable(() -> {
+				if (!discarded)
+					close();
+			});
+		}
 		
 		return true;
 	}
 	
+	/**
+	 * Opens the {@link #journal}. If the server stopped before all changes in it could be saved, the changes are loaded like variables stored in this database,
+	 * and will be saved by the write thread.
+	 * 
+	 * @return Whether the journal could be loaded
+	 */
+	private boolean loadJournal() {
+		final OverflowJournal journal = new OverflowJournal(new File(Skript.getInstance().getDataFolder(), "variables-" + databaseName.replaceAll("[^\\w\\-]", "_") + ".overflow"));
+		final List<SerializedVariable> changes = new ArrayList<>();
+		try {
+			if (journal.load() == 0) {
+				journal.close();
+			} else {
+				journal.peekAll(changes);
+				Skript.warning(changes.size() + " variable changes of the database '" + databaseName + "' were not saved when the server stopped. They will be saved now.");
+			}
+		} catch (final IOException e) {
+			Skript.error("Cannot read the unsaved variable changes of the database '" + databaseName + "' from " + journal.getFile().getName() + ": " + e.getLocalizedMessage());
+			return false;
+		}
+		for (final SerializedVariable var : changes) {
+			final Value v = var.value;
+			Variables.variableLoaded(var.name, v == null ? null : Classes.deserialize(v.type, v.data), this);
+		}
+		this.journal = journal;
+		return true;
+	}
+	
+	/**
+	 * @return Whether this storage saves the changes passed to {@link #save(SerializedVariable)} itself. Storages which only hand variables to other storages (see
+	 *         {@link #getStorage(String)}) can return false to neither start the write thread nor be closed when Skript is disabled.
+	 */
+	protected boolean hasWriteThread() {
+		return true;
+	}
+	
+	/**
+	 * @param pattern
+	 * @return The prefix if the pattern is a literal string followed by '.*', or null if it isn't.
+	 */
+	@Nullable
+	private static String getLiteralPrefix(final String pattern) {
+		if (!pattern.endsWith(".*") || pattern.length() == 2)
+			return null;
+		final String prefix = pattern.substring(0, pattern.length() - 2);
+		for (int i = 0; i < prefix.length(); i++) {
+			if ("\\^$.|?*+()[]{}".indexOf(prefix.charAt(i)) != -1)
+				return null;
+		}
+		return prefix;
+	}
+	
 	/**
 	 * Loads variables stored here.
 	 * 
@@ -207,6 +445,11 @@ public abstract class VariablesStorage implements Closeable {
 	@Nullable
 	protected Task backupTask = null;
 	
+	/**
+	 * Whether backups are compressed with gzip
+	 */
+	protected boolean compressBackups = false;
+	
 	public void startBackupTask(final Timespan t) {
 		final File file = this.file;
 		if (file == null || t.getTicks_i() == 0)
@@ -214,74 +457,382 @@ public abstract class VariablesStorage implements Closeable {
 		backupTask = new Task(Skript.getInstance(), t.getTicks_i(), t.getTicks_i(), true) {
 			@Override
 			public void run() {
-				synchronized (connectionLock) {
-					disconnect();
-					try {
-						FileUtils.backup(file);
-					} catch (final IOException e) {
-						Skript.error("Automatic variables backup failed: " + e.getLocalizedMessage());
-					} finally {
-						connect();
+				try {
+					if (VariablesStorage.this instanceof SnapshotStorage) {
+						// the snapshot is written without blocking any changes
+						final VariablesMap.Snapshot snapshot = Variables.snapshotVariables();
+						final ValueSerializer serializer = getSnapshotSerializer(snapshot);
+						final File backup = FileUtils.getBackupFile(file, compressBackups ? ".gz" : "");
+						try (OutputStream out = openBackup(backup)) {
+							((SnapshotStorage) VariablesStorage.this).writeSnapshot(snapshot, out, serializer);
+						} catch (final IOException e) {
+							backup.delete();
+							throw e;
+						}
+					} else {
+						synchronized (connectionLock) {
+							disconnect();
+							try {
+								backup(file);
+							} finally {
+								connect();
+							}
+						}
 					}
+				} catch (final IOException e) {
+					Skript.error("Automatic variables backup failed: " + e.getLocalizedMessage());
 				}
 			}
 		};
 	}
 	
+	/**
+	 * Returns a serialiser for writing the given snapshot of the variables on the current thread. Off the main thread, the values that
+	 * {@link Classes#mustSyncSerialization(Object) must be serialised on the main thread} are serialised there first, thus the calling thread must not hold
+	 * any locks the main thread might wait for.
+	 * 
+	 * @throws IOException If the server is stopping
+	 */
+	final ValueSerializer getSnapshotSerializer(final VariablesMap.Snapshot snapshot) throws IOException {
+		if (Bukkit.isPrimaryThread())
+			return SnapshotStorage.DIRECT;
+		final Map<String, Value> synced = serializeSynced(snapshot);
+		return (name, value) -> {
+			if (value instanceof LazyValue)
+				return ((LazyValue) value).getSerialized();
+			if (synced.containsKey(name))
+				return synced.get(name);
+			return Classes.serializeOnAnyThread(value);
+		};
+	}
+	
+	/**
+	 * The number of values {@link #serializeSynced(VariablesMap.Snapshot)} serialises per tick, to not freeze the server for too long
+	 */
+	private final static int SYNC_SERIALIZATION_BATCH = 1000;
+	
+	/**
+	 * Serialises the values of the given snapshot that are stored here and {@link Classes#mustSyncSerialization(Object) must be serialised on the main thread}
+	 * on the main thread, the rest can be serialised while writing the snapshot.
+	 * 
+	 * @return The serialised values by variable name, with null values for values that can't be saved
+	 * @throws IOException If the server is stopping
+	 */
+	private Map<String, Value> serializeSynced(final VariablesMap.Snapshot snapshot) throws IOException {
+		final List<String> names = new ArrayList<>();
+		final List<Object> values = new ArrayList<>();
+		snapshot.forEach((name, value) -> {
+			if (!(value instanceof LazyValue) && isStoredHere(name) && Classes.mustSyncSerialization(value)) {
+				names.add(name);
+				values.add(value);
+			}
+		});
+		final Map<String, Value> serialized = new HashMap<>();
+		for (int start = 0; start < names.size(); start += SYNC_SERIALIZATION_BATCH) {
+			final int from = start, to = Math.min(start + SYNC_SERIALIZATION_BATCH, names.size());
+			final Boolean done = Task.callSync(() -> {
+				for (int i = from; i < to; i++)
+					serialized.put(names.get(i), Classes.serialize(values.get(i)));
+				return Boolean.TRUE;
+			});
+			if (done == null)
+				throw new IOException("The server is stopping");
+		}
+		return serialized;
+	}
+	
+	/**
+	 * Copies the given file into the backups folder, compressing it if {@link #compressBackups} is set.
+	 * 
+	 * @return The backup
+	 */
+	protected final File backup(final File file) throws IOException {
+		if (!compressBackups)
+			return FileUtils.backup(file);
+		final File backup = FileUtils.getBackupFile(file, ".gz");
+		try (InputStream in = new FileInputStream(file); OutputStream out = openBackup(backup)) {
+			final byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1)
+				out.write(buffer, 0, n);
+		} catch (final IOException e) {
+			backup.delete();
+			throw e;
+		}
+		return backup;
+	}
+	
+	private OutputStream openBackup(final File backup) throws IOException {
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(backup));
+		return compressBackups ? new GZIPOutputStream(out) : out;
+	}
+	
+	/**
+	 * @return Whether the given variable is saved in this storage, i.e. whether this is the storage (or shard) responsible for it
+	 */
+	final boolean isStoredHere(final String name) {
+		final VariablesStorage s = Variables.getStorage(name);
+		return s != null && s.getStorage(name) == this;
+	}
+	
 	boolean accept(final @Nullable String var) {
 		if (var == null)
 			return false;
+		final String prefix = variablePrefix;
+		if (prefix != null) {
+			if (!var.startsWith(prefix))
+				return false;
+			// '.' doesn't match line terminators
+			for (int i = prefix.length(); i < var.length(); i++) {
+				final char c = var.charAt(i);
+				if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+					return false;
+			}
+			return true;
+		}
 		return variablePattern != null ? variablePattern.matcher(var).matches() : true;
 	}
 	
+	/**
+	 * Whether this storage can load the variables of a single {@link PlayerPartitions player partition} with {@link #loadPartition(String, List)}. If it can,
+	 * variables of offline players' partitions are not kept in memory.
+	 */
+	protected boolean supportsPartitions() {
+		return false;
+	}
+	
+	/**
+	 * Reads all variables stored in this storage whose names start with the given prefix. Only called if {@link #supportsPartitions()} returns true.
+	 * <p>
+	 * Called on a player's login thread. Errors should be printed by this method.
+	 * 
+	 * @param prefix
+	 * @param variables The list to add the variables to
+	 */
+	protected void loadPartition(final String prefix, final List<SerializedVariable> variables) {}
+	
+	/**
+	 * Returns the storage that actually stores the given variable. This is this storage itself unless it distributes its variables among multiple storages, like
+	 * {@link ShardedStorage}.
+	 * 
+	 * @param name The name of a variable {@link #accept(String) accepted} by this storage
+	 * @return The storage to save the variable to
+	 */
+	VariablesStorage getStorage(final String name) {
+		return this;
+	}
+	
 	private long lastWarning = Long.MIN_VALUE;
 	private final static int WARNING_INTERVAL = 10;
 	private long lastError = Long.MIN_VALUE;
 	private final static int ERROR_INTERVAL = 10;
 	
 	/**
+	 * Queues a change to be saved by the write thread. If the {@link #changesQueue} is full, the change is written to the {@link #journal} instead, thus this method
+	 * only blocks if the journal cannot be written.
+	 * <p>
 	 * May be called from a different thread than Bukkit's main thread.
 	 */
 	final void save(final SerializedVariable var) {
-		if (changesQueue.size() > FIRST_WARNING && lastWarning < System.currentTimeMillis() - WARNING_INTERVAL * 1000) {
-			Skript.warning("Cannot write variables to the database '" + databaseName + "' at sufficient speed; server performance may suffer and many variables will be lost if the server crashes. (this warning will be repeated at most once every " + WARNING_INTERVAL + " seconds)");
-			lastWarning = System.currentTimeMillis();
-		}
-		if (!changesQueue.offer(var)) {
-			if (lastError < System.currentTimeMillis() - ERROR_INTERVAL * 1000) {
-				Skript.error("Skript cannot save any variables to the database '" + databaseName + "'. The server will hang and may crash if no more variables can be saved.");
-				lastError = System.currentTimeMillis();
-			}
-			while (true) {
+		var.queueTime = System.currentTimeMillis();
+		VariableStatistics.saved(this, var);
+		final OverflowJournal journal = this.journal;
+		if (journal != null) {
+			synchronized (journal) {
+				if (journal.isEmpty() && changesQueue.offer(var))
+					return;
 				try {
-					// REMIND add repetitive error and/or stop saving variables altogether?
-					changesQueue.put(var);
-					break;
-				} catch (final InterruptedException e) {}
+					journal.append(var, var.queueTime);
+					if (journal.size() > FIRST_WARNING && lastWarning < System.currentTimeMillis() - WARNING_INTERVAL * 1000) {
+						Skript.warning("Cannot write variables to the database '" + databaseName + "' at sufficient speed; " + journal.size() + " changes are waiting in " + journal.getFile().getName()
+								+ ", the oldest for " + getOldestChangeAge() / 1000 + " seconds. (this warning will be repeated at most once every " + WARNING_INTERVAL + " seconds)");
+						lastWarning = System.currentTimeMillis();
+					}
+					return;
+				} catch (final IOException e) {
+					if (lastError < System.currentTimeMillis() - ERROR_INTERVAL * 1000) {
+						Skript.error("Skript cannot save any variables to the database '" + databaseName + "' as " + journal.getFile().getName() + " cannot be written to (" + e.getLocalizedMessage() + "). "
+								+ "The server will hang and may crash if no more variables can be saved.");
+						lastError = System.currentTimeMillis();
+					}
+				}
 			}
 		}
+		while (true) {
+			try {
+				// REMIND add repetitive error and/or stop saving variables altogether?
+				changesQueue.put(var);
+				break;
+			} catch (final InterruptedException e) {}
+		}
+	}
+	
+	/**
+	 * @return How many changes are waiting to be saved
+	 */
+	public int getQueueSize() {
+		final OverflowJournal journal = this.journal;
+		if (journal == null)
+			return changesQueue.size();
+		synchronized (journal) {
+			return changesQueue.size() + journal.size();
+		}
 	}
 	
 	/**
-	 * Called when Skript gets disabled. The default implementation will wait for all variables to be saved before setting {@link #closed} to true and stopping the write thread,
-	 * thus <tt>super.close()</tt> must be called if this method is overridden!
+	 * @return How many changes have been written to the disk because the queue was full and are still waiting to be saved
+	 */
+	public int getSpilledChanges() {
+		final OverflowJournal journal = this.journal;
+		if (journal == null)
+			return 0;
+		synchronized (journal) {
+			return journal.size();
+		}
+	}
+	
+	/**
+	 * @return How long the oldest unsaved change has been waiting to be saved in milliseconds, or 0 if there are no unsaved changes
+	 */
+	public long getOldestChangeAge() {
+		final SerializedVariable first = changesQueue.peek();
+		if (first != null)
+			return Math.max(0, System.currentTimeMillis() - first.queueTime);
+		final OverflowJournal journal = this.journal;
+		if (journal == null)
+			return 0;
+		synchronized (journal) {
+			return journal.isEmpty() ? 0 : Math.max(0, System.currentTimeMillis() - journal.getOldestTime());
+		}
+	}
+	
+	/**
+	 * @return How many changes have been saved since the server started
+	 */
+	public long getSavedChanges() {
+		return savedChanges;
+	}
+	
+	/**
+	 * @return How many changes have been saved per second since the value was last updated, which this method does at most once per second
+	 */
+	public synchronized double getThroughput() {
+		final long now = System.nanoTime(), saved = getSavedChanges();
+		if (now - throughputTime >= TimeUnit.SECONDS.toNanos(1)) {
+			throughput = (saved - throughputChanges) * 1e9 / (now - throughputTime);
+			throughputTime = now;
+			throughputChanges = saved;
+		}
+		return throughput;
+	}
+	
+	/**
+	 * How long {@link #close()} waits for all changes to be saved, in milliseconds. Changes that are not saved by then are saved to the {@link #journal} and will be
+	 * saved when the server starts the next time.
+	 */
+	private final static long CLOSE_TIMEOUT = 30000;
+	
+	/**
+	 * How long {@link #close()} waits for the last batch to be saved, in milliseconds.
+	 */
+	private final static long LAST_BATCH_TIMEOUT = 10000;
+	
+	/**
+	 * Called when Skript gets disabled. The default implementation will wait at most {@link #CLOSE_TIMEOUT} for all variables to be saved before setting
+	 * {@link #closed} to true and stopping the write thread, thus <tt>super.close()</tt> must be called if this method is overridden!
 	 */
 	@Override
 	public void close() {
-		while (changesQueue.size() > 0) {
+		final long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+		synchronized (savedLock) {
+			long wait;
+			while (getQueueSize() > 0 && (wait = deadline - System.currentTimeMillis()) > 0) {
+				try {
+					savedLock.wait(Math.min(wait, 1000)); // re-checked periodically as the write thread might be idle after reading the last changes from the journal
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		closed = true;
+		writeThread.interrupt();
+		if (writeThread.isAlive() && writeThread != Thread.currentThread()) {
+			try { // the last batch may still be in progress
+				writeThread.join(LAST_BATCH_TIMEOUT);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		final OverflowJournal journal = this.journal;
+		if (journal == null)
+			return;
+		synchronized (journal) {
+			final List<SerializedVariable> unsaved = new ArrayList<>();
+			if (!writeThread.isAlive() && !batchFromJournal)
+				unsaved.addAll(batch); // the batch the write thread could not save, unless it is still in the journal
+			changesQueue.drainTo(unsaved);
 			try {
-				Thread.sleep(10);
-			} catch (final InterruptedException e) {}
+				journal.prepend(unsaved, System.currentTimeMillis());
+				if (!journal.isEmpty())
+					Skript.warning(journal.size() + " variable changes could not be saved to the database '" + databaseName + "' in time. They will be saved when the server starts the next time.");
+				journal.close();
+			} catch (final IOException e) {
+				Skript.exception(e, "Cannot save " + (unsaved.size() + journal.size()) + " unsaved variable changes of the database '" + databaseName + "' to " + journal.getFile().getName());
+			}
 		}
+	}
+	
+	/**
+	 * Stops this storage without saving or rewriting anything. Used if a storage this storage is part of could not be loaded, in which case the variables
+	 * were not loaded into this storage either. Changes left in the {@link #journal} are kept and saved the next time this storage is loaded.
+	 */
+	final void discard() {
+		discarded = true;
 		closed = true;
+		final Task bt = backupTask;
+		if (bt != null)
+			bt.cancel();
 		writeThread.interrupt();
+		if (writeThread.isAlive()) {
+			try {
+				writeThread.join(LAST_BATCH_TIMEOUT);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		final OverflowJournal journal = this.journal;
+		if (journal != null) {
+			synchronized (journal) {
+				try {
+					journal.close();
+				} catch (final IOException e) {
+					Skript.exception(e, "Cannot close " + journal.getFile().getName());
+				}
+			}
+			this.journal = null; // not cleared by disconnect()
+		}
+		disconnect();
 	}
 	
 	/**
-	 * Clears the saveQueue of unsaved variables. Only used if all variables are saved immediately after calling this method.
+	 * Clears the {@link #changesQueue} and {@link #journal} of unsaved variables. Only used if all variables are saved immediately after calling this method.
 	 */
 	protected void clearChangesQueue() {
-		changesQueue.clear();
+		final OverflowJournal journal = this.journal;
+		if (journal == null) {
+			changesQueue.clear();
+			return;
+		}
+		synchronized (journal) {
+			changesQueue.clear();
+			try {
+				journal.clear();
+			} catch (final IOException e) {
+				Skript.exception(e, "Cannot clear " + journal.getFile().getName());
+			}
+		}
 	}
 	
 	/**
@@ -294,4 +845,23 @@ public abstract class VariablesStorage implements Closeable {
 	 */
 	protected abstract boolean save(String name, @Nullable String type, @Nullable byte[] value);
 	
+	/**
+	 * Saves a batch of changes taken from the {@link #changesQueue}. The changes are in the order they were made, and may contain multiple changes of the same variable.
+	 * <p>
+	 * Only called from the {@link #writeThread}. The default implementation saves the changes one by one using {@link #save(String, String, byte[])}.
+	 * 
+	 * @param changes At most {@link #batchSize} changes. Must not be modified.
+	 * @return Whether the batch was saved. If not, none of its changes must have been saved, as the whole batch is saved again later.
+	 */
+	protected boolean saveBatch(final List<SerializedVariable> changes) {
+		for (final SerializedVariable var : changes) {
+			final Value d = var.value;
+			if (d != null)
+				save(var.name, d.type, d.data);
+			else
+				save(var.name, null, null);
+		}
+		return true;
+	}
+	
 }
@@ -26,11 +26,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.StreamCorruptedException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 
 //Naming conventions:
 // x(): read info & data (e.g. content type, contents) [i.e. no tag]
@@ -43,11 +45,18 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	
 	private final short version;
 	
+	/** null if reading from buffers */
+	@Nullable
 	final InputStream in;
 	
+	/** The buffers of a headerless stream, which are read one after another */
+	private final ByteBuffer[] buffers;
+	private int currentBuffer = 0;
+	
 	public DefaultYggdrasilInputStream(final Yggdrasil y, final InputStream in) throws IOException {
 		super(y);
 		this.in = in;
+		buffers = new ByteBuffer[0];
 		final int m = readInt();
 		if (m != Yggdrasil.MAGIC_NUMBER)
 			throw new StreamCorruptedException("Not an Yggdrasil stream");
@@ -56,12 +65,54 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 			throw new StreamCorruptedException("Input was saved using a later version of Yggdrasil");
 	}
 	
+	/**
+	 * Creates a stream that reads data without Yggdrasil's header from the given buffers, see {@link Yggdrasil#newHeaderlessInputStream(ByteBuffer...)}.
+	 */
+	DefaultYggdrasilInputStream(final Yggdrasil y, final ByteBuffer... buffers) {
+		super(y);
+		in = null;
+		this.buffers = buffers;
+		version = y.version;
+	}
+	
 	// private
 	
+	/**
+	 * @return The current buffer, which has data remaining, or null if this is not a headerless stream
+	 * @throws EOFException If all buffers have been read
+	 */
+	@Nullable
+	private ByteBuffer buffer() throws EOFException {
+		if (in != null)
+			return null;
+		while (currentBuffer < buffers.length) {
+			final ByteBuffer b = buffers[currentBuffer];
+			if (b.hasRemaining())
+				return b;
+			currentBuffer++;
+		}
+		throw new EOFException();
+	}
+	
+	/**
+	 * @return The current buffer if it has at least n bytes remaining, or null otherwise (i.e. the value has to be read byte by byte)
+	 */
+	@Nullable
+	private ByteBuffer buffer(final int n) throws EOFException {
+		final ByteBuffer b = buffer();
+		return b != null && b.remaining() >= n ? b : null;
+	}
+	
 	/**
 	 * @throws EOFException If the end of the stream is reached
 	 */
 	private int read() throws IOException {
+		final InputStream in = this.in;
+		if (in == null) {
+			final ByteBuffer b = buffer();
+			assert b != null;
+			return b.get() & 0xFF;
+		}
 		final int b = in.read();
 		if (b < 0)
 			throw new EOFException();
@@ -73,8 +124,23 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	}
 	
 	private void readFully(final byte[] buf, int off, final int len) throws IOException {
+		final InputStream in = this.in;
 		int l = len;
 		while (l > 0) {
+			if (in == null) {
+				final ByteBuffer b;
+				try {
+					b = buffer();
+				} catch (final EOFException e) {
+					throw new EOFException("Expected " + len + " bytes, but could only read " + (len - l));
+				}
+				assert b != null;
+				final int n = Math.min(l, b.remaining());
+				b.get(buf, off, n);
+				off += n;
+				l -= n;
+				continue;
+			}
 			final int n = in.read(buf, off, l);
 			if (n < 0)
 				throw new EOFException("Expected " + len + " bytes, but could only read " + (len - l));
@@ -119,6 +185,9 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	}
 	
 	private short readShort() throws IOException {
+		final ByteBuffer b = buffer(2);
+		if (b != null)
+			return b.getShort();
 		return (short) (read() << 8 | read());
 	}
 	
@@ -130,6 +199,9 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	}
 	
 	private int readInt() throws IOException {
+		final ByteBuffer b = buffer(4);
+		if (b != null)
+			return b.getInt();
 		return read() << 24
 				| read() << 16
 				| read() << 8
@@ -144,6 +216,9 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	}
 	
 	private long readLong() throws IOException {
+		final ByteBuffer b = buffer(8);
+		if (b != null)
+			return b.getLong();
 		return (long) read() << 56
 				| (long) read() << 48
 				| (long) read() << 40
@@ -210,6 +285,12 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	@Override
 	protected String readString() throws IOException {
 		final int length = readUnsignedInt();
+		final ByteBuffer b = length == 0 ? null : buffer(length);
+		if (b != null && b.hasArray()) { // decode directly from the buffer
+			final String s = new String(b.array(), b.arrayOffset() + b.position(), length, UTF_8);
+			b.position(b.position() + length);
+			return s;
+		}
 		final byte[] d = new byte[length];
 		readFully(d);
 		return new String(d, UTF_8);
@@ -217,6 +298,40 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	
 	// Array
 	
+	@Override
+	protected void readPrimitiveArrayContents(final Object array) throws IOException {
+		final Class<?> ct = array.getClass().getComponentType();
+		if (ct == byte.class) {
+			readFully((byte[]) array);
+		} else if (ct == int.class) {
+			final int[] a = (int[]) array;
+			for (int i = 0; i < a.length; i++)
+				a[i] = readInt();
+		} else if (ct == long.class) {
+			final long[] a = (long[]) array;
+			for (int i = 0; i < a.length; i++)
+				a[i] = readLong();
+		} else if (ct == double.class) {
+			final double[] a = (double[]) array;
+			for (int i = 0; i < a.length; i++)
+				a[i] = readDouble();
+		} else if (ct == float.class) {
+			final float[] a = (float[]) array;
+			for (int i = 0; i < a.length; i++)
+				a[i] = readFloat();
+		} else if (ct == short.class) {
+			final short[] a = (short[]) array;
+			for (int i = 0; i < a.length; i++)
+				a[i] = readShort();
+		} else if (ct == char.class) {
+			final char[] a = (char[]) array;
+			for (int i = 0; i < a.length; i++)
+				a[i] = readChar();
+		} else {
+			super.readPrimitiveArrayContents(array);
+		}
+	}
+	
 	@Override
 	protected Class<?> readArrayComponentType() throws IOException {
 		return readClass();
@@ -316,6 +431,15 @@ public final class DefaultYggdrasilInputStream extends YggdrasilInputStream {
 	
 	@Override
 	public void close() throws IOException {
+		final InputStream in = this.in;
+		if (in == null) {
+			int remaining = 0;
+			for (int i = currentBuffer; i < buffers.length; i++)
+				remaining += buffers[i].remaining();
+			if (remaining > 0)
+				throw new StreamCorruptedException("Stream still has data, " + remaining + " bytes remain");
+			return;
+		}
 		try {
 			read();
 			throw new StreamCorruptedException("Stream still has data, at least " + (1 + in.available()) + " bytes remain");
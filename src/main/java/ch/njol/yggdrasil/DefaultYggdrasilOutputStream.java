@@ -25,34 +25,110 @@ import static ch.njol.yggdrasil.Tag.getType;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Writes Yggdrasil's binary format either to an {@link OutputStream}, or without the header into a {@link ByteBuffer} (see {@link Yggdrasil#newHeaderlessOutputStream(ByteBuffer)}).
+ * <p>
+ * Values are passed on to the stream as soon as they are written, thus the stream can be wrapped in a buffered stream if needed.
+ */
 public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 	
 	private final static Charset UTF_8 = Charset.forName("UTF-8");
 	
+	/** null if writing into the buffer only */
+	@Nullable
 	private final OutputStream out;
 	
+	private ByteBuffer buf;
+	
 	private final short version;
 	
 	public DefaultYggdrasilOutputStream(final Yggdrasil y, final OutputStream out) throws IOException {
 		super(y);
 		this.out = out;
+		buf = ByteBuffer.allocate(8); // only holds a single primitive before it is written to the stream
 		version = y.version;
 		writeInt(Yggdrasil.MAGIC_NUMBER);
 		writeShort(version);
 	}
 	
+	/**
+	 * Creates a stream that writes into the given buffer without writing Yggdrasil's header. The buffer must be backed by an array and is replaced if it is too small.
+	 */
+	DefaultYggdrasilOutputStream(final Yggdrasil y, final ByteBuffer buf) {
+		super(y);
+		assert buf.hasArray();
+		out = null;
+		this.buf = buf;
+		version = y.version;
+	}
+	
+	/**
+	 * @return The buffer the data has been written into, which is the buffer this stream was created with unless that one was too small. Its position is the end of
+	 *         the written data.
+	 */
+	public ByteBuffer getBuffer() {
+		return buf;
+	}
+	
 	// private
 	
+	/**
+	 * Makes sure that at least the given number of bytes can be put into the buffer, writing the buffer to the stream if possible or replacing it with a larger one otherwise.
+	 */
+	private void ensure(final int n) throws IOException {
+		if (buf.remaining() >= n)
+			return;
+		final OutputStream out = this.out;
+		if (out != null) {
+			drain(out);
+			if (buf.remaining() >= n)
+				return;
+		}
+		final ByteBuffer b = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+		buf.flip();
+		b.put(buf);
+		buf = b;
+	}
+	
+	private void drain(final OutputStream out) throws IOException {
+		out.write(buf.array(), buf.arrayOffset(), buf.position());
+		buf.clear();
+	}
+	
+	/**
+	 * Passes what was just put into the buffer on to the stream if writing to one, so that this stream never holds back any data.
+	 */
+	private void written() throws IOException {
+		final OutputStream out = this.out;
+		if (out != null)
+			drain(out);
+	}
+	
 	private void write(final int b) throws IOException {
-		out.write(b);
+		ensure(1);
+		buf.put((byte) b);
+		written();
+	}
+	
+	private void write(final byte[] d) throws IOException {
+		final OutputStream out = this.out;
+		if (out != null) {
+			out.write(d);
+			return;
+		}
+		ensure(d.length);
+		buf.put(d);
 	}
 	
 	@Override
 	protected void writeTag(final Tag t) throws IOException {
-		out.write(t.tag);
+		write(t.tag);
 	}
 	
 	private final HashMap<String, Integer> writtenShortStrings = new HashMap<>();
@@ -75,7 +151,7 @@ public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 			if (d.length >= (T_REFERENCE.tag & 0xFF))
 				throw new YggdrasilException("Field name or Class ID too long: " + s);
 			write(d.length);
-			out.write(d);
+			write(d);
 			if (d.length > 4)
 				writtenShortStrings.put(s, nextShortStringID++);
 		}
@@ -88,8 +164,9 @@ public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 	}
 	
 	private void writeShort(final short s) throws IOException {
-		write((s >>> 8) & 0xFF);
-		write(s & 0xFF);
+		ensure(2);
+		buf.putShort(s);
+		written();
 	}
 	
 	private void writeUnsignedShort(final short s) throws IOException {
@@ -101,10 +178,9 @@ public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 	}
 	
 	private void writeInt(final int i) throws IOException {
-		write((i >>> 24) & 0xFF);
-		write((i >>> 16) & 0xFF);
-		write((i >>> 8) & 0xFF);
-		write(i & 0xFF);
+		ensure(4);
+		buf.putInt(i);
+		written();
 	}
 	
 	private void writeUnsignedInt(final int i) throws IOException {
@@ -116,14 +192,9 @@ public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 	}
 	
 	private void writeLong(final long l) throws IOException {
-		write((int) ((l >>> 56) & 0xFF));
-		write((int) ((l >>> 48) & 0xFF));
-		write((int) ((l >>> 40) & 0xFF));
-		write((int) ((l >>> 32) & 0xFF));
-		write((int) ((l >>> 24) & 0xFF));
-		write((int) ((l >>> 16) & 0xFF));
-		write((int) ((l >>> 8) & 0xFF));
-		write((int) (l & 0xFF));
+		ensure(8);
+		buf.putLong(l);
+		written();
 	}
 	
 	private void writeFloat(final float f) throws IOException {
@@ -186,7 +257,7 @@ public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 	protected void writeStringValue(final String s) throws IOException {
 		final byte[] d = s.getBytes(UTF_8);
 		writeUnsignedInt(d.length);
-		out.write(d);
+		write(d);
 	}
 	
 	// Array
@@ -201,6 +272,34 @@ public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 		writeUnsignedInt(length);
 	}
 	
+	@Override
+	protected void writePrimitiveArrayContents(final Object array) throws IOException {
+		final Class<?> ct = array.getClass().getComponentType();
+		if (ct == byte.class) {
+			write((byte[]) array);
+		} else if (ct == int.class) {
+			for (final int i : (int[]) array)
+				writeInt(i);
+		} else if (ct == long.class) {
+			for (final long l : (long[]) array)
+				writeLong(l);
+		} else if (ct == double.class) {
+			for (final double d : (double[]) array)
+				writeDouble(d);
+		} else if (ct == float.class) {
+			for (final float f : (float[]) array)
+				writeFloat(f);
+		} else if (ct == short.class) {
+			for (final short s : (short[]) array)
+				writeShort(s);
+		} else if (ct == char.class) {
+			for (final char c : (char[]) array)
+				writeChar(c);
+		} else {
+			super.writePrimitiveArrayContents(array);
+		}
+	}
+	
 	@Override
 	protected void writeArrayEnd() throws IOException {}
 	
@@ -294,12 +393,20 @@ public final class DefaultYggdrasilOutputStream extends YggdrasilOutputStream {
 	
 	@Override
 	public void flush() throws IOException {
-		out.flush();
+		final OutputStream out = this.out;
+		if (out != null) {
+			drain(out);
+			out.flush();
+		}
 	}
 	
 	@Override
 	public void close() throws IOException {
-		out.close();
+		final OutputStream out = this.out;
+		if (out != null) {
+			drain(out);
+			out.close();
+		}
 	}
 	
 }
@@ -20,6 +20,9 @@ package ch.njol.yggdrasil;
 
 import java.io.NotSerializableException;
 import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -30,6 +33,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -67,6 +71,12 @@ public final class Fields implements Iterable<FieldContext> {
 			isPrimitiveValue = f.getType().isPrimitive();
 		}
 		
+		FieldContext(final FieldAccessor a, final Object o) {
+			id = a.id;
+			value = a.get(o);
+			isPrimitiveValue = a.primitive;
+		}
+		
 		public String getID() {
 			return id;
 		}
@@ -151,6 +161,26 @@ public final class Fields implements Iterable<FieldContext> {
 			}
 		}
 		
+		void setField(final Object o, final FieldAccessor a, final Yggdrasil y) throws StreamCorruptedException {
+			if (a.primitive != isPrimitiveValue)
+				throw new StreamCorruptedException("The field " + id + " of " + a.field.getDeclaringClass() + " is " + (a.primitive ? "" : "not ") + "primitive");
+			final MethodHandle setter = a.setter;
+			if (setter == null) { // final fields
+				setField(o, a.field, y);
+				return;
+			}
+			try {
+				setter.invokeExact(o, value);
+			} catch (final ClassCastException e) { // the handle casts and unboxes like Field.set, but throws a ClassCastException instead of an IllegalArgumentException
+				if (!(o instanceof YggdrasilRobustSerializable) || !((YggdrasilRobustSerializable) o).incompatibleField(a.field, this))
+					y.incompatibleField(o, a.field, this);
+			} catch (final RuntimeException | Error e) {
+				throw e;
+			} catch (final Throwable e) {
+				throw new YggdrasilException(e);
+			}
+		}
+		
 		@Override
 		public int hashCode() {
 			return id.hashCode();
@@ -170,6 +200,42 @@ public final class Fields implements Iterable<FieldContext> {
 		
 	}
 	
+	/**
+	 * A serialisable field of a class with its ID and handles to get and set its value, which are much faster than reflection.
+	 */
+	final static class FieldAccessor {
+		
+		final Field field;
+		final String id;
+		final boolean primitive;
+		/** (Object)Object, boxes primitives */
+		private final MethodHandle getter;
+		/** (Object,Object)void, or null if the field is final */
+		@Nullable
+		final MethodHandle setter;
+		
+		FieldAccessor(final Field f) throws IllegalAccessException {
+			field = f;
+			id = Yggdrasil.getID(f);
+			primitive = f.getType().isPrimitive();
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			getter = lookup.unreflectGetter(f).asType(MethodType.methodType(Object.class, Object.class));
+			setter = Modifier.isFinal(f.getModifiers()) ? null : lookup.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, Object.class));
+		}
+		
+		@Nullable
+		Object get(final Object o) {
+			try {
+				return (Object) getter.invokeExact(o);
+			} catch (final RuntimeException | Error e) {
+				throw e;
+			} catch (final Throwable e) {
+				throw new YggdrasilException(e);
+			}
+		}
+		
+	}
+	
 	@Nullable
 	private final Yggdrasil yggdrasil;
 	
@@ -194,11 +260,8 @@ public final class Fields implements Iterable<FieldContext> {
 	 */
 	public Fields(final Class<?> c, final Yggdrasil yggdrasil) throws NotSerializableException {
 		this.yggdrasil = yggdrasil;
-		for (final Field f : getFields(c)) {
-			assert f != null;
-			final String id = Yggdrasil.getID(f);
-			fields.put(id, new FieldContext(id));
-		}
+		for (final FieldAccessor a : getAccessors(c))
+			fields.put(a.id, new FieldContext(a.id));
 	}
 	
 	/**
@@ -221,19 +284,12 @@ public final class Fields implements Iterable<FieldContext> {
 		this.yggdrasil = yggdrasil;
 		final Class<?> c = o.getClass();
 		assert c != null;
-		for (final Field f : getFields(c)) {
-			assert f != null;
-			try {
-				fields.put(Yggdrasil.getID(f), new FieldContext(f, o));
-			} catch (final IllegalArgumentException e) {
-				assert false;
-			} catch (final IllegalAccessException e) {
-				assert false;
-			}
-		}
+		for (final FieldAccessor a : getAccessors(c))
+			fields.put(a.id, new FieldContext(a, o));
 	}
 	
-	private final static Map<Class<?>, Collection<Field>> cache = new HashMap<>();
+	private final static Map<Class<?>, Collection<Field>> cache = new ConcurrentHashMap<>(); // variables are deserialised on multiple threads
+	private final static Map<Class<?>, FieldAccessor[]> accessorCache = new ConcurrentHashMap<>();
 	
 	/**
 	 * Gets all serialisable fields of the provided class, including superclasses.
@@ -268,6 +324,28 @@ public final class Fields implements Iterable<FieldContext> {
 		return fields;
 	}
 	
+	/**
+	 * Like {@link #getFields(Class)}, but returns accessors for the fields that are only created once per class.
+	 */
+	static FieldAccessor[] getAccessors(final Class<?> c) throws NotSerializableException {
+		FieldAccessor[] accessors = accessorCache.get(c);
+		if (accessors != null)
+			return accessors;
+		final Collection<Field> fields = getFields(c);
+		accessors = new FieldAccessor[fields.size()];
+		int i = 0;
+		for (final Field f : fields) {
+			assert f != null;
+			try {
+				accessors[i++] = new FieldAccessor(f);
+			} catch (final IllegalAccessException e) {
+				throw new YggdrasilException(e);
+			}
+		}
+		accessorCache.put(c, accessors);
+		return accessors;
+	}
+	
 	/**
 	 * Sets all fields of the given Object to the values stored in this Fields object.
 	 * 
@@ -280,21 +358,25 @@ public final class Fields implements Iterable<FieldContext> {
 		final Yggdrasil y = yggdrasil;
 		if (y == null)
 			throw new YggdrasilException("");
-		final Set<FieldContext> excessive = new HashSet<>(fields.values());
 		final Class<?> oc = o.getClass();
 		assert oc != null;
-		for (final Field f : getFields(oc)) {
-			assert f != null;
-			final String id = Yggdrasil.getID(f);
-			final FieldContext c = fields.get(id);
+		final FieldAccessor[] accessors = getAccessors(oc);
+		int found = 0;
+		for (final FieldAccessor a : accessors) {
+			final FieldContext c = fields.get(a.id);
 			if (c == null) {
-				if (!(o instanceof YggdrasilRobustSerializable) || !((YggdrasilRobustSerializable) o).missingField(f))
-					y.missingField(o, f);
+				if (!(o instanceof YggdrasilRobustSerializable) || !((YggdrasilRobustSerializable) o).missingField(a.field))
+					y.missingField(o, a.field);
 			} else {
-				c.setField(o, f, y);
+				c.setField(o, a, y);
+				found++;
 			}
-			excessive.remove(c);
 		}
+		if (found == fields.size())
+			return;
+		final Set<FieldContext> excessive = new HashSet<>(fields.values());
+		for (final FieldAccessor a : accessors)
+			excessive.remove(fields.get(a.id));
 		for (final FieldContext f : excessive) {
 			assert f != null;
 			if (!(o instanceof YggdrasilRobustSerializable) || !((YggdrasilRobustSerializable) o).excessiveField(f))
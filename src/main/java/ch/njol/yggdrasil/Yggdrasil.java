@@ -26,11 +26,18 @@ import java.io.InputStream;
 import java.io.NotSerializableException;
 import java.io.OutputStream;
 import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -94,6 +101,34 @@ public final class Yggdrasil {
 	
 	private final SimpleClassResolver simpleClassResolver = new SimpleClassResolver();
 	
+	/**
+	 * Everything Yggdrasil needs to know about a class that has an ID, so that the class resolvers only have to be asked once per class.
+	 * <p>
+	 * Classes without an ID are never cached, as a class resolver may find them later on (e.g. Bukkit's ConfigurationSerializables).
+	 */
+	private final static class ClassData {
+		
+		final String id;
+		@Nullable
+		final YggdrasilSerializer<?> serializer;
+		final boolean serializable;
+		/** The nullary constructor of the class as a handle of type ()Object, or null if it doesn't have one or is instantiated by its serializer. */
+		@Nullable
+		final MethodHandle constructor;
+		
+		ClassData(final String id, final @Nullable YggdrasilSerializer<?> serializer, final boolean serializable, final @Nullable MethodHandle constructor) {
+			this.id = id;
+			this.serializer = serializer;
+			this.serializable = serializable;
+			this.constructor = constructor;
+		}
+		
+	}
+	
+	// concurrent as variables are (de)serialised on multiple threads
+	private final Map<Class<?>, ClassData> classData = new ConcurrentHashMap<>();
+	private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+	
 	public Yggdrasil() {
 		this(LATEST_VERSION);
 	}
@@ -114,6 +149,25 @@ public final class Yggdrasil {
 		return new DefaultYggdrasilInputStream(this, in);
 	}
 	
+	/**
+	 * Creates a stream that writes objects into the given buffer without Yggdrasil's header, which is useful when many small objects are serialised separately, and the
+	 * same buffer can be reused for each of them. The data can only be read by a stream created with {@link #newHeaderlessInputStream(ByteBuffer...)}.
+	 * 
+	 * @param buf A buffer backed by an array. If it is too small, it will be replaced by a larger one, which can be retrieved with
+	 *            {@link DefaultYggdrasilOutputStream#getBuffer()}.
+	 */
+	public DefaultYggdrasilOutputStream newHeaderlessOutputStream(final ByteBuffer buf) {
+		return new DefaultYggdrasilOutputStream(this, buf);
+	}
+	
+	/**
+	 * Creates a stream that reads data written by a {@link #newHeaderlessOutputStream(ByteBuffer) headerless stream} from the given buffers, which are read one after
+	 * another. The buffers are not copied.
+	 */
+	public YggdrasilInputStream newHeaderlessInputStream(final ByteBuffer... buffers) {
+		return new DefaultYggdrasilInputStream(this, buffers);
+	}
+	
 	@Deprecated
 	public YggXMLOutputStream newXMLOutputStream(final OutputStream out) throws IOException {
 		return new YggXMLOutputStream(this, out);
@@ -125,12 +179,15 @@ public final class Yggdrasil {
 	}
 	
 	public void registerClassResolver(final ClassResolver r) {
-		if (!classResolvers.contains(r))
+		if (!classResolvers.contains(r)) {
 			classResolvers.add(r);
+			clearCache();
+		}
 	}
 	
 	public void registerSingleClass(final Class<?> c, final String id) {
 		simpleClassResolver.registerClass(c, id);
+		clearCache();
 	}
 	
 	/**
@@ -141,6 +198,63 @@ public final class Yggdrasil {
 		if (id == null)
 			throw new IllegalArgumentException(c.toString());
 		simpleClassResolver.registerClass(c, id.value());
+		clearCache();
+	}
+	
+	/**
+	 * A new class resolver may take precedence over the one a cached class was resolved with, thus the cache is cleared whenever one is registered.
+	 */
+	private void clearCache() {
+		classData.clear();
+		classes.clear();
+	}
+	
+	@Nullable
+	private ClassData getClassData(final Class<?> c) {
+		ClassData data = classData.get(c);
+		if (data != null)
+			return data;
+		final String id = getIDNoError(c);
+		if (id == null)
+			return null;
+		final YggdrasilSerializer<?> s = findSerializer(c);
+		MethodHandle constructor = null;
+		if (s == null && !c.isInterface() && !Modifier.isAbstract(c.getModifiers())) {
+			try {
+				final Constructor<?> constr = c.getDeclaredConstructor();
+				constr.setAccessible(true);
+				constructor = MethodHandles.lookup().unreflectConstructor(constr).asType(MethodType.methodType(Object.class));
+			} catch (final NoSuchMethodException | SecurityException | IllegalAccessException e) {} // newInstance will throw the appropriate exception
+		}
+		final boolean serializable;
+		if (Enum.class.isAssignableFrom(c) || PseudoEnum.class.isAssignableFrom(c))
+			serializable = true;
+		else if (s != null)
+			serializable = checkSerializer(s, c);
+		else
+			serializable = constructor != null && YggdrasilSerializable.class.isAssignableFrom(c);
+		data = new ClassData(id, s, serializable, constructor);
+		classData.put(c, data);
+		return data;
+	}
+	
+	/**
+	 * Does the same checks as {@link #newInstance(Class)} for classes with a serializer.
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private boolean checkSerializer(final YggdrasilSerializer s, final Class<?> c) {
+		if (!s.canBeInstantiated(c)) {
+			try {
+				s.deserialize(c, new Fields(this));
+			} catch (final StreamCorruptedException e) {
+			} catch (final NotSerializableException e) {
+				return false;
+			}
+			return true;
+		}
+		if (s.newInstance(c) == null)
+			throw new YggdrasilException("YggdrasilSerializer " + s + " returned null from newInstance(" + c + ")");
+		return true;
 	}
 	
 	public void registerFieldHandler(final FieldHandler h) {
@@ -149,6 +263,13 @@ public final class Yggdrasil {
 	}
 	
 	public final boolean isSerializable(final Class<?> c) {
+		if (c.isPrimitive() || c == Object.class)
+			return true;
+		final ClassData data = getClassData(c);
+		return data != null ? data.serializable : checkSerializable(c);
+	}
+	
+	private boolean checkSerializable(final Class<?> c) {
 		try {
 			return c.isPrimitive() || c == Object.class || (Enum.class.isAssignableFrom(c) || PseudoEnum.class.isAssignableFrom(c)) && getIDNoError(c) != null ||
 					((YggdrasilSerializable.class.isAssignableFrom(c) || getSerializer(c) != null) && newInstance(c) != c);// whatever, just make true out if it (null is a valid return value)
@@ -161,6 +282,12 @@ public final class Yggdrasil {
 	
 	@Nullable
 	YggdrasilSerializer<?> getSerializer(final Class<?> c) {
+		final ClassData data = getClassData(c);
+		return data != null ? data.serializer : findSerializer(c);
+	}
+	
+	@Nullable
+	private YggdrasilSerializer<?> findSerializer(final Class<?> c) {
 		for (final ClassResolver r : classResolvers) {
 			if (r instanceof YggdrasilSerializer && r.getID(c) != null)
 				return (YggdrasilSerializer<?>) r;
@@ -171,11 +298,15 @@ public final class Yggdrasil {
 	public Class<?> getClass(final String id) throws StreamCorruptedException {
 		if ("Object".equals(id))
 			return Object.class;
+		final Class<?> cached = classes.get(id);
+		if (cached != null)
+			return cached;
 		for (final ClassResolver r : classResolvers) {
 			final Class<?> c = r.getClass(id);
 			if (c != null) { // TODO error if not serialisable?
 				assert Tag.byName(id) == null && (Tag.getType(c) == Tag.T_OBJECT || Tag.getType(c) == Tag.T_ENUM) : "Tag IDs should not be matched: " + id + " (class resolver: " + r + ")";
 				assert id.equals(r.getID(c)) : r + " returned " + c + " for id " + id + ", but returns id " + r.getID(c) + " for that class";
+				classes.put(id, c);
 				return c;
 			}
 		}
@@ -208,12 +339,14 @@ public final class Yggdrasil {
 	}
 	
 	public String getID(final Class<?> c) throws NotSerializableException {
-		final String id = getIDNoError(c);
-		if (id == null)
+		if (c == Object.class)
+			return "Object";
+		final ClassData data = getClassData(c);
+		if (data == null)
 			throw new NotSerializableException("No ID found for " + c);
-		if (!isSerializable(c))
+		if (!data.serializable)
 			throw new NotSerializableException(c.getCanonicalName());
-		return id;
+		return data.id;
 	}
 	
 	/**
@@ -324,7 +457,18 @@ public final class Yggdrasil {
 	@SuppressWarnings({"rawtypes", "unchecked"})
 	@Nullable
 	final Object newInstance(final Class<?> c) throws StreamCorruptedException, NotSerializableException {
-		final YggdrasilSerializer s = getSerializer(c);
+		final ClassData data = getClassData(c);
+		final MethodHandle constructor = data != null ? data.constructor : null;
+		if (constructor != null) {
+			try {
+				return (Object) constructor.invokeExact();
+			} catch (final RuntimeException | Error e) {
+				throw e;
+			} catch (final Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+		final YggdrasilSerializer s = data != null ? data.serializer : findSerializer(c);
 		if (s != null) {
 			if (!s.canBeInstantiated(c)) { // only used by isSerializable - return null if OK, throw an YggdrasilException if not
 				try {
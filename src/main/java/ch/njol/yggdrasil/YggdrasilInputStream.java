@@ -61,13 +61,20 @@ public abstract class YggdrasilInputStream implements Closeable {
 	
 	protected abstract int readArrayLength() throws IOException;
 	
+	/**
+	 * Reads the elements of a primitive array. Can be overridden to read the values without boxing them.
+	 */
+	protected void readPrimitiveArrayContents(final Object array) throws IOException {
+		final int length = Array.getLength(array);
+		final Tag type = getType(array.getClass().getComponentType());
+		for (int i = 0; i < length; i++) {
+			Array.set(array, i, readPrimitive_(type));
+		}
+	}
+	
 	private final void readArrayContents(final Object array) throws IOException {
 		if (array.getClass().getComponentType().isPrimitive()) {
-			final int length = Array.getLength(array);
-			final Tag type = getType(array.getClass().getComponentType());
-			for (int i = 0; i < length; i++) {
-				Array.set(array, i, readPrimitive_(type));
-			}
+			readPrimitiveArrayContents(array);
 		} else {
 			for (int i = 0; i < ((Object[]) array).length; i++) {
 				((Object[]) array)[i] = readObject();
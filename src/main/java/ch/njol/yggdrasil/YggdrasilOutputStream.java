@@ -96,6 +96,18 @@ public abstract class YggdrasilOutputStream implements Flushable, Closeable {
 	
 	protected abstract void writeArrayEnd() throws IOException;
 	
+	/**
+	 * Writes the elements of a primitive array. Can be overridden to write the values without boxing them.
+	 */
+	protected void writePrimitiveArrayContents(final Object array) throws IOException {
+		final int length = Array.getLength(array);
+		for (int i = 0; i < length; i++) {
+			final Object p = Array.get(array, i);
+			assert p != null;
+			writePrimitive_(p);
+		}
+	}
+	
 	private final void writeArray(final Object array) throws IOException {
 		final int length = Array.getLength(array);
 		final Class<?> ct = array.getClass().getComponentType();
@@ -104,11 +116,7 @@ public abstract class YggdrasilOutputStream implements Flushable, Closeable {
 		writeArrayComponentType(ct);
 		writeArrayLength(length);
 		if (ct.isPrimitive()) {
-			for (int i = 0; i < length; i++) {
-				final Object p = Array.get(array, i);
-				assert p != null;
-				writePrimitive_(p);
-			}
+			writePrimitiveArrayContents(array);
 			writeArrayEnd();
 		} else {
 			for (final Object o : (Object[]) array)
@@ -0,0 +1,158 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the queries the {@link ChangeMonitor} of a {@link DatabaseStorage} uses to page through the changes of other servers, against an SQLite file.
+ */
+public class DatabaseChangeFeedTest {
+	
+	private final static String TABLE = "variables21";
+	private final static String OWN_GUID = "00000000-0000-0000-0000-000000000001", OTHER_GUID = "00000000-0000-0000-0000-000000000002";
+	
+	@Nullable
+	private File file;
+	@Nullable
+	private Connection connection;
+	
+	@Before
+	public void open() throws Exception {
+		final File file = this.file = File.createTempFile("skript-variables", ".db");
+		final Connection connection = this.connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+		try (final Statement s = connection.createStatement()) {
+			s.executeUpdate(String.format(DatabaseStorage.Type.SQLITE.createQuery, TABLE));
+		}
+	}
+	
+	@After
+	public void close() throws Exception {
+		final Connection connection = this.connection;
+		if (connection != null)
+			connection.close();
+		final File file = this.file;
+		if (file != null)
+			file.delete();
+	}
+	
+	private Connection connection() {
+		final Connection connection = this.connection;
+		assert connection != null;
+		return connection;
+	}
+	
+	private void write(final String name, final @Nullable String value, final String guid) throws SQLException {
+		try (final PreparedStatement s = connection().prepareStatement(DatabaseStorage.getWriteSQL(TABLE))) {
+			s.setString(1, name);
+			s.setString(2, value == null ? null : "string");
+			s.setBytes(3, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+			s.setString(4, guid);
+			s.executeUpdate();
+		}
+	}
+	
+	/**
+	 * Reads all changes after the given version page by page, like {@link ChangeMonitor#poll()}.
+	 * 
+	 * @return The version of the last read change
+	 */
+	private long readAll(long after, final int limit, final List<SerializedVariable> changes) throws SQLException {
+		try (final PreparedStatement query = connection().prepareStatement(DatabaseStorage.getMonitorSQL(TABLE))) {
+			final List<SerializedVariable> page = new ArrayList<>();
+			while (true) {
+				final long version = DatabaseStorage.readChanges(query, OWN_GUID, after, limit, page, "test");
+				assertTrue("versions must increase", page.isEmpty() ? version >= after : version > after);
+				changes.addAll(page);
+				if (version == after)
+					return after;
+				after = version;
+				page.clear();
+			}
+		}
+	}
+	
+	private static String[] names(final List<SerializedVariable> changes) {
+		final String[] names = new String[changes.size()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = changes.get(i).name;
+		return names;
+	}
+	
+	@Test
+	public void testPagesSkipOwnChanges() throws SQLException {
+		for (int i = 0; i < 7; i++) {
+			write("other::" + i, "value " + i, OTHER_GUID);
+			write("own::" + i, "value " + i, OWN_GUID);
+		}
+		
+		final List<SerializedVariable> changes = new ArrayList<>();
+		final long version = readAll(0, 2, changes);
+		assertArrayEquals(new String[] {"other::0", "other::1", "other::2", "other::3", "other::4", "other::5", "other::6"}, names(changes));
+		final SerializedVariable.Value value = changes.get(3).value;
+		assert value != null;
+		assertEquals("string", value.type);
+		assertEquals("value 3", new String(value.data, StandardCharsets.UTF_8));
+		
+		changes.clear();
+		assertEquals(version, readAll(version, 2, changes));
+		assertEquals(0, changes.size());
+	}
+	
+	@Test
+	public void testChangedRowsAreReadAgain() throws SQLException {
+		write("a", "1", OTHER_GUID);
+		write("b", "1", OTHER_GUID);
+		write("c", "1", OTHER_GUID);
+		final List<SerializedVariable> changes = new ArrayList<>();
+		final long version = readAll(0, 10, changes);
+		assertArrayEquals(new String[] {"a", "b", "c"}, names(changes));
+		
+		// replacing a row gives it a new rowid, thus it is read again unless this server replaced it
+		write("a", "2", OTHER_GUID);
+		write("b", "2", OWN_GUID);
+		write("c", null, OTHER_GUID);
+		changes.clear();
+		readAll(version, 1, changes);
+		assertArrayEquals(new String[] {"a", "c"}, names(changes));
+		final SerializedVariable.Value value = changes.get(0).value;
+		assert value != null;
+		assertEquals("2", new String(value.data, StandardCharsets.UTF_8));
+		assertNull("deleted variables are read without a value", changes.get(1).value);
+	}
+	
+}
@@ -0,0 +1,151 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.junit.Test;
+
+import ch.njol.skript.lang.ExecutionFrame;
+
+/**
+ * Checks that local variables with slots see the same values whether they are accessed by their slots or by their names.
+ */
+public class LocalVariableSlotsTest {
+	
+	private final static class TestEvent extends Event {
+		@Override
+		public HandlerList getHandlers() {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	private final Event event = new TestEvent();
+	
+	private static Object[] bind(final LocalVariableSlots slots, final ExecutionFrame frame) {
+		final Object[] values = slots.bind(frame);
+		assertNotNull(values);
+		return values;
+	}
+	
+	@Test
+	public void testAdd() {
+		final LocalVariableSlots slots = new LocalVariableSlots(true);
+		assertEquals(0, slots.add("A"));
+		assertEquals(1, slots.add("b"));
+		assertEquals(0, slots.add("a"));
+		assertEquals(2, slots.size());
+		assertEquals(1, slots.indexOf("b"));
+		assertEquals(-1, slots.indexOf("c"));
+		
+		final LocalVariableSlots caseSensitive = new LocalVariableSlots(false);
+		assertEquals(0, caseSensitive.add("A"));
+		assertEquals(1, caseSensitive.add("a"));
+	}
+	
+	@Test
+	public void testSlottedAndNamedAccess() {
+		final LocalVariableSlots slots = new LocalVariableSlots(true);
+		final int a = slots.add("a"), b = slots.add("b");
+		final ExecutionFrame frame = new ExecutionFrame(event, null);
+		
+		// set by name before the slots are bound, e.g. a function parameter
+		LocalVariableSlots.setVariable(frame, "a", 1);
+		assertEquals(1, bind(slots, frame)[a]);
+		final VariablesMap map = (VariablesMap) frame.getLocals();
+		assertNotNull(map);
+		assertNull("slotted variables are moved out of the map", map.getVariable("a"));
+		assertEquals(1, LocalVariableSlots.getVariable(frame, "a"));
+		
+		assertTrue(slots.set(frame, b, 2));
+		assertEquals(2, LocalVariableSlots.getVariable(frame, "b"));
+		LocalVariableSlots.setVariable(frame, "b", 3);
+		assertEquals(3, bind(slots, frame)[b]);
+		LocalVariableSlots.setVariable(frame, "b", null);
+		assertNull(bind(slots, frame)[b]);
+		assertNull(LocalVariableSlots.getVariable(frame, "b"));
+		
+		// variables without slots are kept in the map
+		LocalVariableSlots.setVariable(frame, "c::1", 4);
+		assertEquals(4, LocalVariableSlots.getVariable(frame, "c::1"));
+		assertEquals(4, map.getVariable("c::1"));
+	}
+	
+	@Test
+	public void testSlotsAddedAfterBinding() {
+		final LocalVariableSlots slots = new LocalVariableSlots(true);
+		slots.add("a");
+		final ExecutionFrame frame = new ExecutionFrame(event, null);
+		assertEquals(1, bind(slots, frame).length);
+		
+		// e.g. a variable of an effect command
+		final int c = slots.add("c");
+		slots.set(frame, c, 5);
+		assertEquals(5, LocalVariableSlots.getVariable(frame, "c"));
+		LocalVariableSlots.setVariable(frame, "c", 6);
+		assertEquals(6, bind(slots, frame)[c]);
+	}
+	
+	@Test
+	public void testOtherSlots() {
+		final LocalVariableSlots slots = new LocalVariableSlots(true), other = new LocalVariableSlots(true);
+		final int a = slots.add("a"), otherA = other.add("a");
+		final ExecutionFrame frame = new ExecutionFrame(event, null);
+		slots.set(frame, a, 1);
+		
+		// slots of another trigger are not bound, and their variables are accessed by name instead
+		assertNull(other.bind(frame));
+		assertFalse(other.set(frame, otherA, 2));
+		LocalVariableSlots.setVariable(frame, "a", 2);
+		assertEquals(2, bind(slots, frame)[a]);
+	}
+	
+	@Test
+	public void testRemoveAndSetLocals() {
+		final LocalVariableSlots slots = new LocalVariableSlots(true);
+		final int a = slots.add("a");
+		final ExecutionFrame frame = new ExecutionFrame(event, null);
+		slots.set(frame, a, 1);
+		LocalVariableSlots.setVariable(frame, "c::1", 2);
+		
+		// like Variables.removeLocals and Variables.setLocalVariables, e.g. to copy local variables to another event
+		final VariablesMap map = LocalVariableSlots.removeLocals(frame);
+		assertNotNull(map);
+		assertEquals(1, map.getVariable("a"));
+		assertEquals(2, map.getVariable("c::1"));
+		assertNull(LocalVariableSlots.getVariable(frame, "a"));
+		assertNull(LocalVariableSlots.getVariable(frame, "c::1"));
+		
+		final ExecutionFrame other = new ExecutionFrame(event, null);
+		slots.set(other, a, 3);
+		LocalVariableSlots.setLocals(other, map);
+		assertEquals("the new variables replace the slotted ones", 1, LocalVariableSlots.getVariable(other, "a"));
+		assertEquals(1, bind(slots, other)[a]);
+		assertEquals(2, LocalVariableSlots.getVariable(other, "c::1"));
+		slots.set(other, a, 4);
+		assertEquals(4, LocalVariableSlots.getVariable(other, "a"));
+	}
+	
+}
@@ -0,0 +1,87 @@
+/**
+ *   This file is part of Skript.
+ *
+ *  Skript is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Skript is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Skript.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Peter Güttinger, SkriptLang team and contributors
+ */
+package ch.njol.skript.variables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks the order of the names of list elements, see {@link VariablesMap#variableNameComparator}.
+ */
+public class VariablesMapTest {
+	
+	private static void assertBefore(final String first, final String second) {
+		assertTrue(first + " < " + second, VariablesMap.variableNameComparator.compare(first, second) < 0);
+		assertTrue(second + " > " + first, VariablesMap.variableNameComparator.compare(second, first) > 0);
+	}
+	
+	private static void assertSorted(final String... names) {
+		final String[] sorted = names.clone();
+		Arrays.sort(sorted, VariablesMap.variableNameComparator);
+		assertArrayEquals(names, sorted);
+	}
+	
+	@Test
+	public void testNumbers() {
+		assertBefore("2", "10");
+		assertBefore("9", "10");
+		assertBefore("a2", "a10");
+		assertBefore("1.5", "1.10");
+		assertEquals(0, VariablesMap.variableNameComparator.compare("42", "42"));
+		assertSorted("1", "2", "3", "10", "11", "20", "100");
+	}
+	
+	@Test
+	public void testNumbersAndText() {
+		// digits are compared as characters to other characters, which puts numbers before letters
+		assertBefore("10", "a");
+		assertBefore("9", "a");
+		assertBefore("a", "a1");
+		assertBefore("a1", "ab");
+		assertSorted("1", "2", "10", "a", "a1", "a2", "a10", "b");
+	}
+	
+	@Test
+	public void testLeadingZeros() {
+		// numbers with the same value are ordered by their length, longest first, so that different names are never equal
+		assertBefore("001", "01");
+		assertBefore("01", "1");
+		assertBefore("1", "02");
+		assertBefore("09", "10");
+		assertBefore("a007b", "a7b");
+		assertSorted("0", "001", "01", "1", "02", "2", "010", "10");
+	}
+	
+	@Test
+	public void testLongNumbers() {
+		final String max = String.valueOf(Long.MAX_VALUE);
+		assertBefore(max, "9223372036854775808");
+		assertBefore("99999999999999999999", "100000000000000000000");
+		assertBefore("123456789012345678901234567890", "123456789012345678901234567891");
+		assertBefore("0000000000000000000000000000001", "2");
+		assertBefore("x12345678901234567890y", "x12345678901234567891a");
+		assertEquals(0, VariablesMap.variableNameComparator.compare("123456789012345678901234567890", "123456789012345678901234567890"));
+	}
+	
+}